@@ -0,0 +1,372 @@
+/*
+ * ILCache.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.asm.Instruction;
+import org.jakstab.loader.ExecutableImage;
+import org.jakstab.rtl.statements.StatementSequence;
+import org.jakstab.ssl.Architecture;
+import org.jakstab.util.BinaryFileInputBuffer;
+import org.jakstab.util.CheckedObjectInputStream;
+import org.jakstab.util.Logger;
+
+/**
+ * Stores the decoded instructions of a module and their IL translations in a
+ * cache directory, so later runs on the same module do not have to disassemble
+ * and translate them again.
+ *
+ * There is one cache file per module, named by the SHA-1 hash of the module
+ * contents and base address, the SSL file, the Jakstab version, and the
+ * options affecting the translation. Entries are grouped into pages by their
+ * address. Each page is serialized and compressed separately, and an index at
+ * the start of the file maps pages to their position, so a run only reads the
+ * pages of the addresses it actually visits.
+ *
+ * New entries are written at the end of a run by merging them with the pages
+ * of the current cache file into a temporary file, which then replaces the
+ * cache file. Concurrent runs therefore always see a complete cache file,
+ * though entries added by one of two overlapping runs may be lost.
+ *
+ * Pages are read through a {@link CheckedObjectInputStream}, as the cache
+ * directory may be shared. A page that cannot be read, e.g., because it
+ * refers to a class not allowed in cache files, is discarded. Its
+ * instructions are translated again and written to a new page.
+ *
+ * All access to a cache is synchronized, so it can be shared by threads
+ * looking up instructions.
+ */
+final class ILCache {
+
+	private static final Logger logger = Logger.getLogger(ILCache.class);
+
+	private static final int MAGIC = 0x4a494c43;
+	private static final int FORMAT_VERSION = 2;
+	private static final int PAGE_BITS = 12;
+	private static final String SUFFIX = ".il";
+
+	private static final class Entry {
+		private final Instruction instruction;
+		private final StatementSequence statements;
+
+		private Entry(Instruction instruction, StatementSequence statements) {
+			this.instruction = instruction;
+			this.statements = statements;
+		}
+	}
+
+	private final File cacheFile;
+	private final String key;
+	/** The cache file pages are read from, null if there is no usable cache file. */
+	private RandomAccessFile in;
+	/** Maps page numbers to their offset and length in the cache file. */
+	private Map<Long, long[]> index;
+	private final Set<Long> loadedPages = new HashSet<Long>();
+	/** Pages of the cache file that could not be read and are not written again. */
+	private final Set<Long> discardedPages = new HashSet<Long>();
+	private final Map<Long, Entry> loaded = new HashMap<Long, Entry>();
+	private final Map<Long, Entry> added = new HashMap<Long, Entry>();
+	private int hits = 0;
+
+	private ILCache(File cacheFile, String key) {
+		this.cacheFile = cacheFile;
+		this.key = key;
+	}
+
+	/**
+	 * Opens the cache of the given module in the given directory.
+	 *
+	 * @return the cache, or null if the module cannot be cached.
+	 */
+	static ILCache open(File dir, ExecutableImage module, Architecture arch) {
+		if (arch.getSpecificationHash() == null)
+			return null;
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			logger.warn("Cannot create IL cache directory " + dir);
+			return null;
+		}
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+			BinaryFileInputBuffer data = module.getInputBuffer();
+			byte[] chunk = new byte[1 << 16];
+			for (int fp = 0; fp < data.getSize(); fp += chunk.length)
+				digest.update(chunk, 0, data.getBytesAt(fp, chunk, 0, chunk.length));
+			digest.update(("@" + module.getMinAddress().getValue() +
+					"/" + arch.getSpecificationHash() +
+					"/" + Main.version +
+					"/" + Options.summarizeRep.getValue()).getBytes("UTF-8"));
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest())
+			sb.append(String.format("%02x", b));
+		String key = sb.toString();
+
+		ILCache cache = new ILCache(new File(dir, key + SUFFIX), key);
+		if (cache.cacheFile.isFile()) {
+			try {
+				cache.in = new RandomAccessFile(cache.cacheFile, "r");
+				cache.index = readIndex(cache.in, key);
+				logger.debug("Opened IL cache file " + cache.cacheFile.getName() + " with " + cache.index.size() + " pages.");
+			} catch (IOException e) {
+				logger.warn("Could not read IL cache file " + cache.cacheFile.getName() + ": " + e);
+				cache.close();
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Returns the cached instruction at the given address.
+	 *
+	 * @return the instruction, or null if it is not cached.
+	 */
+	synchronized Instruction getInstruction(AbsoluteAddress address) {
+		Entry e = lookup(address.getValue());
+		if (e == null)
+			return null;
+		hits++;
+		return e.instruction;
+	}
+
+	/**
+	 * Returns the cached IL translation of the instruction at the given address.
+	 *
+	 * @return the statements, or null if they are not cached.
+	 */
+	synchronized StatementSequence getStatements(AbsoluteAddress address) {
+		Entry e = lookup(address.getValue());
+		return e == null ? null : e.statements;
+	}
+
+	/**
+	 * Adds an instruction and its IL translation to the cache. The statements
+	 * are copied, so later changes to them do not end up in the cache file.
+	 */
+	synchronized void put(AbsoluteAddress address, Instruction instr, StatementSequence seq) {
+		added.put(address.getValue(), new Entry(instr, seq.copy()));
+	}
+
+	synchronized int getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Writes all entries added in this run to the cache file and closes it.
+	 * Failures are only logged, as the cache is optional.
+	 */
+	synchronized void store() {
+		close();
+		if (added.isEmpty())
+			return;
+
+		// Merge with the current cache file, which may have been replaced by another run
+		RandomAccessFile current = null;
+		Map<Long, long[]> currentIndex = Collections.emptyMap();
+		if (cacheFile.isFile()) {
+			try {
+				current = new RandomAccessFile(cacheFile, "r");
+				currentIndex = readIndex(current, key);
+			} catch (IOException e) {
+				logger.debug("Replacing unreadable IL cache file " + cacheFile.getName());
+				currentIndex = Collections.emptyMap();
+			}
+		}
+
+		Map<Long, List<Long>> addedPages = new HashMap<Long, List<Long>>();
+		for (Long address : added.keySet()) {
+			Long page = address >>> PAGE_BITS;
+			List<Long> addresses = addedPages.get(page);
+			if (addresses == null) {
+				addresses = new ArrayList<Long>();
+				addedPages.put(page, addresses);
+			}
+			addresses.add(address);
+		}
+		SortedSet<Long> pages = new TreeSet<Long>(currentIndex.keySet());
+		pages.removeAll(discardedPages);
+		pages.addAll(addedPages.keySet());
+
+		File tmpFile = null;
+		DataOutputStream out = null;
+		try {
+			List<byte[]> blobs = new ArrayList<byte[]>(pages.size());
+			for (Long page : pages) {
+				byte[] blob = currentIndex.containsKey(page) && !discardedPages.contains(page) ? 
+						readBlob(current, currentIndex.get(page)) : null;
+				List<Long> addresses = addedPages.get(page);
+				if (addresses != null) {
+					Map<Long, Entry> entries = new TreeMap<Long, Entry>();
+					if (blob != null) {
+						try {
+							decodePage(blob, entries);
+						} catch (Exception e) {
+							logger.debug("Replacing unreadable page " + page + " of IL cache file " + cacheFile.getName());
+							entries.clear();
+						}
+					}
+					for (Long address : addresses)
+						entries.put(address, added.get(address));
+					blob = encodePage(entries);
+				}
+				blobs.add(blob);
+			}
+
+			tmpFile = File.createTempFile(key, SUFFIX + ".tmp", cacheFile.getParentFile());
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(key);
+			out.writeInt(pages.size());
+			long offset = 0;
+			int i = 0;
+			for (Long page : pages) {
+				out.writeLong(page);
+				out.writeLong(offset);
+				out.writeInt(blobs.get(i).length);
+				offset += blobs.get(i++).length;
+			}
+			for (byte[] blob : blobs)
+				out.write(blob);
+			out.close();
+			out = null;
+			if (current != null) {
+				current.close();
+				current = null;
+			}
+			if (!tmpFile.renameTo(cacheFile)) {
+				// Windows does not replace existing files when renaming
+				cacheFile.delete();
+				if (!tmpFile.renameTo(cacheFile))
+					throw new IOException("Cannot rename " + tmpFile.getName());
+			}
+			logger.debug("Wrote " + added.size() + " new instructions to IL cache file " + cacheFile.getName());
+			added.clear();
+		} catch (Exception e) {
+			logger.warn("Could not write IL cache file " + cacheFile.getName() + ": " + e);
+			if (tmpFile != null)
+				tmpFile.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+				tmpFile.delete();
+			}
+			if (current != null) {
+				try {
+					current.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private Entry lookup(long address) {
+		if (in != null) {
+			Long page = address >>> PAGE_BITS;
+			if (loadedPages.add(page) && index.containsKey(page)) {
+				Map<Long, Entry> entries = new HashMap<Long, Entry>();
+				try {
+					decodePage(readBlob(in, index.get(page)), entries);
+					loaded.putAll(entries);
+				} catch (Exception e) {
+					logger.warn("Discarding page " + page + " of IL cache file " + cacheFile.getName() + ": " + e);
+					discardedPages.add(page);
+				}
+			}
+		}
+		return loaded.get(address);
+	}
+
+	private void close() {
+		if (in != null) {
+			try {
+				in.close();
+			} catch (IOException e) {
+			}
+			in = null;
+		}
+	}
+
+	private static Map<Long, long[]> readIndex(RandomAccessFile file, String key) throws IOException {
+		if (file.readInt() != MAGIC || file.readInt() != FORMAT_VERSION || !file.readUTF().equals(key))
+			throw new IOException("Invalid header");
+		int pageCount = file.readInt();
+		byte[] buffer = new byte[pageCount * 20];
+		file.readFully(buffer);
+		long dataStart = file.getFilePointer();
+		DataInputStream din = new DataInputStream(new ByteArrayInputStream(buffer));
+		Map<Long, long[]> index = new HashMap<Long, long[]>(2 * pageCount);
+		for (int i = 0; i < pageCount; i++) {
+			long page = din.readLong();
+			long offset = din.readLong();
+			int length = din.readInt();
+			if (dataStart + offset + length > file.length())
+				throw new IOException("Truncated file");
+			index.put(page, new long[] {dataStart + offset, length});
+		}
+		return index;
+	}
+
+	private static byte[] readBlob(RandomAccessFile file, long[] position) throws IOException {
+		byte[] blob = new byte[(int)position[1]];
+		file.seek(position[0]);
+		file.readFully(blob);
+		return blob;
+	}
+
+	private static void decodePage(byte[] blob, Map<Long, Entry> entries) throws IOException, ClassNotFoundException {
+		ObjectInputStream oin = new CheckedObjectInputStream(new BufferedInputStream(
+				new InflaterInputStream(new ByteArrayInputStream(blob))));
+		int count = oin.readInt();
+		for (int i = 0; i < count; i++) {
+			long address = oin.readLong();
+			Instruction instr = (Instruction)oin.readObject();
+			StatementSequence seq = (StatementSequence)oin.readObject();
+			entries.put(address, new Entry(instr, seq));
+		}
+		oin.close();
+	}
+
+	private static byte[] encodePage(Map<Long, Entry> entries) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream oout = new ObjectOutputStream(new DeflaterOutputStream(bytes));
+		oout.writeInt(entries.size());
+		for (Map.Entry<Long, Entry> e : entries.entrySet()) {
+			oout.writeLong(e.getKey());
+			oout.writeObject(e.getValue().instruction);
+			oout.writeObject(e.getValue().statements);
+		}
+		oout.close();
+		return bytes.toByteArray();
+	}
+
+}
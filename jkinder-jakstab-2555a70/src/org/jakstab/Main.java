@@ -23,6 +23,7 @@ import java.util.*;
 
 import org.jakstab.transformation.DeadCodeElimination;
 import org.jakstab.transformation.ExpressionSubstitution;
+import org.jakstab.transformation.SparseExpressionSubstitution;
 import org.jakstab.util.*;
 import org.jakstab.analysis.*;
 import org.jakstab.analysis.composite.CompositeState;
@@ -34,8 +35,10 @@ import org.jakstab.asm.*;
 import org.jakstab.cfa.ControlFlowGraph;
 import org.jakstab.cfa.IntraproceduralCFG;
 import org.jakstab.cfa.Location;
+import org.jakstab.disasm.x86.X86Disassembler;
 import org.jakstab.loader.*;
 import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.ExpressionSimplifier;
 import org.jakstab.ssl.Architecture;
 
 import com.google.common.collect.HashMultimap;
@@ -73,6 +76,9 @@ public class Main {
 		
 		logBanner();
 
+		if (Options.internExpressions.getValue())
+			ExpressionFactory.setInterning(true);
+
 		/////////////////////////
 		// Parse SSL file
 
@@ -202,6 +208,9 @@ public class Main {
 			}
 			long overallEndTime = System.currentTimeMillis();
 
+			program.stopPreDecoding();
+			program.storeILCache();
+
 			ReachedSet reached = cfr.getReachedStates();
 			if (Options.dumpStates.getValue()) {
 				// output
@@ -253,7 +262,9 @@ public class Main {
 			logger.error( "   Statistics for Control Flow Reconstruction");
 			logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
 			logger.error( "   Runtime:                     " + String.format("%8dms", (overallEndTime - overallStartTime)));
+			logger.error( "   Simplifier time:             " + String.format("%8dms", ExpressionSimplifier.getSimplificationTime()));
 			logger.error( "   Instructions:                        " + String.format("%8d", program.getInstructionCount()));
+			logger.error( "   Disassembly throughput:              " + String.format("%8d", X86Disassembler.getDecodedInstructionCount() * 1000 / Math.max(1, X86Disassembler.getDecodingTime())) + " instr/s");
 			logger.error( "   RTL Statements:                      " + String.format("%8d", program.getStatementCount()));
 			logger.error( "   CFA Edges:                           " + String.format("%8d", program.getCFG().numEdges()));
 			logger.error( "   States visited:                      " + String.format("%8d", cfr.getNumberOfStatesVisited()));
@@ -264,7 +275,17 @@ public class Main {
 			logger.error( "   Indirect Branches (no import calls): " + String.format("%8d", indirectBranches));
 			logger.error( "   Unresolved Branches:                 " + String.format("%8d", program.getUnresolvedBranches().size()));
 			logger.debug("   FastSet conversions:                 " + String.format("%8d", FastSet.getConversionCount()));
+			if (Options.ilCacheDir.getValue().length() > 0)
+				logger.verbose("   IL cache hits:                       " + String.format("%8d", program.getILCacheHits()) + " / " + program.getInstructionCount());
+			if (Options.predecodeThreads.getValue() > 0)
+				logger.verbose("   Pre-decoded instructions used:       " + String.format("%8d", program.getPreDecodeCounts()[1]) + " / " + program.getPreDecodeCounts()[0]);
+			logger.verbose("   SSL template cache hits:             " + String.format("%8d", arch.getTemplateCacheHits()) + " / " + arch.getTemplateCacheLookups());
+			logger.verbose("   Simplifier cache hits:               " + String.format("%8d", ExpressionSimplifier.getMemoHitCount()) + " / " + ExpressionSimplifier.getMemoLookupCount());
+			logger.verbose("   Store region map copies:             " + String.format("%8d", LazyHashMapMap.getCopyCount()));
+			logger.verbose("   Store submap copies:                 " + String.format("%8d", LazyTreeMap.getCopyCount()));
 			logger.debug("   Variable count:                      " + String.format("%8d", ExpressionFactory.getVariableCount()));
+			if (ExpressionFactory.isInterning())
+				logger.verbose("   Interned expressions:                " + String.format("%8d", ExpressionFactory.getInternedExpressionCount()));
 			logger.error(Characters.DOUBLE_LINE_FULL_WIDTH);
 
 			
@@ -315,9 +336,15 @@ public class Main {
 				// Simplify CFA
 				logger.info("=== Simplifying CFA ===");
 				DeadCodeElimination dce;
-				ExpressionSubstitution subst = new ExpressionSubstitution(program.getCFG());
-				runAlgorithm(subst);
-				dce = new DeadCodeElimination(subst.getCFA(), false); 
+				if (Options.sparseSubstitution.getValue()) {
+					SparseExpressionSubstitution subst = new SparseExpressionSubstitution(program.getCFG());
+					runAlgorithm(subst);
+					dce = new DeadCodeElimination(subst.getCFA(), false); 
+				} else {
+					ExpressionSubstitution subst = new ExpressionSubstitution(program.getCFG());
+					runAlgorithm(subst);
+					dce = new DeadCodeElimination(subst.getCFA(), false); 
+				}
 				runAlgorithm(dce);
 				logger.info("=== Finished CFA simplification, removed " + dce.getRemovalCount() + " edges. ===");
 				program.setCFA(dce.getCFA());
@@ -76,6 +76,8 @@ public class Options {
 	public static String arguments;
 
 	public static JOption<String> sslFilename = JOption.create("ssl", "file", jakstabHome + "/ssl/pentium.ssl", "Use <file> instead of pentium.ssl.");
+	public static JOption<String> prologuePatterns = JOption.create("prologues", "file", "", "Read the procedure prologues used by -h from <file>, one hex byte sequence per line.");
+	public static JOption<String> ilCacheDir = JOption.create("il-cache", "dir", "", "Cache disassembled and translated instructions in <dir> for later runs on the same modules.");
 	public static JOption<Long> startAddress = JOption.create("a", "address", -1L, "Start analysis at given virtual address.");
 	public static JOption<Boolean> wdm = JOption.create("wdm", "WDM mode, export main function as DriverMain.");
 	public static JOption<Boolean> allEdges = JOption.create("all-edges", "Generate a true over-approximation and add edges to all possible addresses when over-approximating a jump (very slow!).");
@@ -94,9 +96,12 @@ public class Options {
 	public static JOption<Boolean> initHeapToBot = JOption.create("bot-heap", "Initialize heap cells to BOT to force strong updates.");
 	public static JOption<Boolean> summarizeRep = JOption.create("summarize-rep", "Use summarizing transformer for string instructions.");
 	public static JOption<Boolean> basicBlocks = JOption.create("basicblocks", "Build CFA from basic-blocks instead of single statements.");
+	public static JOption<Boolean> sparseSubstitution = JOption.create("sparse-subst", "Simplify the CFA before secondary analyses by expression substitution on SSA form instead of a data flow analysis.");
+	public static JOption<Boolean> internExpressions = JOption.create("intern", "Hash-cons RTL numbers, operations, and memory locations, so structurally equal expressions are shared.");
 	public static JOption<Integer> simplifyVCFG = JOption.create("simplifyVCFG", "l", 1, "In VPC-CFG reconstruction, simplify the reconstructed graph using (0) nothing (1) DCE (2) DCE + Expression Substitution");
 	public static JOption<Integer> verbosity = JOption.create("v", "level", 3, "Set verbosity to value. Default is 3.");
 	public static JOption<Integer> timeout = JOption.create("timeout", "t", -1, "Set timeout in seconds for the analysis.");
+	public static JOption<Integer> predecodeThreads = JOption.create("predecode", "n", 0, "Number of background threads for disassembling reachable code ahead of the analysis. Default is 0 (off).");
 	public static JOption<Integer> procedureAbstraction = JOption.create("procedures", "n", 0, "Level of procedure assumptions: " +
 			"0: Pessimistic: No assumptions, treat calls and returns as jumps (default). " + 
 			"1: Semi-optimistic: Abstract unknown calls according to ABI contract. " + 
@@ -107,6 +112,7 @@ public class Options {
 	public static JOption<String> cpas = JOption.create("cpa", "{" + mgr.getShorthandsString() + "}", "x", "Configure which analyses to use for control flow reconstruction.");
 	public static JOption<String> secondaryCPAs = JOption.create("cpa2", "{" + mgr.getShorthandsString() + "}", "", "Secondary analyses to be performed after the initial CFG reconstruction and dead code elimination are completed.");
 	public static JOption<String> procedureGraph = JOption.create("procedure-graph", "p", "", "Generate intraprocedural CFG for procedure with give name (requires symbols)");
+	public static JOption<String> worklistOrder = JOption.create("worklist", "order", "wto", "Worklist order for secondary cpas on the reconstructed CFG: fifo, rpo (reverse postorder), or wto (weak topological order, default).");
 	
 	/**
 	 * Handle command line options.
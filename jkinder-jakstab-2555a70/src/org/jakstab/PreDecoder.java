@@ -0,0 +1,197 @@
+/*
+ * PreDecoder.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.asm.Address;
+import org.jakstab.asm.BranchInstruction;
+import org.jakstab.asm.CallInstruction;
+import org.jakstab.asm.Instruction;
+import org.jakstab.asm.Operand;
+import org.jakstab.asm.ReturnInstruction;
+import org.jakstab.disasm.Disassembler;
+import org.jakstab.loader.ExecutableImage;
+import org.jakstab.loader.ModuleIndex;
+import org.jakstab.util.Logger;
+
+/**
+ * Disassembles instructions ahead of the analysis on a pool of background 
+ * threads. Addresses are submitted as branch targets are discovered, and each
+ * decoded instruction is followed along its fall-through and its direct branch 
+ * targets for a limited number of instructions.
+ *
+ * The workers only decode instructions, which needs nothing but the module 
+ * index and a disassembler of their own. Translation to IL, which creates 
+ * variables in the ExpressionFactory, and all checks against the harness and 
+ * stubs remain on the analysis thread, so they happen in the same order with 
+ * and without pre-decoding. Decoded instructions are published into a 
+ * concurrent map, from which the analysis thread takes them without waiting. 
+ * Addresses that are not done yet it decodes by itself as before. Failures are
+ * not reported by the workers, they are left to the analysis thread in case it
+ * actually reaches the address.
+ */
+final class PreDecoder {
+
+	private static final Logger logger = Logger.getLogger(PreDecoder.class);
+
+	/** Number of instructions to follow from a submitted address. */
+	private static final int LOOKAHEAD = 32;
+
+	private final Program program;
+	private final ExecutorService executor;
+	private final Set<Long> scheduled = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+	private final Map<Long, Instruction> decoded = new ConcurrentHashMap<Long, Instruction>();
+	private final AtomicInteger decodedCount = new AtomicInteger();
+	private int usedCount = 0;
+
+	// Disassemblers of each worker thread by module
+	private final ThreadLocal<Map<ExecutableImage, Disassembler>> disassemblers =
+		new ThreadLocal<Map<ExecutableImage, Disassembler>>() {
+			@Override
+			protected Map<ExecutableImage, Disassembler> initialValue() {
+				return new HashMap<ExecutableImage, Disassembler>();
+			}
+		};
+
+	PreDecoder(Program program, int threads) {
+		this.program = program;
+		logger.info("Disassembling instructions ahead of the analysis using " + threads + " background threads.");
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count = 0;
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Pre-decoder " + (++count));
+				// Do not keep the VM alive on System.exit or a failed analysis
+				t.setDaemon(true);
+				t.setPriority(Thread.NORM_PRIORITY - 1);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Schedules the instruction at the given address and its successors for
+	 * decoding, unless it has been scheduled before.
+	 */
+	void submit(AbsoluteAddress address) {
+		submit(address.getValue(), LOOKAHEAD);
+	}
+
+	/**
+	 * Removes and returns the decoded instruction at the given address, if it 
+	 * is finished. Never waits for the workers.
+	 *
+	 * @return the instruction, or null if it is not available.
+	 */
+	Instruction take(AbsoluteAddress address) {
+		Instruction instr = decoded.remove(address.getValue());
+		if (instr != null)
+			usedCount++;
+		return instr;
+	}
+
+	/**
+	 * Stops all workers and drops the instructions that were not taken. 
+	 */
+	void shutdown() {
+		executor.shutdownNow();
+		decoded.clear();
+	}
+
+	int getDecodedCount() {
+		return decodedCount.get();
+	}
+
+	int getUsedCount() {
+		return usedCount;
+	}
+
+	private void submit(final long address, final int lookahead) {
+		if (!scheduled.add(address))
+			return;
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					decode(address, lookahead);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// Already shut down
+		}
+	}
+
+	private void decode(long address, int lookahead) {
+		ModuleIndex index = program.getModuleIndex();
+		int slot = index.find(address);
+		if (slot < 0)
+			return;
+		ExecutableImage module = index.getModule(slot);
+		long fp = index.getFilePointer(slot, address);
+		if (fp < 0 || (int)fp < 0 || !module.isCodeArea(new AbsoluteAddress(address)))
+			return;
+
+		Disassembler disassembler = disassemblers.get().get(module);
+		if (disassembler == null) {
+			disassembler = module.createDisassembler();
+			disassemblers.get().put(module, disassembler);
+		}
+
+		Instruction instr;
+		try {
+			instr = disassembler.decodeInstruction(fp);
+		} catch (Exception e) {
+			logger.debug("Could not decode instruction at 0x" + Long.toHexString(address) + " ahead of the analysis: " + e);
+			return;
+		}
+		if (instr == null)
+			return;
+		decoded.put(address, instr);
+		decodedCount.incrementAndGet();
+
+		if (lookahead == 0)
+			return;
+		boolean fallsThrough = true;
+		if (instr instanceof BranchInstruction) {
+			BranchInstruction branch = (BranchInstruction)instr;
+			Operand destination = branch.getBranchDestination();
+			if (destination instanceof Address) {
+				long target = ((Address)destination).getEffectiveValue(address);
+				if (target >= 0)
+					submit(target, lookahead - 1);
+			}
+			if (instr instanceof ReturnInstruction || 
+					!(instr instanceof CallInstruction || branch.isConditional()))
+				fallsThrough = false;
+		}
+		if (fallsThrough)
+			submit(address + instr.getSize(), lookahead - 1);
+	}
+
+}
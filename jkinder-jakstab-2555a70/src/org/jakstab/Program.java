@@ -39,6 +39,7 @@ import org.jakstab.rtl.statements.RTLStatement;
 import org.jakstab.rtl.statements.StatementSequence;
 import org.jakstab.ssl.Architecture;
 import org.jakstab.util.FastSet;
+import org.jakstab.util.LongHashMap;
 
 
 /**
@@ -76,16 +77,24 @@ public final class Program {
 
 	private final Architecture arch;
 	private RTLLabel start;
-	private Map<RTLLabel, RTLStatement> statementMap;
-	private Map<AbsoluteAddress, Instruction> assemblyMap;
+	/** Statements by their packed label, see {@link #labelKey(RTLLabel)}. */
+	private final LongHashMap<RTLStatement> statementMap;
+	/** Statements with labels that cannot be packed into a long, created on demand. */
+	private Map<RTLLabel, RTLStatement> statementOverflow;
+	/** Instructions by their address value. */
+	private final LongHashMap<Instruction> assemblyMap;
+	private final Map<AbsoluteAddress, Instruction> assemblyView;
 	private ExecutableImage mainModule;
 	private List<ExecutableImage> modules;
+	private volatile ModuleIndex moduleIndex;
 	private ControlFlowGraph cfg;
 	private final Map<String, ExportedSymbol> exportedSymbols;
 	private final Set<UnresolvedSymbol> unresolvedSymbols;
 	private Set<RTLLabel> unresolvedBranches;
 	private StubProvider stubLibrary;
 	private Harness harness;
+	private final Map<ExecutableImage, ILCache> ilCaches;
+	private PreDecoder preDecoder;
 	
 	public enum TargetOS {WINDOWS, LINUX, UNKNOWN};
 	private TargetOS targetOS;
@@ -95,9 +104,12 @@ public final class Program {
 		this.targetOS = TargetOS.UNKNOWN;
 
 		modules = new LinkedList<ExecutableImage>();
-		assemblyMap = new TreeMap<AbsoluteAddress, Instruction>();
-		statementMap = new HashMap<RTLLabel, RTLStatement>(2000);
+		moduleIndex = new ModuleIndex(modules);
+		assemblyMap = new LongHashMap<Instruction>(1000);
+		assemblyView = new AssemblyMapView();
+		statementMap = new LongHashMap<RTLStatement>(2000);
 		exportedSymbols = new HashMap<String, ExportedSymbol>();
+		ilCaches = new HashMap<ExecutableImage, ILCache>();
 		unresolvedSymbols = new FastSet<UnresolvedSymbol>();
 		
 		unresolvedBranches = new FastSet<RTLLabel>();
@@ -159,6 +171,7 @@ public final class Program {
 		
 		
 		modules.add(module);
+		moduleIndex = new ModuleIndex(modules);
 		unresolvedSymbols.addAll(module.getUnresolvedSymbols());
 		for (ExportedSymbol symbol : module.getExportedSymbols()) {
 			exportedSymbols.put(removeDecoration(symbol.getName()), symbol);
@@ -255,8 +268,11 @@ public final class Program {
 	 * @param harness the harness object to install
 	 */
 	public void installHarness(Harness harness) {
+		AbsoluteAddress entryAddress = start == null ? null : start.getAddress();
 		this.harness = harness;
 		harness.install(this);
+		if (entryAddress != null)
+			preDecode(entryAddress);
 	}
 	
 	/**
@@ -289,11 +305,9 @@ public final class Program {
 	 * @return the module to which the given virtual address belongs. 
 	 */
 	public ExecutableImage getModule(AbsoluteAddress a) {
-		for (ExecutableImage module : modules) {
-			if (module.getFilePointer(a) >= 0)
-				return module;
-		}
-		return null;
+		ModuleIndex index = moduleIndex;
+		int slot = index.find(a.getValue());
+		return slot < 0 ? null : index.getModule(slot);
 	}
 	
 	public Iterator<AbsoluteAddress> codeAddressIterator() {
@@ -309,7 +323,8 @@ public final class Program {
 	 * @return The statement object at label.
 	 */
 	public final RTLStatement getStatement(RTLLabel label) {
-		if (!statementMap.containsKey(label)) {
+		RTLStatement stmt = lookupStatement(label);
+		if (stmt == null) {
 			AbsoluteAddress address = label.getAddress();
 			Instruction instr = getInstruction(address);
 			// If we did not get an instruction, add an artificial Halt for recovery
@@ -322,7 +337,14 @@ public final class Program {
 					throw new DisassemblyException("Disassembly failed at " + address);
 			} else {
 				try {
-					StatementSequence seq = arch.getRTLEquivalent(address, instr);
+					ExecutableImage module = getModule(address);
+					ILCache cache = module == null ? null : getILCache(module);
+					StatementSequence seq = cache == null ? null : cache.getStatements(address);
+					if (seq == null) {
+						seq = arch.getRTLEquivalent(address, instr);
+						if (cache != null)
+							cache.put(address, instr, seq);
+					}
 					for (RTLStatement s : seq) {
 						putStatement(s);
 					}
@@ -334,10 +356,11 @@ public final class Program {
 					skip.setNextLabel(new RTLLabel(new AbsoluteAddress(address.getValue() + 1)));
 					putStatement(skip);
 				}
-				assert statementMap.containsKey(label) : "Disassembly did not produce label: " + label;
+				assert containsLabel(label) : "Disassembly did not produce label: " + label;
 			}
+			stmt = lookupStatement(label);
 		}
-		return statementMap.get(label);
+		return stmt;
 	}
 	
 	/**
@@ -347,20 +370,48 @@ public final class Program {
 	 * @param stmt The statement to be stored. Has to contain a proper label.
 	 */
 	public final void putStatement(RTLStatement stmt) {
-		RTLStatement existing = statementMap.get(stmt.getLabel());
+		RTLLabel label = stmt.getLabel();
+		RTLStatement existing = lookupStatement(label);
 		if (existing != null) {
 			if (existing.equals(stmt)) return;
-			logger.debug("Replacing statement at " + stmt.getLabel());
+			logger.debug("Replacing statement at " + label);
+		}
+		long key = labelKey(label);
+		if (key >= 0) {
+			statementMap.put(key, stmt);
+		} else {
+			if (statementOverflow == null)
+				statementOverflow = new HashMap<RTLLabel, RTLStatement>();
+			statementOverflow.put(label, stmt);
 		}
-		statementMap.put(stmt.getLabel(), stmt);
 	}
 	
 	public boolean containsLabel(RTLLabel label) {
-		return statementMap.containsKey(label);
+		return lookupStatement(label) != null;
 	}
 
 	public final int getStatementCount() {
-		return statementMap.size();
+		return statementMap.size() + (statementOverflow == null ? 0 : statementOverflow.size());
+	}
+
+	private RTLStatement lookupStatement(RTLLabel label) {
+		long key = labelKey(label);
+		if (key >= 0)
+			return statementMap.get(key);
+		return statementOverflow == null ? null : statementOverflow.get(label);
+	}
+
+	/**
+	 * Packs a label into a long as address << 8 | index.
+	 * 
+	 * @return the packed label, or -1 if the address or index are too large.
+	 */
+	private static long labelKey(RTLLabel label) {
+		long address = label.getAddress().getValue();
+		int index = label.getIndex();
+		if (index < 0 || index > 0xFF || (address >>> 55) != 0)
+			return -1;
+		return address << 8 | index;
 	}
 
 	public final int getInstructionCount() {
@@ -378,7 +429,7 @@ public final class Program {
 	 */
 	public final Instruction getInstruction(AbsoluteAddress address) {
 
-		Instruction instr = assemblyMap.get(address);
+		Instruction instr = assemblyMap.get(address.getValue());
 		if (instr != null) {
 			return instr;
 		} else {
@@ -386,13 +437,15 @@ public final class Program {
 			if (harness.contains(address) || isStub(address))
 				return null;
 			
-			ExecutableImage module = getModule(address);
+			ModuleIndex index = moduleIndex;
+			int slot = index.find(address.getValue());
+			ExecutableImage module = slot < 0 ? null : index.getModule(slot);
 
 			long fp = -1;
 			if (module == null) {
 				logger.error("No module for address " + address + ". Cannot disassemble instruction!");
 			} else {
-				fp = module.getFilePointer(address);
+				fp = index.getFilePointer(slot, address.getValue());
 				// Also check whether fp is out of the int range, since the X86Disassembler actually
 				// performs this cast in its implementation.
 				if (fp < 0 || (int)fp < 0) {
@@ -402,7 +455,13 @@ public final class Program {
 						logger.error("Requested instruction outside code section: " + address);
 						return null;
 					}
-					instr = module.getDisassembler().decodeInstruction(fp);
+					ILCache cache = getILCache(module);
+					if (cache != null)
+						instr = cache.getInstruction(address);
+					if (instr == null && preDecoder != null)
+						instr = preDecoder.take(address);
+					if (instr == null)
+						instr = module.getDisassembler().decodeInstruction(fp);
 					if (instr == null) {
 						logger.error("Instruction could not be disassembled at: " + address);
 					}
@@ -415,6 +474,78 @@ public final class Program {
 		}
 	}
 
+	/**
+	 * Returns the IL cache for the given module, if enabled by the il-cache option.
+	 */
+	private ILCache getILCache(ExecutableImage module) {
+		if (Options.ilCacheDir.getValue().length() == 0)
+			return null;
+		if (!ilCaches.containsKey(module))
+			ilCaches.put(module, ILCache.open(new File(Options.ilCacheDir.getValue()), module, arch));
+		return ilCaches.get(module);
+	}
+
+	/**
+	 * Schedules the instruction at the given address and the code following it 
+	 * for disassembly in the background, if enabled by the predecode option. 
+	 * 
+	 * @param address a newly discovered code address
+	 */
+	public void preDecode(AbsoluteAddress address) {
+		if (preDecoder == null) {
+			if (Options.predecodeThreads.getValue() <= 0)
+				return;
+			preDecoder = new PreDecoder(this, Options.predecodeThreads.getValue());
+		}
+		preDecoder.submit(address);
+	}
+
+	/**
+	 * Stops background disassembly of instructions.
+	 */
+	public void stopPreDecoding() {
+		if (preDecoder != null)
+			preDecoder.shutdown();
+	}
+
+	/**
+	 * Returns the number of instructions disassembled in the background, and 
+	 * how many of those the analysis used.
+	 * 
+	 * @return an array of the decoded and the used instruction counts
+	 */
+	public int[] getPreDecodeCounts() {
+		if (preDecoder == null)
+			return new int[] {0, 0};
+		return new int[] {preDecoder.getDecodedCount(), preDecoder.getUsedCount()};
+	}
+
+	ModuleIndex getModuleIndex() {
+		return moduleIndex;
+	}
+
+	/**
+	 * Writes the instructions and statements translated in this run to the IL cache.
+	 */
+	public void storeILCache() {
+		for (ILCache cache : ilCaches.values()) {
+			if (cache != null)
+				cache.store();
+		}
+	}
+
+	/**
+	 * Returns the number of instructions taken from the IL cache in this run.
+	 */
+	public int getILCacheHits() {
+		int hits = 0;
+		for (ILCache cache : ilCaches.values()) {
+			if (cache != null)
+				hits += cache.getHitCount();
+		}
+		return hits;
+	}
+
 	/**
 	 * Stores an assembly instruction at the given address, overwriting
 	 * any existing instruction.
@@ -424,7 +555,7 @@ public final class Program {
 	 */
 	public final boolean putInstruction(AbsoluteAddress addr, Instruction instr) {
 		//logger.info(addr + " " + instr.toString(addr.getValue(), new DummySymbolFinder()));
-		return assemblyMap.put(addr, instr) == null;
+		return assemblyMap.put(addr.getValue(), instr) == null;
 	}
 	
 	/**
@@ -490,10 +621,75 @@ public final class Program {
 	}
 
 	/**
-	 * @return the assemblyMap
+	 * Returns a read-only view of all disassembled instructions. Iteration is
+	 * in ascending order of addresses, and lookups do not disassemble missing
+	 * instructions.
+	 * 
+	 * @return the instructions by their address
 	 */
 	public final Map<AbsoluteAddress, Instruction> getAssemblyMap() {
-		return assemblyMap;
+		return assemblyView;
+	}
+
+	/**
+	 * Read-only map view of the assembly map.
+	 */
+	private final class AssemblyMapView extends AbstractMap<AbsoluteAddress, Instruction> {
+
+		@Override
+		public Instruction get(Object key) {
+			if (!(key instanceof AbsoluteAddress))
+				return null;
+			return assemblyMap.get(((AbsoluteAddress)key).getValue());
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public int size() {
+			return assemblyMap.size();
+		}
+
+		@Override
+		public Set<Map.Entry<AbsoluteAddress, Instruction>> entrySet() {
+			return new AbstractSet<Map.Entry<AbsoluteAddress, Instruction>>() {
+
+				@Override
+				public Iterator<Map.Entry<AbsoluteAddress, Instruction>> iterator() {
+					final long[] addresses = assemblyMap.sortedKeys();
+					return new Iterator<Map.Entry<AbsoluteAddress, Instruction>>() {
+						private int i = 0;
+
+						@Override
+						public boolean hasNext() {
+							return i < addresses.length;
+						}
+
+						@Override
+						public Map.Entry<AbsoluteAddress, Instruction> next() {
+							if (!hasNext())
+								throw new NoSuchElementException();
+							long address = addresses[i++];
+							return new AbstractMap.SimpleImmutableEntry<AbsoluteAddress, Instruction>(
+									new AbsoluteAddress(address), assemblyMap.get(address));
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return assemblyMap.size();
+				}
+			};
+		}
 	}
 
 	public TargetOS getTargetOS() {
@@ -536,7 +732,7 @@ public final class Program {
 	
 	public int countIndirectBranches() {
 		int res = 0;
-		for (Map.Entry<AbsoluteAddress, Instruction> entry : assemblyMap.entrySet()) {
+		for (Map.Entry<AbsoluteAddress, Instruction> entry : assemblyView.entrySet()) {
 			Instruction instr = entry.getValue();
 			
 			if (instr instanceof BranchInstruction) {
@@ -60,7 +60,8 @@ public class CPAAlgorithm implements Algorithm {
 	 */
 	public static CPAAlgorithm createForwardAlgorithm(ControlFlowGraph cfg, ConfigurableProgramAnalysis... cpas) {
 		ConfigurableProgramAnalysis cpa = new CompositeProgramAnalysis(new LocationAnalysis(), cpas);
-		return new CPAAlgorithm(cpa, new CFATransformerFactory(cfg), new FastSet<AbstractState>());
+		return new CPAAlgorithm(cpa, new CFATransformerFactory(cfg), 
+				createWorklist(cfg, Collections.singleton(cfg.getEntryPoint()), false));
 	}
 
 	/**
@@ -72,7 +73,36 @@ public class CPAAlgorithm implements Algorithm {
 	 */
 	public static CPAAlgorithm createBackwardAlgorithm(ControlFlowGraph cfg, ConfigurableProgramAnalysis... cpas) {
 		ConfigurableProgramAnalysis cpa = new CompositeProgramAnalysis(new BackwardLocationAnalysis(), cpas);
-		return new CPAAlgorithm(cpa, new ReverseCFATransformerFactory(cfg), new FastSet<AbstractState>());
+		List<Location> sinks = new LinkedList<Location>();
+		for (Location l : cfg.getNodes()) {
+			if (cfg.getOutDegree(l) == 0)
+				sinks.add(l);
+		}
+		return new CPAAlgorithm(cpa, new ReverseCFATransformerFactory(cfg), createWorklist(cfg, sinks, true));
+	}
+	
+	/**
+	 * Creates a worklist for an analysis of a complete control flow automaton, 
+	 * ordered as configured by the worklist option.
+	 * 
+	 * @param cfg the control flow graph to be analyzed
+	 * @param roots the locations the analysis starts from
+	 * @param backward whether the analysis follows edges backwards
+	 */
+	private static Worklist<AbstractState> createWorklist(ControlFlowGraph cfg, 
+			Collection<Location> roots, boolean backward) {
+		String order = Options.worklistOrder.getValue();
+		if (order.equals("fifo")) {
+			return new FastSet<AbstractState>();
+		} else if (order.equals("rpo")) {
+			return new LocationOrderWorklist(IterationOrder.reversePostorder(cfg, roots, backward));
+		} else if (order.equals("wto")) {
+			return new LocationOrderWorklist(IterationOrder.weakTopologicalOrder(cfg, roots, backward));
+		} else {
+			logger.fatal("Unknown worklist order \"" + order + "\", use fifo, rpo, or wto!");
+			System.exit(1);
+			return null;
+		}
 	}
 
 	public CPAAlgorithm(ConfigurableProgramAnalysis cpa,
@@ -249,31 +279,38 @@ public class CPAAlgorithm implements Algorithm {
 					for (AbstractState succ : successors) {
 						//logger.debug("Processing new post state: " + succ.getIdentifier());
 						
-						// Try to merge the new state with an existing one 
-						Set<AbstractState> statesToRemove = new FastSet<AbstractState>();
-						Set<AbstractState> statesToAdd = new FastSet<AbstractState>();
+						// Try to merge the new state with an existing one. The sets are only
+						// allocated once a merge actually changes a reached state.
+						Set<AbstractState> statesToRemove = null;
+						Set<AbstractState> statesToAdd = null;
 
 						for (AbstractState r : reached.where(0, ((CompositeState)succ).getComponent(0))) {
 							AbstractState merged = cpa.merge(succ, r, targetPrecision);
 							if (!merged.equals(r)) {
 								//logger.debug("Merge of new successor:\n" + succ + "\n and reached state:\n" + r + "\n produced new state \n" + merged);
+								if (statesToRemove == null) {
+									statesToRemove = new FastSet<AbstractState>();
+									statesToAdd = new FastSet<AbstractState>();
+								}
 								statesToRemove.add(r);
 								statesToAdd.add(merged);
 							}
 						}
 
-						// replace the old state in worklist and reached with the merged version
-						for (AbstractState r : statesToRemove) {
-							reached.remove(r);
-							worklist.remove(r);
-							//art.remove(r);
-						}
+						if (statesToRemove != null) {
+							// replace the old state in worklist and reached with the merged version
+							for (AbstractState r : statesToRemove) {
+								reached.remove(r);
+								worklist.remove(r);
+								//art.remove(r);
+							}
 
-						for (AbstractState r : statesToAdd) {
-							// Only add r to the worklist if it hasn't been reached yet
-							if (reached.add(r)) {
-								worklist.add(r);
-								if (art != null) art.addChild(unadjustedState, cfaEdge, r);
+							for (AbstractState r : statesToAdd) {
+								// Only add r to the worklist if it hasn't been reached yet
+								if (reached.add(r)) {
+									worklist.add(r);
+									if (art != null) art.addChild(unadjustedState, cfaEdge, r);
+								}
 							}
 						}
 
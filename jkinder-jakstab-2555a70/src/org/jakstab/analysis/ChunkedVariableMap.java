@@ -0,0 +1,272 @@
+/*
+ * ChunkedVariableMap.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.util.Logger;
+
+/**
+ * A map from variables to values backed by an array indexed by
+ * {@link RTLVariable#getIndex()}. The array is split into small chunks that
+ * are shared between a map and its copies and only duplicated when written
+ * to, so copying a map and changing a few variables costs time and memory
+ * proportional to the number of changed chunks, not to the number of
+ * variables in the map.
+ *
+ * A copy shares the array of chunks and all chunks with its prototype, and
+ * the prototype gives up ownership of them. Each chunk records the token of
+ * the map that allocated it in an extra slot after its entries, and a map
+ * only writes to a chunk in place if it holds that token. A copy starts
+ * without a token and the prototype drops its own, so afterwards both copy a
+ * chunk the first time they write to it. Copying therefore writes to the
+ * prototype and must not happen concurrently with other uses of it.
+ *
+ * Entries are iterated in descending variable index, which is the natural
+ * ordering of {@link RTLVariable}.
+ */
+public final class ChunkedVariableMap<V> implements Iterable<Map.Entry<RTLVariable, V>> {
+
+	@SuppressWarnings("unused")
+	private static final Logger logger = Logger.getLogger(ChunkedVariableMap.class);
+
+	private static final int CHUNK_BITS = 3;
+	static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	/** Index of the slot holding the token of the owner of a chunk. */
+	private static final int OWNER = CHUNK_SIZE;
+
+	private static final Object[][] NO_CHUNKS = new Object[0][];
+
+	/** Chunks of entries, null if a chunk contains no entries. */
+	private Object[][] chunks;
+	/** Whether the array of chunks is shared with other maps. */
+	private boolean chunksShared;
+	/** Token of the chunks this map may write in place, null if there are none. */
+	private Object token;
+	private int size;
+
+	public ChunkedVariableMap() {
+		chunks = NO_CHUNKS;
+		chunksShared = false;
+		token = null;
+		size = 0;
+	}
+
+	/**
+	 * Creates a copy of the given map in constant time. The copy shares all
+	 * chunks with the prototype, which gives up ownership of them.
+	 */
+	public ChunkedVariableMap(ChunkedVariableMap<V> proto) {
+		size = proto.size;
+		chunks = proto.chunks;
+		chunksShared = true;
+		token = null;
+		proto.chunksShared = true;
+		proto.token = null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map.Entry<RTLVariable, V> entry(int index) {
+		int c = index >>> CHUNK_BITS;
+		if (c >= chunks.length || chunks[c] == null)
+			return null;
+		return (Map.Entry<RTLVariable, V>)chunks[c][index & CHUNK_MASK];
+	}
+
+	/**
+	 * Returns chunk c for writing, after replacing it by a copy owned by this
+	 * map if necessary.
+	 */
+	private Object[] writableChunk(int c) {
+		if (c >= chunks.length) {
+			chunks = Arrays.copyOf(chunks, Math.max(c + 1, 2 * chunks.length));
+			chunksShared = false;
+		} else if (chunksShared) {
+			chunks = chunks.clone();
+			chunksShared = false;
+		}
+		Object[] chunk = chunks[c];
+		if (chunk != null && chunk[OWNER] == token)
+			return chunk;
+		if (token == null)
+			token = new Object();
+		chunk = chunk == null ? new Object[CHUNK_SIZE + 1] : chunk.clone();
+		chunk[OWNER] = token;
+		chunks[c] = chunk;
+		return chunk;
+	}
+
+	/**
+	 * Returns whether both maps share the chunk holding the given variable,
+	 * for testing.
+	 */
+	boolean sharesChunk(ChunkedVariableMap<V> other, RTLVariable var) {
+		int c = var.getIndex() >>> CHUNK_BITS;
+		return c < chunks.length && c < other.chunks.length && 
+				chunks[c] != null && chunks[c] == other.chunks[c];
+	}
+
+	public V get(RTLVariable var) {
+		Map.Entry<RTLVariable, V> e = entry(var.getIndex());
+		return e == null ? null : e.getValue();
+	}
+
+	public boolean containsKey(RTLVariable var) {
+		return entry(var.getIndex()) != null;
+	}
+
+	public V put(RTLVariable var, V value) {
+		int index = var.getIndex();
+		Map.Entry<RTLVariable, V> old = entry(index);
+		if (old != null && old.getValue() == value)
+			return value;
+		Object[] chunk = writableChunk(index >>> CHUNK_BITS);
+		chunk[index & CHUNK_MASK] = new AbstractMap.SimpleImmutableEntry<RTLVariable, V>(var, value);
+		if (old == null) {
+			size++;
+			return null;
+		}
+		return old.getValue();
+	}
+
+	public V remove(RTLVariable var) {
+		int index = var.getIndex();
+		Map.Entry<RTLVariable, V> old = entry(index);
+		if (old == null)
+			return null;
+		Object[] chunk = writableChunk(index >>> CHUNK_BITS);
+		chunk[index & CHUNK_MASK] = null;
+		size--;
+		return old.getValue();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public Iterator<Map.Entry<RTLVariable, V>> iterator() {
+		return new Iterator<Map.Entry<RTLVariable, V>>() {
+
+			private int next = findNext(chunks.length * CHUNK_SIZE - 1);
+
+			private int findNext(int from) {
+				for (int i = from; i >= 0; i--) {
+					Object[] chunk = chunks[i >>> CHUNK_BITS];
+					if (chunk == null) {
+						i &= ~CHUNK_MASK;
+						continue;
+					}
+					if (chunk[i & CHUNK_MASK] != null)
+						return i;
+				}
+				return -1;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+
+			@Override
+			public Map.Entry<RTLVariable, V> next() {
+				if (next < 0)
+					throw new NoSuchElementException();
+				Map.Entry<RTLVariable, V> e = entry(next);
+				next = findNext(next - 1);
+				return e;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Same as {@link AbstractMap#hashCode()}, the sum of the hash codes of all entries.
+	 */
+	@Override
+	public int hashCode() {
+		int h = 0;
+		for (Object[] chunk : chunks) {
+			if (chunk == null)
+				continue;
+			for (int i = 0; i < CHUNK_SIZE; i++) {
+				if (chunk[i] != null)
+					h += chunk[i].hashCode();
+			}
+		}
+		return h;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ChunkedVariableMap))
+			return false;
+		ChunkedVariableMap<?> other = (ChunkedVariableMap<?>)obj;
+		if (size != other.size)
+			return false;
+		if (chunks == other.chunks)
+			return true;
+		int n = Math.max(chunks.length, other.chunks.length);
+		for (int c = 0; c < n; c++) {
+			Object[] a = c < chunks.length ? chunks[c] : null;
+			Object[] b = c < other.chunks.length ? other.chunks[c] : null;
+			// Shared chunks are equal without looking at their contents
+			if (a == b)
+				continue;
+			for (int i = 0; i < CHUNK_SIZE; i++) {
+				Object x = a == null ? null : a[i];
+				Object y = b == null ? null : b[i];
+				if (x == null ? y != null : !x.equals(y))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append('{');
+		boolean first = true;
+		for (Map.Entry<RTLVariable, V> e : this) {
+			if (!first)
+				sb.append(", ");
+			first = false;
+			sb.append(e.getKey()).append('=').append(e.getValue());
+		}
+		sb.append('}');
+		return sb.toString();
+	}
+
+}
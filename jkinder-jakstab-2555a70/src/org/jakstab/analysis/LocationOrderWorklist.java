@@ -0,0 +1,110 @@
+/*
+ * LocationOrderWorklist.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jakstab.cfa.Location;
+import org.jakstab.util.FastSet;
+import org.jakstab.util.Logger;
+import org.jakstab.util.Worklist;
+
+/**
+ * A worklist that always picks a state at the location with the lowest position
+ * in a precomputed iteration order, such as the weak topological order or reverse
+ * postorder of a reconstructed CFA. States at locations without a position (e.g.,
+ * an artificial exit node) are picked first.
+ */
+public class LocationOrderWorklist implements Worklist<AbstractState> {
+
+	@SuppressWarnings("unused")
+	private static final Logger logger = Logger.getLogger(LocationOrderWorklist.class);
+
+	private final Map<Location, Integer> order;
+	private final TreeMap<Integer, FastSet<AbstractState>> buckets;
+	private int size;
+
+	/**
+	 * @param order a map from locations to their position in the iteration order
+	 */
+	public LocationOrderWorklist(Map<Location, Integer> order) {
+		this.order = order;
+		buckets = new TreeMap<Integer, FastSet<AbstractState>>();
+		size = 0;
+	}
+
+	private Integer position(AbstractState a) {
+		Integer pos = order.get(a.getLocation());
+		return pos == null ? -1 : pos;
+	}
+
+	@Override
+	public boolean add(AbstractState a) {
+		Integer pos = position(a);
+		FastSet<AbstractState> bucket = buckets.get(pos);
+		if (bucket == null) {
+			bucket = new FastSet<AbstractState>();
+			buckets.put(pos, bucket);
+		}
+		if (bucket.add(a)) {
+			size++;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean remove(AbstractState a) {
+		Integer pos = position(a);
+		FastSet<AbstractState> bucket = buckets.get(pos);
+		if (bucket == null || !bucket.remove(a))
+			return false;
+		if (bucket.isEmpty())
+			buckets.remove(pos);
+		size--;
+		return true;
+	}
+
+	@Override
+	public AbstractState pick() {
+		Map.Entry<Integer, FastSet<AbstractState>> first = buckets.firstEntry();
+		FastSet<AbstractState> bucket = first.getValue();
+		AbstractState a = bucket.pick();
+		if (bucket.isEmpty())
+			buckets.remove(first.getKey());
+		size--;
+		return a;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return size + " elements in " + buckets.size() + " locations.";
+	}
+
+}
@@ -30,6 +30,10 @@ import org.jakstab.util.*;
 import org.jakstab.util.MapMap.EntryIterator;
 
 /**
+ * A store that maps offsets in memory regions to abstract values. Each region
+ * is a sorted map of non-overlapping memory cells, keyed by the offset of
+ * their first byte. The cell containing a byte is found by a floor lookup.
+ * 
  * @author Johannes Kinder
  */
 public final class PartitionedMemory<A extends AbstractValue> implements LatticeElement {
@@ -135,33 +139,49 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 			throw new UnknownPointerAccessException("Set all of stack to TOP!");
 	}
 	
-	private void setBytesTop(MemoryRegion region, long offset, int size) {
-		for (int i=0; i<size; i++) {
-			// We need to explicitly remember TOP memory cells in the global region,
-			// as it is initialized to the static data of the executable.
-			// If heap cells are assumed to be initially BOT, we also need to do this.
-			if ((Options.initHeapToBot.getValue() && region != MemoryRegion.STACK) || region == MemoryRegion.GLOBAL) {
-				MemoryCell topCell = new MemoryCell(offset + i, 1, 
+	/**
+	 * Returns the memory cell that contains the byte at the given offset.
+	 * 
+	 * @return the memory cell, or null if the byte is not part of any cell.
+	 */
+	private MemoryCell getCell(MemoryRegion region, long offset) {
+		Map.Entry<Long, MemoryCell> entry = store.floorEntry(region, offset);
+		if (entry == null)
+			return null;
+		MemoryCell cell = entry.getValue();
+		return cell.offset + cell.size > offset ? cell : null;
+	}
+	
+	/**
+	 * Removes a memory cell and sets its bytes outside of the given range to TOP.
+	 */
+	private void setCellTop(MemoryRegion region, MemoryCell cell, long keepFrom, long keepTo) {
+		store.remove(region, cell.offset);
+		// We need to explicitly remember TOP memory cells in the global region,
+		// as it is initialized to the static data of the executable.
+		// If heap cells are assumed to be initially BOT, we also need to do this.
+		if ((Options.initHeapToBot.getValue() && region != MemoryRegion.STACK) || region == MemoryRegion.GLOBAL) {
+			for (int i=0; i<cell.size; i++) {
+				long byteOffset = cell.offset + i;
+				if (byteOffset >= keepFrom && byteOffset < keepTo)
+					continue;
+				MemoryCell topCell = new MemoryCell(byteOffset, 1, 
 						valueFactory.createTop(8));
-				store.put(region, offset + i, topCell);
-			} else {
-				store.remove(region, offset + i);
+				store.put(region, byteOffset, topCell);
 			}
 		}
 	}
 	
 	/**
 	 * Sets a value at an offset in a memory region. If any existing memory
-	 * cells are partially overwritten, sets the memory cell at the original
-	 * offset to TOP. Other copies of the cell at intermediate offsets do 
-	 * not need to be overwritten.
+	 * cells are partially overwritten, their remaining bytes are set to TOP.
 	 * 
 	 * A A A A B B[B]B C C C C    <- Write 1-byte X to offset 6
-	 * A A A A T B X B C C C C
+	 * A A A A T T X T C C C C
 	 *
 	 * A A A A B B B[B C]C C C    <- Write 2 byte X to offset 7
-	 * A A A A T B B X X C C C    <- B is set to top at its original offset
-	 * 							     C is not changed, as its overwritten anyway
+	 * A A A A T T T X X T T T    <- B and C are removed, their remaining 
+	 * 							     bytes are set to TOP
 	 * 
 	 * 
 	 * @param region The memory region to access, cannot be TOP
@@ -176,25 +196,26 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 
 		int size = bitWidth / 8;
 		
-		// Set all old memory cells in the written area to top
-		for (int i=0; i<size; i++) {
-			MemoryCell oldCell = store.get(region, offset + i);
-
-			if (oldCell != null) {
-				setBytesTop(region, oldCell.offset, oldCell.size);
-			}
+		// If we only wanted to set TOP and we're not in the global region, 
+		// we do not store the new cell.
+		boolean storeCell = !value.isTop() || region == MemoryRegion.GLOBAL;
+		
+		// Set all old memory cells overlapping the written area to top. Go 
+		// down from the last written byte, the TOP bytes created for a cell
+		// are never below that cell's offset. Bytes that are overwritten by 
+		// the new cell do not need to be set to TOP first.
+		long end = offset + size;
+		for (Map.Entry<Long, MemoryCell> entry = store.floorEntry(region, end - 1); 
+				entry != null && entry.getValue().offset + entry.getValue().size > offset;
+				entry = store.floorEntry(region, entry.getKey() - 1)) {
+			if (storeCell)
+				setCellTop(region, entry.getValue(), offset, end);
+			else
+				setCellTop(region, entry.getValue(), end, end);
 		}
 		
-		// If we only wanted to set TOP and we're not in the global region, 
-		// we are already done.
-		if (!value.isTop() || region == MemoryRegion.GLOBAL) {
-
-			// Separate update from deletion, so while overwriting an old cell, 
-			// we don't have to be careful not to overwrite our new cell
-			MemoryCell cell = new MemoryCell(offset, size, value);
-			for (int i=0; i<size; i++) {
-				store.put(region, offset + i, cell);
-			}
+		if (storeCell) {
+			store.put(region, offset, new MemoryCell(offset, size, value));
 		}
 	}
 	
@@ -204,7 +225,7 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		A oldValue = get(region, offset, bitWidth);
 		
 		// If we treat heap cells as initialized to BOT, just set uninitialized cells to the new value
-		if (Options.initHeapToBot.getValue() && oldValue.isTop() && !store.containsKey(region, offset))
+		if (Options.initHeapToBot.getValue() && oldValue.isTop() && getCell(region, offset) == null)
 			set(region, offset, bitWidth, value);
 		else
 			set(region, offset, bitWidth, (A)value.join(oldValue));
@@ -213,7 +234,7 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 	public A get(MemoryRegion region, long offset, int bitWidth) {
 		assert region != MemoryRegion.TOP;
 		int size = bitWidth / 8;
-		MemoryCell cell = store.get(region, offset);
+		MemoryCell cell = getCell(region, offset);
 		if (cell != null) {
 			if (cell.offset != offset || cell.size != size) {
 				
@@ -297,9 +318,7 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 			if (module != null && (!dataIsTop || module.isReadOnly(a))) {
 				RTLNumber mValue;
 				try {
-					mValue = module.readMemoryLocation(
-							ExpressionFactory.createMemoryLocation(
-									ExpressionFactory.createNumber(offset), bitWidth));
+					mValue = module.readMemoryLocation(a, bitWidth);
 					// Memory outside the program area is implicitly initialized to top 
 					if (mValue != null) 
 						return valueFactory.createAbstractValue(mValue);
@@ -316,7 +335,7 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		
 		for (long i=0; i<size;) {
 			long dstPtr = dstOffset + i;
-			MemoryCell v = store.get(srcRegion, dstPtr);
+			MemoryCell v = getCell(srcRegion, dstPtr);
 			if (v != null && v.offset == dstPtr) {
 				set(dstRegion, dstPtr, v.size * 8, v.contents);
 				i += v.size;
@@ -330,7 +349,8 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 
 	
 	/**
-	 * Removes all elements from the stack below the passed stack offset.
+	 * Removes all elements from the stack below the passed stack offset. Cells
+	 * that start below the offset are removed completely.
 	 * 
 	 * @param offset the stack offset below which all entries should be cleared 
 	 */
@@ -339,12 +359,14 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		if (stack == null)
 			return;
 		
-		//stack.headMap(offset).clear();
-//		for (Iterator<Long> it = stack.keySet().iterator(); it.hasNext();)
-		for (Iterator<Map.Entry<Long, MemoryCell>> it = store.subMapIterator(MemoryRegion.STACK); it.hasNext();)
+		// Cells are sorted by offset, so stop at the first one that is kept
+		for (Iterator<Map.Entry<Long, MemoryCell>> it = store.subMapIterator(MemoryRegion.STACK); it.hasNext();) {
 			if (it.next().getKey() < offset) {
 				it.remove();
+			} else {
+				break;
 			}
+		}
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -359,7 +381,6 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		if (store.containsLeftKey(MemoryRegion.GLOBAL)) {
 			for (Map.Entry<Long, MemoryCell> entry : store.getSubMap(MemoryRegion.GLOBAL).entrySet()) {
 				long offset = entry.getKey();
-				if (offset != entry.getValue().offset) continue;
 				int bitWidth = entry.getValue().size * 8;
 				A value = entry.getValue().contents;
 				result.set(MemoryRegion.GLOBAL, offset, bitWidth, 
@@ -369,7 +390,6 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 
 		for (EntryIterator<MemoryRegion, Long, MemoryCell> entryIt = other.store.entryIterator(); entryIt.hasEntry(); entryIt.next()) {
 			long offset = entryIt.getRightKey();
-			if (offset != entryIt.getValue().offset) continue;
 			MemoryRegion region = entryIt.getLeftKey();
 			int bitWidth = entryIt.getValue().size * 8;
 			A value = entryIt.getValue().contents;
@@ -404,7 +424,6 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 
 		for (EntryIterator<MemoryRegion, Long, MemoryCell> entryIt = other.store.entryIterator(); entryIt.hasEntry(); entryIt.next()) {
 			long offset = entryIt.getRightKey();
-			if (offset != entryIt.getValue().offset) continue;
 			MemoryRegion region = entryIt.getLeftKey();
 			int bitWidth = entryIt.getValue().size * 8;
 			AbstractValue value = entryIt.getValue().contents;
@@ -427,7 +446,6 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		if (store.containsLeftKey(MemoryRegion.GLOBAL)) {
 			for (Map.Entry<Long, MemoryCell> entry : store.getSubMap(MemoryRegion.GLOBAL).entrySet()) {
 				long offset = entry.getKey();
-				if (offset != entry.getValue().offset) continue;
 				int bitWidth = entry.getValue().size * 8;
 				A value = entry.getValue().contents;
 				if (!value.lessOrEqual(other.get(MemoryRegion.GLOBAL, offset, bitWidth)))
@@ -444,14 +462,12 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		for (MemoryRegion region : store.leftKeySet()) {
 			res.append(" ").append(region).append(": [");
 			for (Map.Entry<Long, MemoryCell> entry : store.getSubMap(region).entrySet()) {
-				if (entry.getValue().offset == entry.getKey()) {
-					if (region.equals(MemoryRegion.GLOBAL))
-						res.append("0x").append(Integer.toHexString(
-								entry.getKey().intValue()));
-					else
-						res.append(entry.getKey());
-					res.append("=").append(entry.getValue()).append(",");
-				}
+				if (region.equals(MemoryRegion.GLOBAL))
+					res.append("0x").append(Integer.toHexString(
+							entry.getKey().intValue()));
+				else
+					res.append(entry.getKey());
+				res.append("=").append(entry.getValue()).append(",");
 			}
 			res.append("]");
 		}
@@ -507,8 +523,6 @@ public final class PartitionedMemory<A extends AbstractValue> implements Lattice
 		@Override
 		public void next() {
 			storeIt.next();
-			while (storeIt.hasEntry() && storeIt.getRightKey() != storeIt.getValue().offset)
-				storeIt.next();
 		}
 	}
 }
@@ -18,6 +18,9 @@
 package org.jakstab.analysis;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jakstab.analysis.composite.CompositeState;
 import org.jakstab.analysis.location.LocationState;
@@ -25,32 +28,85 @@ import org.jakstab.cfa.Location;
 import org.jakstab.cfa.RTLLabel;
 import org.jakstab.util.Logger;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.SetMultimap;
-
 /**
  * A set of reached states for use in the CPA algorithm. It can generate lightweight views on 
  * parts of its contents much like an SQL database using select(row) and where(row, hasValue).
  * 
+ * States are striped by their location component. Each location is assigned a dense integer
+ * id the first time it is seen and owns a concurrent set of its states, so adding, removing,
+ * and iterating the states of a location does not lock. Only registering a new location 
+ * synchronizes. Views restricted to a single location are created once per stripe and reused.
+ * 
  * @author Johannes Kinder
  */
 public class ReachedSet extends AbstractSet<AbstractState> implements Collection<AbstractState> {
 
 	private static final Logger logger = Logger.getLogger(ReachedSet.class);
 	
-	private final SetMultimap<AbstractState, CompositeState> compositeMap;
+	/**
+	 * The states of a single location.
+	 */
+	private static final class Stripe {
+		private final int id;
+		private final AbstractState location;
+		private final Set<CompositeState> states;
+		// Cached views on this stripe, indexed by selected row + 1
+		private volatile ReachedSet[] views = new ReachedSet[0];
+		
+		private Stripe(int id, AbstractState location) {
+			this.id = id;
+			this.location = location;
+			this.states = Collections.newSetFromMap(new ConcurrentHashMap<CompositeState, Boolean>(8, 0.75f, 2));
+		}
+	}
+	
+	/**
+	 * The storage shared by a reached set and all its views.
+	 */
+	private static final class Stripes {
+		private final ConcurrentMap<AbstractState, Stripe> byLocation = 
+				new ConcurrentHashMap<AbstractState, Stripe>(1000);
+		private volatile Stripe[] byId = new Stripe[1000];
+		private volatile int locationCount = 0;
+		private final AtomicInteger size = new AtomicInteger();
+		
+		private Stripe get(AbstractState location) {
+			return byLocation.get(location);
+		}
+		
+		private Stripe getOrCreate(AbstractState location) {
+			Stripe stripe = byLocation.get(location);
+			if (stripe != null) 
+				return stripe;
+			synchronized (this) {
+				stripe = byLocation.get(location);
+				if (stripe == null) {
+					stripe = new Stripe(locationCount, location);
+					if (locationCount == byId.length)
+						byId = Arrays.copyOf(byId, 2 * byId.length);
+					byId[locationCount] = stripe;
+					// Publish to the id array before making the stripe reachable by location
+					locationCount++;
+					byLocation.put(location, stripe);
+				}
+				return stripe;
+			}
+		}
+	}
+	
+	private final Stripes stripes;
 	private static final int indexComponent = 0; 
 	private final int selectedRow;
 	private final int whereRow;
 	private final AbstractState whereState;
 	
 	public ReachedSet() {
-		this(-1, -1, null, HashMultimap.<AbstractState, CompositeState>create(1000, 5));
+		this(-1, -1, null, new Stripes());
 	}
 	
 	private ReachedSet(int selectedRow, int whereRow, AbstractState whereState, 
-			SetMultimap<AbstractState, CompositeState> compositeMap) {
-		this.compositeMap = compositeMap;
+			Stripes stripes) {
+		this.stripes = stripes;
 		this.selectedRow = selectedRow;
 		this.whereRow = whereRow;
 		this.whereState = whereState;
@@ -58,18 +114,64 @@ public class ReachedSet extends AbstractSet<AbstractState> implements Collection
 	
 	public ReachedSet select(int component) {
 		assert this.selectedRow == -1;
-		return new ReachedSet(component, this.whereRow, this.whereState, this.compositeMap);
+		if (whereRow == indexComponent)
+			return view(component, whereState);
+		return new ReachedSet(component, this.whereRow, this.whereState, this.stripes);
 	}
 	
 	public ReachedSet where(int row, AbstractState state) {
 		assert this.whereRow == -1 && this.whereState == null;
-		return new ReachedSet(this.selectedRow, row, state, this.compositeMap);
+		if (row == indexComponent)
+			return view(selectedRow, state);
+		return new ReachedSet(this.selectedRow, row, state, this.stripes);
 	}
 	
 	public ReachedSet where(Location l) {
 		assert this.whereRow == -1 && this.whereState == null;
 		return where(0, new LocationState(l));
 	}
+	
+	/**
+	 * Returns a view restricted to the given location, reusing the view
+	 * cached in the location's stripe if there is one.
+	 */
+	private ReachedSet view(int selected, AbstractState location) {
+		Stripe stripe = stripes.get(location);
+		if (stripe == null)
+			return new ReachedSet(selected, indexComponent, location, stripes);
+		ReachedSet[] views = stripe.views;
+		if (selected + 1 < views.length && views[selected + 1] != null)
+			return views[selected + 1];
+		ReachedSet view = new ReachedSet(selected, indexComponent, stripe.location, stripes);
+		// Racing threads may both create a view, which is harmless as views are immutable
+		if (selected + 1 >= views.length)
+			views = Arrays.copyOf(views, selected + 2);
+		else
+			views = views.clone();
+		views[selected + 1] = view;
+		stripe.views = views;
+		return view;
+	}
+	
+	/**
+	 * Returns the dense id assigned to the given location component, or -1 if no 
+	 * state has been reached at this location.
+	 * 
+	 * @param location the location component of a state
+	 * @return the id of the location's stripe
+	 */
+	public int getLocationId(AbstractState location) {
+		Stripe stripe = stripes.get(location);
+		return stripe == null ? -1 : stripe.id;
+	}
+	
+	/**
+	 * Returns the number of distinct locations seen so far. Location ids range 
+	 * from 0 to this value (exclusive).
+	 */
+	public int getLocationCount() {
+		return stripes.locationCount;
+	}
 
 	public boolean add(AbstractState s) {
 		if (s instanceof CompositeState) return add((CompositeState)s);
@@ -83,27 +185,40 @@ public class ReachedSet extends AbstractSet<AbstractState> implements Collection
 
 	public boolean add(CompositeState s) {
 		assert selectedRow == -1;
-		return compositeMap.put(s.getComponent(indexComponent), s);
+		if (stripes.getOrCreate(s.getComponent(indexComponent)).states.add(s)) {
+			stripes.size.incrementAndGet();
+			return true;
+		}
+		return false;
 	}
 	
 	public boolean remove(CompositeState s) {
 		assert selectedRow == -1;
-		return compositeMap.remove(s.getComponent(indexComponent), s);
+		Stripe stripe = stripes.get(s.getComponent(indexComponent));
+		if (stripe != null && stripe.states.remove(s)) {
+			stripes.size.decrementAndGet();
+			return true;
+		}
+		return false;
 	}
 	
 	public int size() {
 		if (whereRow < 0)
-			return compositeMap.size();
-		if (whereRow == indexComponent)
-			return compositeMap.get(whereState).size();
+			return stripes.size.get();
+		if (whereRow == indexComponent) {
+			Stripe stripe = stripes.get(whereState);
+			return stripe == null ? 0 : stripe.states.size();
+		}
 		throw new UnsupportedOperationException("Cannot determine reached set size for non-index component restrictions!");
 	}
 
 	@Override
 	public boolean contains(Object o) {
 		if (selectedRow < 0) { 
-			if (o instanceof CompositeState) 
-				return compositeMap.containsEntry(((CompositeState)o).getComponent(indexComponent), o);
+			if (o instanceof CompositeState) {
+				Stripe stripe = stripes.get(((CompositeState)o).getComponent(indexComponent));
+				return stripe != null && stripe.states.contains(o);
+			}
 			else throw new UnsupportedOperationException();
 		} else {
 			for (AbstractState as : this) {
@@ -114,12 +229,13 @@ public class ReachedSet extends AbstractSet<AbstractState> implements Collection
 	}
 	
 	public void logHighestStateCounts(int count) {
-		AbstractState[] stateArray = compositeMap.keySet().toArray(new AbstractState[compositeMap.keySet().size()]);
-		Arrays.sort(stateArray, new Comparator<AbstractState>() {
+		Stripe[] stripeArray = new Stripe[stripes.locationCount];
+		System.arraycopy(stripes.byId, 0, stripeArray, 0, stripeArray.length);
+		Arrays.sort(stripeArray, new Comparator<Stripe>() {
 			@Override
-			public int compare(AbstractState o1, AbstractState o2) {
-				Integer size1 = compositeMap.get(o1).size();
-				Integer size2 = compositeMap.get(o2).size();
+			public int compare(Stripe o1, Stripe o2) {
+				Integer size1 = o1.states.size();
+				Integer size2 = o2.states.size();
 				return size2.compareTo(size1);
 			}
 		});
@@ -127,19 +243,21 @@ public class ReachedSet extends AbstractSet<AbstractState> implements Collection
 		logger.fatal("==========================================");
 		logger.fatal("The " + count + " locations with highest state count:");
 		logger.fatal("==========================================");
-		for (int i=0; i < Math.min(count, stateArray.length); i++) {
-			logger.fatal(stateArray[i] + ":\t" + compositeMap.get(stateArray[i]).size());
+		for (int i=0; i < Math.min(count, stripeArray.length); i++) {
+			logger.fatal(stripeArray[i].location + ":\t" + stripeArray[i].states.size());
 		}
 		logger.fatal("-------------");
 		logger.fatal("Top Location:");
 		logger.fatal("-------------");
-		for (AbstractState s : compositeMap.get(stateArray[0])) {
+		for (AbstractState s : stripeArray[0].states) {
 			logger.fatal(s);
 		}
 	}
 	
 	public void logStates(RTLLabel loc) {
-		for (CompositeState c : compositeMap.get(new LocationState(loc))) {
+		Stripe stripe = stripes.get(new LocationState(loc));
+		if (stripe == null) return;
+		for (CompositeState c : stripe.states) {
 			logger.fatal(c);
 		}
 	}
@@ -149,19 +267,27 @@ public class ReachedSet extends AbstractSet<AbstractState> implements Collection
 		return new Iterator<AbstractState>() {
 			CompositeState next;
 			private Iterator<CompositeState> compIter;
+			// Next stripe to visit when iterating over all locations
+			private int stripeIndex;
 			// Select either generic iterator or refine by indexed map
 			{
 				if (whereRow == indexComponent) {
-					compIter = compositeMap.get(whereState).iterator();
+					Stripe stripe = stripes.get(whereState);
+					compIter = stripe == null ? Collections.<CompositeState>emptyIterator() : stripe.states.iterator();
+					stripeIndex = Integer.MAX_VALUE;
 				} else {
-					compIter = compositeMap.values().iterator();
+					compIter = Collections.<CompositeState>emptyIterator();
+					stripeIndex = 0;
 				}
 			}
 			
 			@Override
 			public boolean hasNext() {
 				while (next == null) {
-					if (!compIter.hasNext()) return false;
+					while (!compIter.hasNext()) {
+						if (stripeIndex >= stripes.locationCount) return false;
+						compIter = stripes.byId[stripeIndex++].states.iterator();
+					}
 					CompositeState c = compIter.next();
 					
 					// If we're filtering by indexed component (or not at all), no need for an extra comparison
@@ -194,6 +320,7 @@ public class ReachedSet extends AbstractSet<AbstractState> implements Collection
 			@Override
 			public void remove() {
 				compIter.remove();
+				stripes.size.decrementAndGet();
 			}
 		};
 	}
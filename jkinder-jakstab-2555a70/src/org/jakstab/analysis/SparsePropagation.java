@@ -0,0 +1,227 @@
+/*
+ * SparsePropagation.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import java.util.BitSet;
+
+import org.jakstab.cfa.CompactCFG;
+import org.jakstab.cfa.DominatorTree;
+import org.jakstab.cfa.SSAForm;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.rtl.statements.RTLStatement;
+import org.jakstab.util.Logger;
+
+/**
+ * A sparse data flow analysis over the SSA form of a graph, for
+ * non-relational analyses of register values. Instead of keeping a state per
+ * location, it keeps a single value per definition and propagates changes
+ * along the def-use chains only, so the work depends on the number of
+ * definitions rather than on locations times variables.
+ *
+ * A value of null stands for bottom, i.e., a definition that has not been
+ * reached yet. Statement definitions are only evaluated once all variables
+ * used by their statement have a value, and phi functions join the values of
+ * their operands. Phi functions at loop heads are widened, so subclasses
+ * for lattices of infinite height have to override
+ * {@link #widen(Object, Object)}.
+ *
+ * @param <V> the type of abstract values.
+ */
+public abstract class SparsePropagation<V> {
+
+	private static final Logger logger = Logger.getLogger(SparsePropagation.class);
+
+	protected final SSAForm ssa;
+	private final Object[] values;
+	private volatile boolean stop = false;
+	private long evaluationCount;
+
+	public SparsePropagation(SSAForm ssa) {
+		this.ssa = ssa;
+		values = new Object[ssa.getDefinitionCount()];
+	}
+
+	/**
+	 * Propagates values until a fixpoint is reached.
+	 */
+	public void run() {
+		long startTime = System.currentTimeMillis();
+		int count = ssa.getDefinitionCount();
+		BitSet loopPhis = findLoopPhis();
+
+		// A FIFO worklist of definitions, initially holding all of them in order
+		int[] queue = new int[count + 1];
+		BitSet queued = new BitSet(count);
+		int head = 0;
+		int tail = 0;
+		int size = count;
+		for (int d = 0; d < count; d++) {
+			queue[tail++] = d;
+			queued.set(d);
+		}
+		evaluationCount = 0;
+		while (size > 0 && !stop) {
+			int d = queue[head];
+			head = head == count ? 0 : head + 1;
+			size--;
+			queued.clear(d);
+
+			V value = evaluate(d);
+			evaluationCount++;
+			if (value == null)
+				continue;
+			V oldValue = getValue(d);
+			if (oldValue != null && loopPhis.get(d))
+				value = widen(oldValue, value);
+			if (value.equals(oldValue))
+				continue;
+			values[d] = value;
+			for (int i = ssa.getDependentStart(d); i < ssa.getDependentEnd(d); i++) {
+				int x = ssa.getDependent(i);
+				if (!queued.get(x)) {
+					queued.set(x);
+					queue[tail] = x;
+					tail = tail == count ? 0 : tail + 1;
+					size++;
+				}
+			}
+		}
+
+		long endTime = System.currentTimeMillis();
+		logger.debug("Sparse propagation evaluated " + evaluationCount + " times for " + count +
+				" definitions in " + (endTime - startTime) + "ms.");
+	}
+
+	public void stop() {
+		stop = true;
+	}
+
+	/**
+	 * @return the number of evaluations of definitions in the last run.
+	 */
+	public long getEvaluationCount() {
+		return evaluationCount;
+	}
+
+	/**
+	 * @return the value of a definition, or null if it has not been reached.
+	 */
+	@SuppressWarnings("unchecked")
+	public V getValue(int definition) {
+		return definition < 0 ? null : (V)values[definition];
+	}
+
+	/**
+	 * @return the value of a variable used by the statement of an edge, or
+	 * null if the statement does not use it or has not been reached.
+	 */
+	public V getValue(int edge, RTLVariable v) {
+		return getValue(ssa.getReachingDefinition(edge, v));
+	}
+
+	/**
+	 * Returns the value of a variable at the entry of the graph.
+	 */
+	protected abstract V getEntryValue(RTLVariable v);
+
+	/**
+	 * Returns the value of a variable after a statement. All variables used
+	 * by the statement have a value, which is available through
+	 * {@link #getValue(int, RTLVariable)}. The variable is not necessarily
+	 * assigned by the statement itself but may overlap an assigned register.
+	 *
+	 * @param definition the definition to evaluate
+	 * @param edge the edge of the statement
+	 * @param stmt the statement
+	 * @param v the defined variable
+	 */
+	protected abstract V evaluate(int definition, int edge, RTLStatement stmt, RTLVariable v);
+
+	protected abstract V join(V a, V b);
+
+	/**
+	 * Returns the value an operand of a phi function contributes to the join.
+	 * The default implementation returns the value of the operand's
+	 * definition.
+	 *
+	 * @param phi the phi function
+	 * @param position the position of the operand, see
+	 * {@link SSAForm#getOperandStart(int)}
+	 */
+	protected V getOperandValue(int phi, int position) {
+		return getValue(ssa.getOperand(position));
+	}
+
+	/**
+	 * Widens the value of a phi function at a loop head. The default
+	 * implementation returns the new value, which only terminates for
+	 * lattices of finite height.
+	 */
+	protected V widen(V oldValue, V newValue) {
+		return newValue;
+	}
+
+	private V evaluate(int d) {
+		switch (ssa.getKind(d)) {
+		case ENTRY:
+			return getEntryValue(ssa.getVariable(d));
+		case PHI:
+			V result = null;
+			for (int i = ssa.getOperandStart(d); i < ssa.getOperandEnd(d); i++) {
+				V operand = getOperandValue(d, i);
+				if (operand != null)
+					result = result == null ? operand : join(result, operand);
+			}
+			return result;
+		default:
+			int edge = ssa.getEdge(d);
+			for (int u = ssa.getUseStart(edge); u < ssa.getUseEnd(edge); u++)
+				if (getValue(ssa.getUseDefinition(u)) == null)
+					return null;
+			return evaluate(d, edge, ssa.getStatement(edge), ssa.getVariable(d));
+		}
+	}
+
+	/**
+	 * Finds the phi functions at locations that are the target of a retreating
+	 * edge in reverse postorder. Every cycle contains such an edge, including
+	 * the cycles of irreducible loops, which have no dominating loop head.
+	 */
+	private BitSet findLoopPhis() {
+		CompactCFG graph = ssa.getGraph();
+		DominatorTree dom = ssa.getDominatorTree();
+		int[] position = new int[graph.getLocationCount()];
+		for (int i = 0; i < dom.getReachableCount(); i++)
+			position[dom.getLocationInOrder(i)] = i;
+		BitSet result = new BitSet();
+		for (int i = 0; i < dom.getReachableCount(); i++) {
+			int l = dom.getLocationInOrder(i);
+			if (ssa.getPhiStart(l) == ssa.getPhiEnd(l))
+				continue;
+			for (int j = graph.getInEdgeStart(l); j < graph.getInEdgeEnd(l); j++) {
+				int source = graph.getSource(graph.getInEdge(j));
+				if (dom.isReachable(source) && position[source] >= i) {
+					result.set(ssa.getPhiStart(l), ssa.getPhiEnd(l));
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+}
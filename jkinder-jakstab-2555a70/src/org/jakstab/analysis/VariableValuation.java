@@ -32,22 +32,23 @@ public class VariableValuation<A extends AbstractValue> implements LatticeElemen
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(VariableValuation.class);
 
-	protected final TreeMap<RTLVariable,A> aVarVal;
+	// Shares all unchanged chunks with the valuation it was copied from
+	protected final ChunkedVariableMap<A> aVarVal;
 	protected final AbstractValueFactory<A> valueFactory;
 
-	protected VariableValuation(TreeMap<RTLVariable,A> aVarVal, 
+	protected VariableValuation(ChunkedVariableMap<A> aVarVal, 
 			AbstractValueFactory<A> valueFactory) {
 		this.aVarVal = aVarVal;
 		this.valueFactory = valueFactory;
 	}
 	
 	public VariableValuation(VariableValuation<A> proto) {
-		this(new TreeMap<RTLVariable, A>(proto.aVarVal), 
+		this(new ChunkedVariableMap<A>(proto.aVarVal), 
 				proto.valueFactory);
 	}
 	
 	public VariableValuation(AbstractValueFactory<A> valueFactory) {
-		this(new TreeMap<RTLVariable, A>(),
+		this(new ChunkedVariableMap<A>(),
 				valueFactory);
 	}
 	
@@ -170,7 +171,7 @@ public class VariableValuation<A extends AbstractValue> implements LatticeElemen
 
 		VariableValuation<A> joinedValuation = new VariableValuation<A>(valueFactory);
 		// Join variable valuations
-		for (Map.Entry<RTLVariable,A> entry : aVarVal.entrySet()) {
+		for (Map.Entry<RTLVariable,A> entry : aVarVal) {
 			RTLVariable var = entry.getKey();
 			A value = entry.getValue();
 			joinedValuation.set(var, (A)value.join(other.get(var)));
@@ -191,7 +192,7 @@ public class VariableValuation<A extends AbstractValue> implements LatticeElemen
 		// value in this valuation is less. Other way round is not
 		// possible, as their could be variables present in the other
 		// valuation but not in this one.
-		for (Map.Entry<RTLVariable,A> entry : other.aVarVal.entrySet()) {
+		for (Map.Entry<RTLVariable,A> entry : other.aVarVal) {
 			RTLVariable var = entry.getKey();
 			A value = entry.getValue();
 			if (!get(var).lessOrEqual(value)) {
@@ -233,7 +234,7 @@ public class VariableValuation<A extends AbstractValue> implements LatticeElemen
 
 	@Override
 	public Iterator<Entry<RTLVariable, A>> iterator() {
-		return aVarVal.entrySet().iterator();
+		return aVarVal.iterator();
 	}
 	
 }
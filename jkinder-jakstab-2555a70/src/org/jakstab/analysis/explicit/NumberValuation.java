@@ -371,7 +371,7 @@ public final class NumberValuation implements AbstractState {
 				// only read memory from image if we havn't overapproximated yet or it's a read only section
 				if (!dataIsTop || module.isReadOnly(a)) {
 					try {
-						RTLNumber mValue = module.readMemoryLocation(m);
+						RTLNumber mValue = module.readMemoryLocation(a, m.getBitWidth());
 						// Memory outside the program area is implicitly initialized to top 
 						if (mValue != null) 
 							return new NumberElement(mValue);
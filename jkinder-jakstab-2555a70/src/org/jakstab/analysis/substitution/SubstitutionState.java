@@ -373,7 +373,7 @@ public final class SubstitutionState implements AbstractState {
 		return Long.toString(stateId);
 	}
 
-	private boolean containsNondet(RTLExpression rhs) {
+	public static boolean containsNondet(RTLExpression rhs) {
 		return rhs.accept(new ExpressionVisitor<Boolean>() {
 
 			@Override
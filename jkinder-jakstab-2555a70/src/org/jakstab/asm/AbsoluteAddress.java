@@ -24,6 +24,8 @@ import org.jakstab.rtl.expressions.RTLNumber;
 
 public class AbsoluteAddress extends Address implements Comparable<AbsoluteAddress> {
 
+	private static final long serialVersionUID = -6343946408412809859L;
+
 	protected final long value;
 
 	public AbsoluteAddress(long value) {
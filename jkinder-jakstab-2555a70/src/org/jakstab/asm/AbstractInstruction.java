@@ -30,11 +30,15 @@
 
 package org.jakstab.asm;
 
+import java.io.Serializable;
+
 /**
  * Parent class for all instruction implementations providing default 
  * implementations for the {@link Instruction} interface. 
  */
-public abstract class AbstractInstruction implements Instruction {
+public abstract class AbstractInstruction implements Instruction, Serializable {
+
+	private static final long serialVersionUID = -5779841808377157361L;
 	public String name;//TODO Dom re add protected final
 
 	/**
@@ -33,6 +33,8 @@ package org.jakstab.asm;
 import org.jakstab.rtl.BitVectorType;
 
 public abstract class Address extends Operand implements BitVectorType {
+
+	private static final long serialVersionUID = 2871221510712982100L;
 	
 	/**
 	 * Returns the effective value of this address, which might
@@ -34,6 +34,8 @@ package org.jakstab.asm;
  * An Immediate is a numeric operand to an instruction.
  */
 public class Immediate extends ImmediateOrRegister {
+
+	private static final long serialVersionUID = -4680085352591020104L;
    private final Number value;
    private final DataType dataType;
 
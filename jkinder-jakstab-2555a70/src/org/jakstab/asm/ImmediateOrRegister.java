@@ -25,4 +25,6 @@
 package org.jakstab.asm;
 
 public abstract class ImmediateOrRegister extends Operand {
+
+	private static final long serialVersionUID = -146971651844110782L;
 }
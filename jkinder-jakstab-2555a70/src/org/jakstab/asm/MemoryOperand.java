@@ -37,6 +37,8 @@ package org.jakstab.asm;
  * Optionally, the index is auto incremented or decremented.
  */
 public abstract class MemoryOperand extends Operand {
+
+	private static final long serialVersionUID = 2061463039945489384L;
 	private final DataType dataType;
 	private final Register base, index;
 	private final int      scale;
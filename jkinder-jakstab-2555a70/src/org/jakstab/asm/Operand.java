@@ -30,6 +30,8 @@
 
 package org.jakstab.asm;
 
+import java.io.Serializable;
+
 import org.jakstab.rtl.Context;
 import org.jakstab.rtl.expressions.ExpressionFactory;
 import org.jakstab.rtl.expressions.RTLExpression;
@@ -38,7 +40,9 @@ import org.jakstab.rtl.expressions.RTLExpression;
  * Operands are used as instruction parameters. An Operand is one of
  * Immediate, Register, MemoryOperand, or Address.  
  */
-public abstract class Operand {
+public abstract class Operand implements Serializable {
+
+	private static final long serialVersionUID = 2244843597398966660L;
 	
 	public String toString(long currentPc, SymbolFinder symFinder) {
 		return this.toString();
@@ -34,6 +34,8 @@ package org.jakstab.asm;
  * An address specified as offset from current PC 
  */
 public class PCRelativeAddress extends Address {
+
+	private static final long serialVersionUID = 829571623873162468L;
 	private final long disp;
 
 	public PCRelativeAddress(long disp) {
@@ -34,6 +34,8 @@ package org.jakstab.asm;
  * Top level class for all registers. Provides a number of common methods.
  */
 public abstract class Register extends ImmediateOrRegister {
+
+	private static final long serialVersionUID = -5996261847825847237L;
 	protected int number;
 
 	/**
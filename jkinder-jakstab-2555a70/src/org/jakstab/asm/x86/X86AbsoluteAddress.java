@@ -34,6 +34,8 @@ import org.jakstab.asm.AbsoluteAddress;
 
 public class X86AbsoluteAddress extends AbsoluteAddress {
 
+	private static final long serialVersionUID = -7892716406642321665L;
+
 	private long segment;
 
 	/**
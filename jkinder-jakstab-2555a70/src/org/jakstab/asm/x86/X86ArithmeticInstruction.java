@@ -36,6 +36,8 @@ import org.jakstab.asm.Operation;
 
 public class X86ArithmeticInstruction extends X86Instruction
 implements ArithmeticInstruction {
+
+	private static final long serialVersionUID = 7601280608303463399L;
 	final private Operation operation; //RTL operation
 	
 	public X86ArithmeticInstruction(String name, Operation operation, Operand op1, Operand op2, Operand op3, int size, int prefixes) {
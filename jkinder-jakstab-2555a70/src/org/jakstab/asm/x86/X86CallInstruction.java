@@ -35,6 +35,8 @@ import org.jakstab.asm.*;
 public class X86CallInstruction extends X86Instruction
 implements CallInstruction {
 
+	private static final long serialVersionUID = -1599722150414342722L;
+
 	public X86CallInstruction(String name, Operand target, int size, int prefixes) {
 		super(name, target, size, prefixes);
 		if(target instanceof X86PCRelativeAddress) {
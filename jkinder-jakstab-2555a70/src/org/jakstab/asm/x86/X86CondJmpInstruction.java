@@ -36,6 +36,8 @@ import org.jakstab.asm.BranchInstruction;
 public class X86CondJmpInstruction extends X86Instruction
 implements BranchInstruction {
 
+	private static final long serialVersionUID = -8854178277995948718L;
+
 	public X86CondJmpInstruction(String name, X86PCRelativeAddress addr, int size, int prefixes) {
 		super(name, addr, size, prefixes);
 		addr.setInstructionSize(getSize());
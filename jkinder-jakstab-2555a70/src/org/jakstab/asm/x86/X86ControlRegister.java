@@ -32,6 +32,8 @@ package org.jakstab.asm.x86;
 
 public class X86ControlRegister extends X86Register {
 
+	private static final long serialVersionUID = 3424991365746633236L;
+
    public X86ControlRegister(int num, String name) {
      super(num, name);
    }
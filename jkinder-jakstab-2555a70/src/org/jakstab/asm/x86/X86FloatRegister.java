@@ -34,6 +34,8 @@ import org.jakstab.asm.Register;
 
 public class X86FloatRegister extends Register {
 
+	private static final long serialVersionUID = -4833150342063353710L;
+
    public X86FloatRegister(int number) {
       super(number);
    }
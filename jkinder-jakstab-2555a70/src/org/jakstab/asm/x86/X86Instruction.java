@@ -36,6 +36,8 @@ import org.jakstab.rtl.Context;
 public class X86Instruction extends AbstractInstruction
 implements Instruction, X86Opcodes, MemoryInstruction, Cloneable {
 
+	private static final long serialVersionUID = -6853921854129043660L;
+
 	public int size;//TODO Dom- Meant to be private final.
 	final private int prefixes;
 	final private DataType dataType; //RTL dataType
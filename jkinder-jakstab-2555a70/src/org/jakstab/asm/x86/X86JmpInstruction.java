@@ -35,6 +35,8 @@ import org.jakstab.asm.*;
 public class X86JmpInstruction extends X86Instruction
 implements BranchInstruction {
 
+	private static final long serialVersionUID = 8573432133009416284L;
+
 	public X86JmpInstruction(String name, Operand target, int size, int prefixes) {
 		super(name, target, size, prefixes);
 		if(target instanceof X86PCRelativeAddress) {
@@ -32,6 +32,8 @@ package org.jakstab.asm.x86;
 
 public class X86MMXRegister extends X86Register {
 
+	private static final long serialVersionUID = -9078253006807708753L;
+
    public X86MMXRegister(int num, String name) {
      super(num, name);
    }
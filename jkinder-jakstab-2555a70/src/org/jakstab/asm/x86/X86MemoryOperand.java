@@ -43,6 +43,8 @@ import org.jakstab.asm.SymbolFinder;
  */
 public class X86MemoryOperand extends MemoryOperand {
 
+	private static final long serialVersionUID = 454010238851382594L;
+
 	final private X86SegmentRegister segReg;
 
 	/**
@@ -37,6 +37,8 @@ import org.jakstab.asm.Operand;
 public class X86MoveInstruction extends X86Instruction
 implements MoveInstruction {
 
+	private static final long serialVersionUID = 2707179030448319832L;
+
 	public X86MoveInstruction(String name, Operand op1, Operand op2, DataType dataType, int size, int prefixes) {
 		super(name, op1, op2, dataType, size, prefixes);
 	}
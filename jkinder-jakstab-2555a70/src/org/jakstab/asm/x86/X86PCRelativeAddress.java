@@ -35,6 +35,8 @@ import org.jakstab.asm.PCRelativeAddress;
 //address is specified as an offset from current PC
 
 public class X86PCRelativeAddress extends PCRelativeAddress {
+
+	private static final long serialVersionUID = -3322137289962893445L;
 	private int instrSize;
 
 	public X86PCRelativeAddress(long disp) {
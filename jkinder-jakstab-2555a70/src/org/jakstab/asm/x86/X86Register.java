@@ -33,6 +33,8 @@ package org.jakstab.asm.x86;
 import org.jakstab.asm.Register;
 
 public class X86Register extends Register {
+
+	private static final long serialVersionUID = -5650415052546548942L;
 	
    protected String name;
 
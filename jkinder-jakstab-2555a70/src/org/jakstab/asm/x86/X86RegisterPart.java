@@ -31,6 +31,8 @@
 package org.jakstab.asm.x86;
 
 public class X86RegisterPart extends X86Register {
+
+	private static final long serialVersionUID = 8566470116248472876L;
 	private int startBit;
 	private int length;
 
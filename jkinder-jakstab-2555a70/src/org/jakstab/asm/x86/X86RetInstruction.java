@@ -34,6 +34,8 @@ import org.jakstab.asm.*;
 
 public class X86RetInstruction extends X86Instruction implements ReturnInstruction {
 
+	private static final long serialVersionUID = 3299988724862403515L;
+
 	public X86RetInstruction(String name, Immediate op1, int size, int prefixes) {
 		super(name, op1, size, prefixes);
 	}
@@ -32,6 +32,8 @@ package org.jakstab.asm.x86;
 
 public class X86SegmentRegister extends X86Register {
 
+	private static final long serialVersionUID = -3927623340779969469L;
+
    public X86SegmentRegister(int num, String name) {
      super(num, name);
    }
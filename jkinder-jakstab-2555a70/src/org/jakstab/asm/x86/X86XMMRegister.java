@@ -32,6 +32,8 @@ package org.jakstab.asm.x86;
 
 public class X86XMMRegister extends X86Register {
 
+	private static final long serialVersionUID = 3477830419034879868L;
+
    public X86XMMRegister(int num, String name) {
      super(num, name);
    }
@@ -0,0 +1,235 @@
+/*
+ * CompactCFG.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.cfa;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An immutable control flow graph in compressed sparse row form. Locations
+ * are numbered densely from 0 in their natural order, and edges are numbered
+ * so that the out-edges of each location form a contiguous range, ordered by
+ * the ids of their targets. Targets, sources and transformers of the edges
+ * are kept in parallel arrays, so degree queries take constant time and
+ * neighbors can be visited without allocating:
+ *
+ * <pre>
+ * for (int e = g.getOutEdgeStart(v); e &lt; g.getOutEdgeEnd(v); e++)
+ *     visit(g.getTarget(e), g.getTransformer(e));
+ *
+ * for (int i = g.getInEdgeStart(v); i &lt; g.getInEdgeEnd(v); i++)
+ *     visit(g.getSource(g.getInEdge(i)));
+ * </pre>
+ *
+ * In-edges of each location are ordered by the ids of their sources. Edges
+ * with basic block transformers are stored as they are, not expanded.
+ */
+public final class CompactCFG {
+
+	private final Location[] locations;
+
+	/** Out-edges of location v are the edges outStart[v] to outStart[v+1]-1. */
+	private final int[] outStart;
+	private final int[] targets;
+	private final int[] sources;
+	private final StateTransformer[] transformers;
+	private final BitSet mustEdges;
+
+	/** In-edges of location v are inEdges[inStart[v]] to inEdges[inStart[v+1]-1]. */
+	private final int[] inStart;
+	private final int[] inEdges;
+
+	public CompactCFG(Collection<CFAEdge> edges) {
+		Set<Location> nodes = new HashSet<Location>();
+		for (CFAEdge e : edges) {
+			nodes.add(e.getSource());
+			nodes.add(e.getTarget());
+		}
+		locations = nodes.toArray(new Location[nodes.size()]);
+		Arrays.sort(locations);
+		int n = locations.length;
+		int m = edges.size();
+
+		CFAEdge[] edgeArray = edges.toArray(new CFAEdge[m]);
+		int[] src = new int[m];
+		int[] tgt = new int[m];
+		for (int i = 0; i < m; i++) {
+			src[i] = getId(edgeArray[i].getSource());
+			tgt[i] = getId(edgeArray[i].getTarget());
+		}
+
+		// Two stable counting sorts order the edges by source, then by target
+		int[] byTarget = countingSort(tgt, n, null);
+		int[] order = countingSort(src, n, byTarget);
+
+		targets = new int[m];
+		sources = new int[m];
+		transformers = new StateTransformer[m];
+		mustEdges = new BitSet(m);
+		for (int e = 0; e < m; e++) {
+			int i = order[e];
+			targets[e] = tgt[i];
+			sources[e] = src[i];
+			transformers[e] = edgeArray[i].getTransformer();
+			if (edgeArray[i].getKind() == CFAEdge.Kind.MUST)
+				mustEdges.set(e);
+		}
+
+		outStart = offsets(sources, n);
+		inStart = offsets(targets, n);
+		// Edges are sorted by source, so each in-edge list is sorted by source, too
+		inEdges = new int[m];
+		int[] next = Arrays.copyOf(inStart, n);
+		for (int e = 0; e < m; e++)
+			inEdges[next[targets[e]]++] = e;
+	}
+
+	public int getLocationCount() {
+		return locations.length;
+	}
+
+	public int getEdgeCount() {
+		return targets.length;
+	}
+
+	public Location getLocation(int id) {
+		return locations[id];
+	}
+
+	/**
+	 * Returns the dense id of a location.
+	 *
+	 * @return the id of the location, or -1 if it is not part of the graph.
+	 */
+	public int getId(Location l) {
+		int id = Arrays.binarySearch(locations, l);
+		return id < 0 ? -1 : id;
+	}
+
+	public int getOutDegree(int id) {
+		return outStart[id + 1] - outStart[id];
+	}
+
+	public int getInDegree(int id) {
+		return inStart[id + 1] - inStart[id];
+	}
+
+	/**
+	 * @return the first out-edge of the location.
+	 */
+	public int getOutEdgeStart(int id) {
+		return outStart[id];
+	}
+
+	/**
+	 * @return the edge following the last out-edge of the location.
+	 */
+	public int getOutEdgeEnd(int id) {
+		return outStart[id + 1];
+	}
+
+	/**
+	 * @return the first position in the in-edge list of the location.
+	 */
+	public int getInEdgeStart(int id) {
+		return inStart[id];
+	}
+
+	/**
+	 * @return the position following the in-edge list of the location.
+	 */
+	public int getInEdgeEnd(int id) {
+		return inStart[id + 1];
+	}
+
+	/**
+	 * @return the edge at the given position of the in-edge lists.
+	 */
+	public int getInEdge(int position) {
+		return inEdges[position];
+	}
+
+	public int getSource(int edge) {
+		return sources[edge];
+	}
+
+	public int getTarget(int edge) {
+		return targets[edge];
+	}
+
+	public StateTransformer getTransformer(int edge) {
+		return transformers[edge];
+	}
+
+	public CFAEdge.Kind getKind(int edge) {
+		return mustEdges.get(edge) ? CFAEdge.Kind.MUST : CFAEdge.Kind.MAY;
+	}
+
+	/**
+	 * Finds an edge between two locations.
+	 *
+	 * @return the first edge from source to target, or -1 if there is none.
+	 */
+	public int findEdge(int source, int target) {
+		int e = Arrays.binarySearch(targets, outStart[source], outStart[source + 1], target);
+		if (e < 0)
+			return -1;
+		while (e > outStart[source] && targets[e - 1] == target)
+			e--;
+		return e;
+	}
+
+	/**
+	 * Creates a new CFAEdge object for an edge of this graph.
+	 */
+	public CFAEdge createEdge(int edge) {
+		return new CFAEdge(locations[sources[edge]], locations[targets[edge]],
+				transformers[edge], getKind(edge));
+	}
+
+	/**
+	 * Returns the permutation that stably sorts the given order of indices
+	 * (or the identity if null) by their keys between 0 and n-1.
+	 */
+	private static int[] countingSort(int[] keys, int n, int[] order) {
+		int[] next = offsets(keys, n);
+		int[] sorted = new int[keys.length];
+		for (int j = 0; j < keys.length; j++) {
+			int i = order == null ? j : order[j];
+			sorted[next[keys[i]]++] = i;
+		}
+		return sorted;
+	}
+
+	/**
+	 * Returns the start offsets of the ranges for the keys between 0 and n-1,
+	 * followed by the total count.
+	 */
+	private static int[] offsets(int[] keys, int n) {
+		int[] start = new int[n + 1];
+		for (int k : keys)
+			start[k + 1]++;
+		for (int k = 0; k < n; k++)
+			start[k + 1] += start[k];
+		return start;
+	}
+
+}
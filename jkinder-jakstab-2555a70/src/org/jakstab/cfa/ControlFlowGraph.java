@@ -17,9 +17,11 @@
  */
 package org.jakstab.cfa;
 
+import java.util.AbstractSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,10 +31,10 @@ import org.jakstab.rtl.statements.RTLAssume;
 import org.jakstab.rtl.statements.RTLCallReturn;
 import org.jakstab.rtl.statements.RTLSkip;
 import org.jakstab.rtl.statements.RTLStatement;
-import org.jakstab.util.FastSet;
 import org.jakstab.util.Logger;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.SetMultimap;
 
 public class ControlFlowGraph {
@@ -47,6 +49,14 @@ public class ControlFlowGraph {
 	private Map<Location, BasicBlock> basicBlocks;
 	private SetMultimap<Location, CFAEdge> bbOutEdges;
 	private SetMultimap<Location, CFAEdge> bbInEdges;
+
+	private Set<CFAEdge> edgeView;
+	private Set<CFAEdge> bbEdgeView;
+
+	private CompactCFG compactGraph;
+	private DominatorTree dominatorTree;
+	private DominatorTree postDominatorTree;
+	private SSAForm ssaForm;
 	
 	protected ControlFlowGraph() {
 		outEdges = HashMultimap.create();
@@ -68,9 +78,14 @@ public class ControlFlowGraph {
 		return basicBlocks.get(l);
 	}
 	
+	/**
+	 * Returns an immutable view of the basic block edges, which is shared by
+	 * all callers.
+	 */
 	public Set<CFAEdge> getBasicBlockEdges() {
-		return Collections.unmodifiableSet(
-				new HashSet<CFAEdge>(bbOutEdges.values()));
+		if (bbEdgeView == null)
+			bbEdgeView = new EdgeSet(bbOutEdges);
+		return bbEdgeView;
 	}
 
 	public Set<Location> getBasicBlockNodes() {
@@ -85,6 +100,51 @@ public class ControlFlowGraph {
 		return Collections.unmodifiableMap(basicBlocks);
 	}
 	
+	/**
+	 * Returns the graph in compressed sparse row form. It is built on the
+	 * first call and shared by all callers.
+	 */
+	public CompactCFG getCompactGraph() {
+		if (compactGraph == null)
+			compactGraph = new CompactCFG(outEdges.values());
+		return compactGraph;
+	}
+	
+	/**
+	 * Returns the SSA form of the register variables of the graph, rooted at
+	 * the entry point. It is built on the first call and shared by all
+	 * callers.
+	 */
+	public SSAForm getSSAForm() {
+		if (ssaForm == null)
+			ssaForm = new SSAForm(getDominatorTree());
+		return ssaForm;
+	}
+	
+	/**
+	 * Returns the dominator tree of the locations of the compact graph,
+	 * rooted at the entry point. It is built on the first call and shared
+	 * by all callers.
+	 */
+	public DominatorTree getDominatorTree() {
+		if (dominatorTree == null) {
+			CompactCFG graph = getCompactGraph();
+			dominatorTree = new DominatorTree(graph, graph.getId(entryPoint));
+		}
+		return dominatorTree;
+	}
+	
+	/**
+	 * Returns the post-dominator tree of the locations of the compact graph,
+	 * rooted at a virtual exit. It is built on the first call and shared by
+	 * all callers.
+	 */
+	public DominatorTree getPostDominatorTree() {
+		if (postDominatorTree == null)
+			postDominatorTree = DominatorTree.createPostDominatorTree(getCompactGraph());
+		return postDominatorTree;
+	}
+	
 	public CFAEdge getEdgeBetween(Location src, Location tgt) {
 		Set<CFAEdge> out = outEdges.get(src);
 		if (out != null) for (CFAEdge e : out)
@@ -93,9 +153,13 @@ public class ControlFlowGraph {
 		return null;
 	}
 	
+	/**
+	 * Returns an immutable view of all edges, which is shared by all callers.
+	 */
 	public Set<CFAEdge> getEdges() {
-		return Collections.unmodifiableSet(
-				new HashSet<CFAEdge>(outEdges.values()));
+		if (edgeView == null)
+			edgeView = new EdgeSet(outEdges);
+		return edgeView;
 	}
 	
 	public Location getEntryPoint() {
@@ -122,11 +186,11 @@ public class ControlFlowGraph {
 		return Collections.unmodifiableSet(outEdges.get(l));
 	}
 	
+	/**
+	 * Returns an immutable view of the targets of the out-edges of a location.
+	 */
 	public Set<Location> getSuccessorLocations(Location l) {
-		Set<Location> res = new FastSet<Location>();
-		for (CFAEdge e : outEdges.get(l))
-			res.add(e.getTarget());
-		return res;
+		return new SuccessorSet(outEdges.get(l));
 	}
 	
 	public int numEdges() {
@@ -382,4 +446,80 @@ public class ControlFlowGraph {
 		assert entryPoint != null : "No entry point found! First statement in cycle?";
 	}
 	
+	/**
+	 * A set of edges backed by a map from their sources. Edges are unique per
+	 * source and target, so the values of the map form a set.
+	 */
+	private static final class EdgeSet extends AbstractSet<CFAEdge> {
+		private final SetMultimap<Location, CFAEdge> edgeMap;
+
+		private EdgeSet(SetMultimap<Location, CFAEdge> edgeMap) {
+			this.edgeMap = edgeMap;
+		}
+
+		@Override
+		public Iterator<CFAEdge> iterator() {
+			return Iterators.unmodifiableIterator(edgeMap.values().iterator());
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof CFAEdge))
+				return false;
+			return edgeMap.containsEntry(((CFAEdge)o).getSource(), o);
+		}
+
+		@Override
+		public int size() {
+			return edgeMap.size();
+		}
+	}
+
+	/**
+	 * The targets of a set of out-edges, which are unique since there is at
+	 * most one edge between two locations.
+	 */
+	private static final class SuccessorSet extends AbstractSet<Location> {
+		private final Set<CFAEdge> out;
+
+		private SuccessorSet(Set<CFAEdge> out) {
+			this.out = out;
+		}
+
+		@Override
+		public Iterator<Location> iterator() {
+			final Iterator<CFAEdge> it = out.iterator();
+			return new Iterator<Location>() {
+
+				@Override
+				public boolean hasNext() {
+					return it.hasNext();
+				}
+
+				@Override
+				public Location next() {
+					return it.next().getTarget();
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			for (CFAEdge e : out)
+				if (e.getTarget().equals(o))
+					return true;
+			return false;
+		}
+
+		@Override
+		public int size() {
+			return out.size();
+		}
+	}
+
 }
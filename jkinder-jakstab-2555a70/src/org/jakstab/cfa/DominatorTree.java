@@ -0,0 +1,372 @@
+/*
+ * DominatorTree.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.cfa;
+
+import java.util.Arrays;
+
+/**
+ * The dominator or post-dominator tree of a {@link CompactCFG}, computed by
+ * the iterative algorithm of Cooper, Harvey, and Kennedy ("A Simple, Fast
+ * Dominance Algorithm"). Immediate dominators are refined in reverse
+ * postorder until they are stable, which also terminates on irreducible
+ * graphs. Children and dominance frontiers are stored in compressed sparse
+ * row form like the graph itself, and the tree is numbered in preorder so
+ * dominance queries take constant time.
+ *
+ * The root of a post-dominator tree is a virtual exit location with the id
+ * {@link CompactCFG#getLocationCount()}, which succeeds all locations
+ * without out-edges. Locations from which no such location can be reached,
+ * i.e., infinite loops, are attached to the virtual exit as well, starting
+ * with the highest unattached id. The dominance frontiers of a
+ * post-dominator tree are the control dependences of the graph.
+ *
+ * Locations not reachable from the root are not part of the tree.
+ */
+public final class DominatorTree {
+
+	private final CompactCFG graph;
+	private final int root;
+	private final boolean postDominators;
+
+	/** Successors and predecessors in the direction of the tree, including the virtual exit. */
+	private final int[] succStart;
+	private final int[] succ;
+	private final int[] predStart;
+	private final int[] pred;
+
+	/** Immediate dominators, the root for the root and -1 for unreachable locations. */
+	private final int[] idom;
+	/** Positions in reverse postorder, -1 for unreachable locations. */
+	private final int[] rpoNumber;
+	private final int[] order;
+
+	private final int[] childStart;
+	private final int[] children;
+	/** Positions in a preorder of the tree, and the last position in the subtree. */
+	private final int[] preorder;
+	private final int[] lastDescendant;
+
+	private int[] frontierStart;
+	private int[] frontier;
+
+	/**
+	 * Creates the dominator tree of the locations reachable from a root.
+	 */
+	public DominatorTree(CompactCFG graph, int root) {
+		this(graph, root, false);
+	}
+
+	/**
+	 * Creates the post-dominator tree of a graph, rooted at a virtual exit.
+	 */
+	public static DominatorTree createPostDominatorTree(CompactCFG graph) {
+		return new DominatorTree(graph, graph.getLocationCount(), true);
+	}
+
+	private DominatorTree(CompactCFG graph, int root, boolean postDominators) {
+		this.graph = graph;
+		this.root = root;
+		this.postDominators = postDominators;
+		int n = graph.getLocationCount();
+		int size = postDominators ? n + 1 : n;
+
+		// Successors in the direction of the tree, with the row of the virtual exit last
+		succStart = new int[size + 1];
+		int[] edges = new int[graph.getEdgeCount() + (postDominators ? n : 0)];
+		for (int v = 0; v < n; v++) {
+			int next = succStart[v];
+			if (postDominators) {
+				for (int i = graph.getInEdgeStart(v); i < graph.getInEdgeEnd(v); i++)
+					edges[next++] = graph.getSource(graph.getInEdge(i));
+			} else {
+				for (int e = graph.getOutEdgeStart(v); e < graph.getOutEdgeEnd(v); e++)
+					edges[next++] = graph.getTarget(e);
+			}
+			succStart[v + 1] = next;
+		}
+
+		int[] postorder = new int[size];
+		boolean[] visited = new boolean[size];
+		int[] stack = new int[size];
+		int[] nextEdge = new int[size];
+		int count;
+		if (postDominators) {
+			int next = succStart[n];
+			for (int v = 0; v < n; v++)
+				if (graph.getOutDegree(v) == 0)
+					edges[next++] = v;
+			succStart[n + 1] = next;
+			visited[n] = true;
+			count = 0;
+			for (int i = succStart[n]; i < succStart[n + 1]; i++)
+				count = depthFirst(edges, edges[i], visited, stack, nextEdge, postorder, count);
+			// Attach infinite loops, the exit row is last so it can simply grow
+			for (int v = n - 1; v >= 0; v--) {
+				if (!visited[v]) {
+					edges[succStart[n + 1]++] = v;
+					count = depthFirst(edges, v, visited, stack, nextEdge, postorder, count);
+				}
+			}
+			postorder[count++] = n;
+		} else {
+			count = depthFirst(edges, root, visited, stack, nextEdge, postorder, 0);
+		}
+		succ = Arrays.copyOf(edges, succStart[size]);
+
+		// Predecessors are the transposed successors
+		predStart = new int[size + 1];
+		for (int x : succ)
+			predStart[x + 1]++;
+		for (int v = 0; v < size; v++)
+			predStart[v + 1] += predStart[v];
+		pred = new int[succ.length];
+		int[] next = Arrays.copyOf(predStart, size);
+		for (int v = 0; v < size; v++)
+			for (int i = succStart[v]; i < succStart[v + 1]; i++)
+				pred[next[succ[i]]++] = v;
+
+		order = new int[count];
+		for (int i = 0; i < count; i++)
+			order[i] = postorder[count - 1 - i];
+		rpoNumber = new int[size];
+		Arrays.fill(rpoNumber, -1);
+		for (int i = 0; i < order.length; i++)
+			rpoNumber[order[i]] = i;
+
+		idom = new int[size];
+		Arrays.fill(idom, -1);
+		idom[root] = root;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 1; i < order.length; i++) {
+				int v = order[i];
+				int newIdom = -1;
+				for (int j = predStart[v]; j < predStart[v + 1]; j++) {
+					int p = pred[j];
+					if (idom[p] < 0)
+						continue;
+					newIdom = newIdom < 0 ? p : intersect(p, newIdom);
+				}
+				if (idom[v] != newIdom) {
+					idom[v] = newIdom;
+					changed = true;
+				}
+			}
+		}
+
+		childStart = new int[size + 1];
+		for (int v : order)
+			if (v != root)
+				childStart[idom[v] + 1]++;
+		for (int v = 0; v < size; v++)
+			childStart[v + 1] += childStart[v];
+		children = new int[Math.max(0, order.length - 1)];
+		next = Arrays.copyOf(childStart, size);
+		for (int v : order)
+			if (v != root)
+				children[next[idom[v]]++] = v;
+
+		// Number the tree in preorder, the stack holds each location until its subtree is done
+		preorder = new int[size];
+		lastDescendant = new int[size];
+		Arrays.fill(preorder, -1);
+		stack = new int[2 * order.length];
+		int top = 0;
+		int position = 0;
+		stack[top++] = root;
+		while (top > 0) {
+			int x = stack[--top];
+			if (x < 0) {
+				lastDescendant[-x - 1] = position - 1;
+				continue;
+			}
+			preorder[x] = position++;
+			stack[top++] = -x - 1;
+			for (int i = childStart[x]; i < childStart[x + 1]; i++)
+				stack[top++] = children[i];
+		}
+	}
+
+	public CompactCFG getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return the root location, which is the virtual exit for post-dominator
+	 * trees.
+	 */
+	public int getRoot() {
+		return root;
+	}
+
+	public boolean isPostDominatorTree() {
+		return postDominators;
+	}
+
+	public boolean isReachable(int id) {
+		return rpoNumber[id] >= 0;
+	}
+
+	/**
+	 * @return the immediate dominator of the location, or -1 for the root and
+	 * unreachable locations.
+	 */
+	public int getImmediateDominator(int id) {
+		return id == root ? -1 : idom[id];
+	}
+
+	/**
+	 * @return true if location a dominates location b. Every reachable
+	 * location dominates itself.
+	 */
+	public boolean dominates(int a, int b) {
+		if (preorder[a] < 0 || preorder[b] < 0)
+			return false;
+		return preorder[a] <= preorder[b] && preorder[b] <= lastDescendant[a];
+	}
+
+	/**
+	 * @return the number of reachable locations.
+	 */
+	public int getReachableCount() {
+		return order.length;
+	}
+
+	/**
+	 * @return the reachable location at the given position in reverse postorder.
+	 */
+	public int getLocationInOrder(int position) {
+		return order[position];
+	}
+
+	public int getChildStart(int id) {
+		return childStart[id];
+	}
+
+	public int getChildEnd(int id) {
+		return childStart[id + 1];
+	}
+
+	public int getChild(int position) {
+		return children[position];
+	}
+
+	public int getFrontierStart(int id) {
+		buildFrontiers();
+		return frontierStart[id];
+	}
+
+	public int getFrontierEnd(int id) {
+		buildFrontiers();
+		return frontierStart[id + 1];
+	}
+
+	public int getFrontier(int position) {
+		return frontier[position];
+	}
+
+	private int intersect(int a, int b) {
+		while (a != b) {
+			while (rpoNumber[a] > rpoNumber[b])
+				a = idom[a];
+			while (rpoNumber[b] > rpoNumber[a])
+				b = idom[b];
+		}
+		return a;
+	}
+
+	/**
+	 * Computes the dominance frontiers by walking up from the predecessors of
+	 * each join location to its immediate dominator. The first pass counts,
+	 * the second pass fills the rows.
+	 */
+	private void buildFrontiers() {
+		if (frontierStart != null)
+			return;
+		int size = idom.length;
+		int[] start = new int[size + 1];
+		int[] lastAdded = new int[size];
+		int[] result = null;
+		for (int pass = 0; pass < 2; pass++) {
+			Arrays.fill(lastAdded, -1);
+			for (int b : order) {
+				// The root is reached from outside, so a single in-edge makes it a join
+				if (predStart[b + 1] - predStart[b] < (b == root ? 1 : 2))
+					continue;
+				int stop = b == root ? -1 : idom[b];
+				for (int j = predStart[b]; j < predStart[b + 1]; j++) {
+					int runner = pred[j];
+					if (idom[runner] < 0)
+						continue;
+					while (runner != stop && lastAdded[runner] != b) {
+						lastAdded[runner] = b;
+						if (pass == 0)
+							start[runner + 1]++;
+						else
+							result[start[runner]++] = b;
+						runner = runner == root ? -1 : idom[runner];
+					}
+				}
+			}
+			if (pass == 0) {
+				for (int v = 0; v < size; v++)
+					start[v + 1] += start[v];
+				result = new int[start[size]];
+			} else {
+				// Filling advanced each start to the start of the next row
+				System.arraycopy(start, 0, start, 1, size);
+				start[0] = 0;
+			}
+		}
+		frontier = result;
+		frontierStart = start;
+	}
+
+	/**
+	 * Visits the unvisited locations reachable from a start location in depth
+	 * first order and appends them to the postorder.
+	 *
+	 * @return the new length of the postorder.
+	 */
+	private int depthFirst(int[] edges, int start, boolean[] visited, int[] stack, int[] nextEdge,
+			int[] postorder, int count) {
+		if (visited[start])
+			return count;
+		int top = 0;
+		stack[top++] = start;
+		visited[start] = true;
+		nextEdge[start] = succStart[start];
+		while (top > 0) {
+			int v = stack[top - 1];
+			if (nextEdge[v] < succStart[v + 1]) {
+				int w = edges[nextEdge[v]++];
+				if (!visited[w]) {
+					visited[w] = true;
+					nextEdge[w] = succStart[w];
+					stack[top++] = w;
+				}
+			} else {
+				postorder[count++] = v;
+				top--;
+			}
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,229 @@
+/*
+ * IterationOrder.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.cfa;
+
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.jakstab.util.Logger;
+
+/**
+ * Computes iteration orders over the locations of a reconstructed control flow
+ * graph. An order maps each location reachable from the given roots to its
+ * position in the order; worklists pick states with lower positions first.
+ * Both orders are computed without recursion, so they work on arbitrarily deep
+ * graphs.
+ */
+public final class IterationOrder {
+
+	private static final Logger logger = Logger.getLogger(IterationOrder.class);
+
+	private IterationOrder() {
+	}
+
+	/**
+	 * Computes the reverse postorder of a depth first traversal from the given roots.
+	 *
+	 * @param cfg the control flow graph
+	 * @param roots the locations to start the traversal from
+	 * @param reverse whether to traverse edges backwards, i.e., from target to source
+	 * @return a map from locations to their position in reverse postorder
+	 */
+	public static Map<Location, Integer> reversePostorder(ControlFlowGraph cfg,
+			Collection<Location> roots, boolean reverse) {
+		List<Location> postorder = new ArrayList<Location>(cfg.getNodes().size());
+		Map<Location, Boolean> visited = new HashMap<Location, Boolean>(cfg.getNodes().size());
+		Deque<Location> stack = new ArrayDeque<Location>();
+		Deque<Iterator<Location>> iterators = new ArrayDeque<Iterator<Location>>();
+
+		for (Location root : roots) {
+			if (visited.containsKey(root))
+				continue;
+			visited.put(root, Boolean.TRUE);
+			stack.push(root);
+			iterators.push(successors(cfg, root, reverse).iterator());
+			while (!stack.isEmpty()) {
+				Iterator<Location> it = iterators.peek();
+				if (it.hasNext()) {
+					Location w = it.next();
+					if (!visited.containsKey(w)) {
+						visited.put(w, Boolean.TRUE);
+						stack.push(w);
+						iterators.push(successors(cfg, w, reverse).iterator());
+					}
+				} else {
+					postorder.add(stack.pop());
+					iterators.pop();
+				}
+			}
+		}
+
+		Map<Location, Integer> order = new HashMap<Location, Integer>(postorder.size());
+		for (int i = 0; i < postorder.size(); i++) {
+			order.put(postorder.get(i), postorder.size() - 1 - i);
+		}
+		return order;
+	}
+
+	/**
+	 * Computes a weak topological order of the graph using Bourdoncle's
+	 * hierarchical decomposition ("Efficient chaotic iteration strategies with
+	 * widenings", FMPP 1993). In the linearized order, every loop head precedes
+	 * the body of its loop, and the whole loop precedes the locations after
+	 * the loop's exits.
+	 *
+	 * @param cfg the control flow graph
+	 * @param roots the locations to start the traversal from
+	 * @param reverse whether to traverse edges backwards, i.e., from target to source
+	 * @return a map from locations to their position in the linearized order
+	 */
+	public static Map<Location, Integer> weakTopologicalOrder(ControlFlowGraph cfg,
+			Collection<Location> roots, boolean reverse) {
+		return new WTOBuilder(cfg, reverse).build(roots);
+	}
+
+	private static Collection<Location> successors(ControlFlowGraph cfg, Location l, boolean reverse) {
+		Collection<CFAEdge> edges = reverse ? cfg.getInEdges(l) : cfg.getOutEdges(l);
+		List<Location> result = new ArrayList<Location>(edges.size());
+		for (CFAEdge e : edges)
+			result.add(reverse ? e.getSource() : e.getTarget());
+		return result;
+	}
+
+	/**
+	 * Iterative version of Bourdoncle's recursive visit/component procedures.
+	 * Elements are prepended to the current partition in the original
+	 * algorithm; since a component is completed before anything is added to its
+	 * enclosing partition, appending to a single list and reversing it at the
+	 * end yields the same linearization.
+	 */
+	private static final class WTOBuilder {
+
+		private static final int FINISHED = Integer.MAX_VALUE;
+
+		private static final class Frame {
+			private final Location v;
+			private Iterator<Location> successors;
+			private int head;
+			private boolean loop = false;
+			private boolean inComponent = false;
+
+			private Frame(Location v, Iterator<Location> successors, int head) {
+				this.v = v;
+				this.successors = successors;
+				this.head = head;
+			}
+		}
+
+		private final ControlFlowGraph cfg;
+		private final boolean reverse;
+		private final Map<Location, Integer> dfn;
+		private final Deque<Location> stack = new ArrayDeque<Location>();
+		private final Deque<Frame> frames = new ArrayDeque<Frame>();
+		private final List<Location> reversedOrder;
+		private int num = 0;
+
+		private WTOBuilder(ControlFlowGraph cfg, boolean reverse) {
+			this.cfg = cfg;
+			this.reverse = reverse;
+			dfn = new HashMap<Location, Integer>(cfg.getNodes().size());
+			reversedOrder = new ArrayList<Location>(cfg.getNodes().size());
+		}
+
+		private int dfn(Location l) {
+			Integer n = dfn.get(l);
+			return n == null ? 0 : n;
+		}
+
+		private void startVisit(Location v) {
+			stack.push(v);
+			dfn.put(v, ++num);
+			frames.push(new Frame(v, successors(cfg, v, reverse).iterator(), num));
+		}
+
+		private Map<Location, Integer> build(Collection<Location> roots) {
+			for (Location root : roots) {
+				if (dfn(root) == 0)
+					run(root);
+			}
+
+			Map<Location, Integer> order = new HashMap<Location, Integer>(reversedOrder.size());
+			for (int i = 0; i < reversedOrder.size(); i++) {
+				order.put(reversedOrder.get(i), reversedOrder.size() - 1 - i);
+			}
+			logger.debug("Computed weak topological order of " + order.size() + " locations.");
+			return order;
+		}
+
+		private void run(Location root) {
+			startVisit(root);
+			while (!frames.isEmpty()) {
+				Frame f = frames.peek();
+
+				if (f.successors.hasNext()) {
+					Location w = f.successors.next();
+					int d = dfn(w);
+					if (d == 0) {
+						// The result of this visit is passed back in returnFrom
+						startVisit(w);
+					} else if (!f.inComponent && d <= f.head) {
+						f.head = d;
+						f.loop = true;
+					}
+					continue;
+				}
+
+				if (!f.inComponent && f.head == dfn(f.v)) {
+					dfn.put(f.v, FINISHED);
+					Location element = stack.pop();
+					if (f.loop) {
+						while (!element.equals(f.v)) {
+							dfn.put(element, 0);
+							element = stack.pop();
+						}
+						// Continue as component(v)
+						f.inComponent = true;
+						f.successors = successors(cfg, f.v, reverse).iterator();
+						continue;
+					}
+					reversedOrder.add(f.v);
+				} else if (f.inComponent) {
+					reversedOrder.add(f.v);
+				}
+
+				frames.pop();
+				returnFrom(f.head);
+			}
+		}
+
+		private void returnFrom(int min) {
+			Frame parent = frames.peek();
+			if (parent != null && !parent.inComponent && min <= parent.head) {
+				parent.head = min;
+				parent.loop = true;
+			}
+		}
+	}
+
+}
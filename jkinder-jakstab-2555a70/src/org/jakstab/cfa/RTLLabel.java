@@ -17,6 +17,8 @@
  */
 package org.jakstab.cfa;
 
+import java.io.Serializable;
+
 import org.jakstab.asm.AbsoluteAddress;
 
 /**
@@ -27,7 +29,9 @@ import org.jakstab.asm.AbsoluteAddress;
  * 
  * @author Johannes Kinder
  */
-public class RTLLabel implements Location {
+public class RTLLabel implements Location, Serializable {
+
+	private static final long serialVersionUID = 6985164845987395514L;
 	private final AbsoluteAddress address;
 	private final int index;
 	
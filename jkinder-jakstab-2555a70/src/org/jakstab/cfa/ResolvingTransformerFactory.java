@@ -21,6 +21,7 @@ import java.util.*;
 
 import org.jakstab.Program;
 import org.jakstab.analysis.AbstractState;
+import org.jakstab.asm.AbsoluteAddress;
 import org.jakstab.cfa.RTLLabel;
 import org.jakstab.rtl.statements.*;
 import org.jakstab.util.FastSet;
@@ -103,6 +104,16 @@ public abstract class ResolvingTransformerFactory implements StateTransformerFac
 			newEdges = transformers;
 		}
 		outEdges.putAll(l, newEdges);
+
+		// Start disassembling newly discovered instructions in the background
+		Program program = Program.getProgram();
+		for (CFAEdge edge : newEdges) {
+			if (!(edge.getTarget() instanceof RTLLabel))
+				continue;
+			AbsoluteAddress target = ((RTLLabel)edge.getTarget()).getAddress();
+			if (!target.equals(l.getAddress()))
+				program.preDecode(target);
+		}
 	}
 
 	public Set<CFAEdge> getExistingOutEdges(RTLLabel l) {
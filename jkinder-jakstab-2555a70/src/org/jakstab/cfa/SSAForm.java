@@ -0,0 +1,669 @@
+/*
+ * SSAForm.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.cfa;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLMemoryLocation;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.rtl.statements.RTLAlloc;
+import org.jakstab.rtl.statements.RTLMemcpy;
+import org.jakstab.rtl.statements.RTLMemoryAssignment;
+import org.jakstab.rtl.statements.RTLMemset;
+import org.jakstab.rtl.statements.RTLStatement;
+import org.jakstab.rtl.statements.RTLUnknownProcedureCall;
+import org.jakstab.util.Logger;
+
+/**
+ * The SSA form of the register variables of a {@link CompactCFG}, with
+ * def-use chains. Definitions are numbered densely: first the definitions
+ * made by the statements on the edges, grouped by edge, then the phi
+ * functions, grouped by location, and finally one entry definition per
+ * variable for its value at the root location.
+ *
+ * A statement defining a register also defines all registers covered by it
+ * and covering it, so a definition of eax is accompanied by definitions of
+ * ax, al, and ah. Memory is not part of the SSA form, unless it is built
+ * with pseudo-variables: then every statement that may write memory defines
+ * {@link #MEMORY}, and every unknown procedure call additionally defines
+ * {@link #UNKNOWN_CALL}. Pseudo-variables are never used by statements.
+ *
+ * For every use of a variable on an edge, the reaching definition is
+ * recorded, and for every phi function the definition reaching it along
+ * each in-edge of its location. Conversely, each definition knows the
+ * definitions depending on it, i.e., the definitions on the edges using it
+ * and the phi functions having it as an operand. Uses and operands not
+ * reachable from the root have no reaching definition (-1).
+ */
+public final class SSAForm {
+
+	private static final Logger logger = Logger.getLogger(SSAForm.class);
+
+	public static enum Kind { STATEMENT, PHI, ENTRY }
+
+	/** The pseudo-variable for memory. */
+	public static final RTLVariable MEMORY = ExpressionFactory.createVariable("%MEMORY", 1);
+	/** The pseudo-variable for the effects of unknown procedure calls. */
+	public static final RTLVariable UNKNOWN_CALL = ExpressionFactory.createVariable("%UNKNOWN_CALL", 1);
+
+	private static final RTLVariable[] NO_PSEUDO_DEFINITIONS = {};
+	private static final RTLVariable[] MEMORY_DEFINITIONS = { MEMORY };
+	private static final RTLVariable[] CALL_DEFINITIONS = { MEMORY, UNKNOWN_CALL };
+
+	private final CompactCFG graph;
+	private final DominatorTree dominators;
+	private final boolean pseudoVariables;
+
+	/** The variables by their index. */
+	private final RTLVariable[] variables;
+	private final Map<RTLVariable, RTLVariable[]> aliases = new HashMap<RTLVariable, RTLVariable[]>();
+
+	private final int phiBase;
+	private final int entryBase;
+	/** The variable index of each definition. */
+	private final int[] defVariable;
+	/** The edge of statement definitions, the location of phis and entries. */
+	private final int[] defSite;
+
+	private final int[] edgeDefStart;
+	private final int[] useStart;
+	private final int[] useVariable;
+	private final int[] useDefinition;
+
+	/** The phi functions at location l are phiBase + locationPhiStart[l] to phiBase + locationPhiStart[l+1]-1. */
+	private int[] locationPhiStart;
+	private final int[] operandStart;
+	private final int[] operands;
+	private final int[] entryDefinition;
+
+	private final int[] dependentStart;
+	private int[] dependents;
+
+	/** The definition of each variable in effect at each location, filled in on demand. */
+	private int[][] definitionsAt;
+	private int[] path;
+
+	/**
+	 * Builds the SSA form of the graph of a dominator tree, rooted at the
+	 * root of the tree.
+	 */
+	public SSAForm(DominatorTree dominators) {
+		this(dominators, false);
+	}
+
+	/**
+	 * Builds the SSA form of the graph of a dominator tree, rooted at the
+	 * root of the tree.
+	 *
+	 * @param pseudoVariables whether to include the pseudo-variables for
+	 * memory and unknown procedure calls
+	 */
+	public SSAForm(DominatorTree dominators, boolean pseudoVariables) {
+		assert !dominators.isPostDominatorTree();
+		long startTime = System.currentTimeMillis();
+		this.dominators = dominators;
+		this.pseudoVariables = pseudoVariables;
+		graph = dominators.getGraph();
+		int root = dominators.getRoot();
+		int n = graph.getLocationCount();
+		int m = graph.getEdgeCount();
+
+		for (int e = 0; e < m; e++) {
+			RTLStatement stmt = getStatement(e);
+			for (RTLVariable v : stmt.getDefinedVariables())
+				getAliases(v);
+			for (RTLVariable v : getPseudoDefinitions(stmt))
+				getAliases(v);
+			for (RTLVariable v : stmt.getUsedVariables())
+				getAliases(v);
+		}
+		// Aliases of used registers are registered, too
+		int maxIndex = -1;
+		for (RTLVariable v : aliases.keySet())
+			maxIndex = Math.max(maxIndex, v.getIndex());
+		int variableCount = maxIndex + 1;
+		variables = new RTLVariable[variableCount];
+		for (RTLVariable[] a : aliases.values())
+			variables[a[0].getIndex()] = a[0];
+
+		// Definitions and uses of the statements, grouped by edge
+		int[] mark = new int[variableCount];
+		edgeDefStart = new int[m + 1];
+		useStart = new int[m + 1];
+		for (int e = 0; e < m; e++) {
+			RTLStatement stmt = getStatement(e);
+			for (RTLVariable v : stmt.getDefinedVariables())
+				for (RTLVariable a : getAliases(v))
+					if (mark[a.getIndex()] != e + 1) {
+						mark[a.getIndex()] = e + 1;
+						edgeDefStart[e + 1]++;
+					}
+			edgeDefStart[e + 1] += getPseudoDefinitions(stmt).length;
+			useStart[e + 1] = stmt.getUsedVariables().size();
+		}
+		for (int e = 0; e < m; e++) {
+			edgeDefStart[e + 1] += edgeDefStart[e];
+			useStart[e + 1] += useStart[e];
+		}
+		phiBase = edgeDefStart[m];
+		int[] statementVariables = new int[phiBase];
+		useVariable = new int[useStart[m]];
+		Arrays.fill(mark, 0);
+		for (int e = 0; e < m; e++) {
+			RTLStatement stmt = getStatement(e);
+			int d = edgeDefStart[e];
+			for (RTLVariable v : stmt.getDefinedVariables())
+				for (RTLVariable a : getAliases(v))
+					if (mark[a.getIndex()] != e + 1) {
+						mark[a.getIndex()] = e + 1;
+						statementVariables[d++] = a.getIndex();
+					}
+			for (RTLVariable v : getPseudoDefinitions(stmt))
+				statementVariables[d++] = v.getIndex();
+			int u = useStart[e];
+			for (RTLVariable v : stmt.getUsedVariables())
+				useVariable[u++] = v.getIndex();
+		}
+
+		int[] phiVariables = placePhis(statementVariables, variableCount);
+		int phiCount = phiVariables.length;
+		entryBase = phiBase + phiCount;
+
+		entryDefinition = new int[variableCount];
+		int entryCount = 0;
+		for (int v = 0; v < variableCount; v++)
+			entryDefinition[v] = variables[v] == null ? -1 : entryBase + entryCount++;
+
+		int definitionCount = entryBase + entryCount;
+		defVariable = new int[definitionCount];
+		defSite = new int[definitionCount];
+		for (int e = 0; e < m; e++)
+			for (int d = edgeDefStart[e]; d < edgeDefStart[e + 1]; d++) {
+				defVariable[d] = statementVariables[d];
+				defSite[d] = e;
+			}
+		for (int l = 0; l < n; l++)
+			for (int p = locationPhiStart[l]; p < locationPhiStart[l + 1]; p++) {
+				defVariable[phiBase + p] = phiVariables[p];
+				defSite[phiBase + p] = l;
+			}
+		for (int v = 0; v < variableCount; v++)
+			if (entryDefinition[v] >= 0) {
+				defVariable[entryDefinition[v]] = v;
+				defSite[entryDefinition[v]] = root;
+			}
+
+		// Phi functions at the root have an extra operand for entering the graph
+		operandStart = new int[phiCount + 1];
+		for (int p = 0; p < phiCount; p++) {
+			int l = defSite[phiBase + p];
+			operandStart[p + 1] = operandStart[p] + graph.getInDegree(l) + (l == root ? 1 : 0);
+		}
+		operands = new int[operandStart[phiCount]];
+		Arrays.fill(operands, -1);
+		for (int p = locationPhiStart[root]; p < locationPhiStart[root + 1]; p++)
+			operands[operandStart[p + 1] - 1] = entryDefinition[phiVariables[p]];
+
+		useDefinition = new int[useVariable.length];
+		Arrays.fill(useDefinition, -1);
+		rename(variableCount);
+
+		// Def-use chains, from each definition to the definitions depending on it
+		dependentStart = new int[definitionCount + 1];
+		for (int pass = 0; pass < 2; pass++) {
+			for (int e = 0; e < m; e++)
+				for (int u = useStart[e]; u < useStart[e + 1]; u++) {
+					int d = useDefinition[u];
+					if (d < 0)
+						continue;
+					for (int x = edgeDefStart[e]; x < edgeDefStart[e + 1]; x++)
+						addDependent(pass, d, x);
+				}
+			for (int p = 0; p < phiCount; p++)
+				for (int i = operandStart[p]; i < operandStart[p + 1]; i++)
+					if (operands[i] >= 0)
+						addDependent(pass, operands[i], phiBase + p);
+			if (pass == 0) {
+				for (int d = 0; d < definitionCount; d++)
+					dependentStart[d + 1] += dependentStart[d];
+				dependents = new int[dependentStart[definitionCount]];
+			} else {
+				// Filling advanced each start to the start of the next row
+				System.arraycopy(dependentStart, 0, dependentStart, 1, definitionCount);
+				dependentStart[0] = 0;
+			}
+		}
+
+		long endTime = System.currentTimeMillis();
+		logger.debug("Built SSA form with " + definitionCount + " definitions and " + phiCount +
+				" phi functions in " + (endTime - startTime) + "ms.");
+	}
+
+	public CompactCFG getGraph() {
+		return graph;
+	}
+
+	public DominatorTree getDominatorTree() {
+		return dominators;
+	}
+
+	public RTLStatement getStatement(int edge) {
+		return (RTLStatement)graph.getTransformer(edge);
+	}
+
+	public int getDefinitionCount() {
+		return defVariable.length;
+	}
+
+	public Kind getKind(int definition) {
+		if (definition < phiBase)
+			return Kind.STATEMENT;
+		return definition < entryBase ? Kind.PHI : Kind.ENTRY;
+	}
+
+	public RTLVariable getVariable(int definition) {
+		return variables[defVariable[definition]];
+	}
+
+	/**
+	 * @return the edge of a statement definition, or -1 for phi functions and
+	 * entry definitions.
+	 */
+	public int getEdge(int definition) {
+		return definition < phiBase ? defSite[definition] : -1;
+	}
+
+	/**
+	 * @return the location at which a definition takes effect, i.e., the
+	 * target of the edge of a statement definition.
+	 */
+	public int getLocation(int definition) {
+		return definition < phiBase ? graph.getTarget(defSite[definition]) : defSite[definition];
+	}
+
+	public int getDefinitionStart(int edge) {
+		return edgeDefStart[edge];
+	}
+
+	public int getDefinitionEnd(int edge) {
+		return edgeDefStart[edge + 1];
+	}
+
+	/**
+	 * @return the definition of a variable by the statement of an edge, or -1
+	 * if the statement does not define it.
+	 */
+	public int getDefinition(int edge, RTLVariable v) {
+		for (int d = edgeDefStart[edge]; d < edgeDefStart[edge + 1]; d++)
+			if (defVariable[d] == v.getIndex())
+				return d;
+		return -1;
+	}
+
+	/**
+	 * Returns the definition of a variable that takes effect at a location:
+	 * its phi function there, its definition by the statement of the only
+	 * in-edge of the location, or its entry definition at the root.
+	 *
+	 * @return the definition, or -1 if the location inherits the definition
+	 * reaching its immediate dominator.
+	 */
+	public int getLocationDefinition(int location, RTLVariable v) {
+		for (int p = phiBase + locationPhiStart[location]; p < phiBase + locationPhiStart[location + 1]; p++)
+			if (defVariable[p] == v.getIndex())
+				return p;
+		if (location == dominators.getRoot())
+			return getEntryDefinition(v);
+		if (graph.getInDegree(location) == 1)
+			return getDefinition(graph.getInEdge(graph.getInEdgeStart(location)), v);
+		return -1;
+	}
+
+	/**
+	 * Returns the definition of a variable in effect at a location, i.e., the
+	 * definition taking effect at the nearest location up the dominator tree
+	 * from it, including the location itself. The result is stored for all
+	 * locations on the walk up the tree, so finding the definitions of a
+	 * variable at any number of locations takes time linear in the number of
+	 * locations, and one int per location of memory for each variable asked
+	 * for.
+	 *
+	 * @return the definition, or -1 if the location is not reachable or the
+	 * variable does not occur in the graph.
+	 */
+	public int getDefinitionAt(int location, RTLVariable v) {
+		int index = v.getIndex();
+		if (!dominators.isReachable(location) || index >= variables.length || variables[index] == null)
+			return -1;
+		if (definitionsAt == null) {
+			definitionsAt = new int[variables.length][];
+			path = new int[graph.getLocationCount()];
+		}
+		int[] known = definitionsAt[index];
+		if (known == null) {
+			known = new int[graph.getLocationCount()];
+			Arrays.fill(known, -1);
+			definitionsAt[index] = known;
+		}
+		// Every variable in the graph has a definition at the root, so the walk ends there
+		int size = 0;
+		int d = known[location];
+		for (int x = location; d < 0; x = dominators.getImmediateDominator(x)) {
+			d = known[x];
+			if (d < 0)
+				d = getLocationDefinition(x, v);
+			path[size++] = x;
+		}
+		while (size > 0)
+			known[path[--size]] = d;
+		return d;
+	}
+
+	public int getUseStart(int edge) {
+		return useStart[edge];
+	}
+
+	public int getUseEnd(int edge) {
+		return useStart[edge + 1];
+	}
+
+	public RTLVariable getUseVariable(int position) {
+		return variables[useVariable[position]];
+	}
+
+	/**
+	 * @return the definition reaching the use at the given position, or -1
+	 * if the edge is not reachable.
+	 */
+	public int getUseDefinition(int position) {
+		return useDefinition[position];
+	}
+
+	/**
+	 * @return the definition of a variable reaching the statement of an edge,
+	 * or -1 if the statement does not use the variable or is not reachable.
+	 */
+	public int getReachingDefinition(int edge, RTLVariable v) {
+		for (int u = useStart[edge]; u < useStart[edge + 1]; u++)
+			if (useVariable[u] == v.getIndex())
+				return useDefinition[u];
+		return -1;
+	}
+
+	public int getPhiStart(int location) {
+		return phiBase + locationPhiStart[location];
+	}
+
+	public int getPhiEnd(int location) {
+		return phiBase + locationPhiStart[location + 1];
+	}
+
+	/**
+	 * Operands of a phi function are ordered like the in-edges of its
+	 * location. At the root, the entry definition is the last operand.
+	 */
+	public int getOperandStart(int phi) {
+		return operandStart[phi - phiBase];
+	}
+
+	public int getOperandEnd(int phi) {
+		return operandStart[phi - phiBase + 1];
+	}
+
+	public int getOperand(int position) {
+		return operands[position];
+	}
+
+	/**
+	 * @return the definition of the initial value of a variable, or -1 if
+	 * the variable does not occur in the graph.
+	 */
+	public int getEntryDefinition(RTLVariable v) {
+		return v.getIndex() < entryDefinition.length ? entryDefinition[v.getIndex()] : -1;
+	}
+
+	public int getDependentStart(int definition) {
+		return dependentStart[definition];
+	}
+
+	public int getDependentEnd(int definition) {
+		return dependentStart[definition + 1];
+	}
+
+	public int getDependent(int position) {
+		return dependents[position];
+	}
+
+	private void addDependent(int pass, int definition, int dependent) {
+		if (pass == 0)
+			dependentStart[definition + 1]++;
+		else
+			dependents[dependentStart[definition]++] = dependent;
+	}
+
+	/**
+	 * Places phi functions at the iterated dominance frontiers of the
+	 * locations after the definitions of each variable. The first pass
+	 * counts the phi functions per location, the second pass fills them in.
+	 *
+	 * @return the variables of the phi functions, grouped by location.
+	 */
+	private int[] placePhis(int[] statementVariables, int variableCount) {
+		int n = graph.getLocationCount();
+		int root = dominators.getRoot();
+
+		// Collect the locations after each definition, grouped by variable
+		int[] siteStart = new int[variableCount + 1];
+		for (int d = 0; d < phiBase; d++)
+			siteStart[statementVariables[d] + 1]++;
+		for (int v = 0; v < variableCount; v++)
+			siteStart[v + 1] += siteStart[v];
+		int[] sites = new int[phiBase];
+		int[] next = Arrays.copyOf(siteStart, variableCount);
+		for (int e = 0; e < graph.getEdgeCount(); e++)
+			for (int d = edgeDefStart[e]; d < edgeDefStart[e + 1]; d++)
+				sites[next[statementVariables[d]]++] = graph.getTarget(e);
+
+		locationPhiStart = new int[n + 1];
+		int[] phiVariables = null;
+		int[] hasPhi = new int[n];
+		int[] queued = new int[n];
+		int[] worklist = new int[n];
+		for (int pass = 0; pass < 2; pass++) {
+			Arrays.fill(hasPhi, 0);
+			Arrays.fill(queued, 0);
+			for (int v = 0; v < variableCount; v++) {
+				int stamp = v + 1;
+				int size = 0;
+				for (int i = siteStart[v]; i < siteStart[v + 1]; i++) {
+					int t = sites[i];
+					if (!dominators.isReachable(t))
+						continue;
+					// A definition on an edge into a join reaches the join through a phi function
+					if ((graph.getInDegree(t) > 1 || t == root) && hasPhi[t] != stamp) {
+						hasPhi[t] = stamp;
+						if (pass == 0)
+							locationPhiStart[t + 1]++;
+						else
+							phiVariables[next[t]++] = v;
+					}
+					if (queued[t] != stamp) {
+						queued[t] = stamp;
+						worklist[size++] = t;
+					}
+				}
+				while (size > 0) {
+					int x = worklist[--size];
+					for (int i = dominators.getFrontierStart(x); i < dominators.getFrontierEnd(x); i++) {
+						int y = dominators.getFrontier(i);
+						if (hasPhi[y] == stamp)
+							continue;
+						hasPhi[y] = stamp;
+						if (pass == 0)
+							locationPhiStart[y + 1]++;
+						else
+							phiVariables[next[y]++] = v;
+						if (queued[y] != stamp) {
+							queued[y] = stamp;
+							worklist[size++] = y;
+						}
+					}
+				}
+			}
+			if (pass == 0) {
+				for (int l = 0; l < n; l++)
+					locationPhiStart[l + 1] += locationPhiStart[l];
+				phiVariables = new int[locationPhiStart[n]];
+				next = Arrays.copyOf(locationPhiStart, n);
+			}
+		}
+		return phiVariables;
+	}
+
+	/**
+	 * Renames definitions in a depth first walk over the dominator tree. The
+	 * statement of an edge into a location with a single in-edge takes effect
+	 * when entering its target, since the target is dominated by the source.
+	 * Edges into joins only supply the operands of the phi functions there.
+	 */
+	private void rename(int variableCount) {
+		int n = graph.getLocationCount();
+		int root = dominators.getRoot();
+
+		int[][] stacks = new int[variableCount][];
+		int[] stackSizes = new int[variableCount];
+		for (int v = 0; v < variableCount; v++) {
+			stacks[v] = new int[4];
+			if (entryDefinition[v] >= 0)
+				stacks[v][stackSizes[v]++] = entryDefinition[v];
+		}
+		int[] undoLog = new int[64];
+		int undoSize = 0;
+		int[] undoMark = new int[n];
+
+		int[] stack = new int[2 * n];
+		int top = 0;
+		stack[top++] = root;
+		while (top > 0) {
+			int x = stack[--top];
+			if (x < 0) {
+				// Leaving a location, pop all definitions made in it
+				int l = -x - 1;
+				while (undoSize > undoMark[l])
+					stackSizes[undoLog[--undoSize]]--;
+				continue;
+			}
+			undoMark[x] = undoSize;
+
+			int pushCount = locationPhiStart[x + 1] - locationPhiStart[x];
+			if (x != root && graph.getInDegree(x) == 1) {
+				int e = graph.getInEdge(graph.getInEdgeStart(x));
+				recordUses(e, stacks, stackSizes);
+				pushCount += edgeDefStart[e + 1] - edgeDefStart[e];
+			}
+			if (undoSize + pushCount > undoLog.length)
+				undoLog = Arrays.copyOf(undoLog, Math.max(undoLog.length * 2, undoSize + pushCount));
+			for (int p = phiBase + locationPhiStart[x]; p < phiBase + locationPhiStart[x + 1]; p++)
+				undoLog[undoSize++] = push(stacks, stackSizes, p);
+			if (x != root && graph.getInDegree(x) == 1) {
+				int e = graph.getInEdge(graph.getInEdgeStart(x));
+				for (int d = edgeDefStart[e]; d < edgeDefStart[e + 1]; d++)
+					undoLog[undoSize++] = push(stacks, stackSizes, d);
+			}
+
+			for (int e = graph.getOutEdgeStart(x); e < graph.getOutEdgeEnd(x); e++) {
+				int t = graph.getTarget(e);
+				if (graph.getInDegree(t) == 1 && t != root)
+					continue;
+				recordUses(e, stacks, stackSizes);
+				int k = graph.getInEdgeStart(t);
+				while (graph.getInEdge(k) != e)
+					k++;
+				k -= graph.getInEdgeStart(t);
+				for (int p = locationPhiStart[t]; p < locationPhiStart[t + 1]; p++) {
+					int v = defVariable[phiBase + p];
+					int d = getDefinition(e, variables[v]);
+					operands[operandStart[p] + k] = d >= 0 ? d : stacks[v][stackSizes[v] - 1];
+				}
+			}
+
+			stack[top++] = -x - 1;
+			for (int i = dominators.getChildStart(x); i < dominators.getChildEnd(x); i++)
+				stack[top++] = dominators.getChild(i);
+		}
+	}
+
+	private void recordUses(int edge, int[][] stacks, int[] stackSizes) {
+		for (int u = useStart[edge]; u < useStart[edge + 1]; u++) {
+			int v = useVariable[u];
+			useDefinition[u] = stacks[v][stackSizes[v] - 1];
+		}
+	}
+
+	/**
+	 * Pushes a definition on the stack of its variable.
+	 *
+	 * @return the variable of the definition.
+	 */
+	private int push(int[][] stacks, int[] stackSizes, int definition) {
+		int v = defVariable[definition];
+		if (stackSizes[v] == stacks[v].length)
+			stacks[v] = Arrays.copyOf(stacks[v], stackSizes[v] * 2);
+		stacks[v][stackSizes[v]++] = definition;
+		return v;
+	}
+
+	private RTLVariable[] getPseudoDefinitions(RTLStatement stmt) {
+		if (!pseudoVariables)
+			return NO_PSEUDO_DEFINITIONS;
+		if (stmt instanceof RTLUnknownProcedureCall)
+			return CALL_DEFINITIONS;
+		if (stmt instanceof RTLMemoryAssignment || stmt instanceof RTLMemset || stmt instanceof RTLMemcpy ||
+				(stmt instanceof RTLAlloc && ((RTLAlloc)stmt).getPointer() instanceof RTLMemoryLocation))
+			return MEMORY_DEFINITIONS;
+		return NO_PSEUDO_DEFINITIONS;
+	}
+
+	/**
+	 * @return the variable, followed by the registers covered by it and
+	 * covering it.
+	 */
+	private RTLVariable[] getAliases(RTLVariable v) {
+		RTLVariable[] result = aliases.get(v);
+		if (result == null) {
+			Set<RTLVariable> covered = ExpressionFactory.coveredRegisters(v);
+			Set<RTLVariable> covering = ExpressionFactory.coveringRegisters(v);
+			result = new RTLVariable[1 + covered.size() + covering.size()];
+			int i = 0;
+			result[i++] = v;
+			for (RTLVariable x : covered)
+				result[i++] = x;
+			for (RTLVariable x : covering)
+				result[i++] = x;
+			aliases.put(v, result);
+			for (int j = 1; j < result.length; j++)
+				getAliases(result[j]);
+		}
+		return result;
+	}
+
+}
@@ -34,6 +34,11 @@
 
 package org.jakstab.disasm.x86;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.jakstab.util.BinaryInputBuffer;
 import org.jakstab.util.Logger;
 import org.jakstab.asm.Instruction;
@@ -45,20 +50,67 @@ import org.jakstab.disasm.Disassembler;
 import capstone.Capstone;
 import capstone.X86;
 
+/**
+ * Decodes x86 instructions using Capstone for mnemonics and sizes and the
+ * opcode tables for operands. 
+ * 
+ * A disassembler keeps the Capstone handle, the decoding window, and the
+ * cache of decoded instructions as unsynchronized state, so an instance must
+ * only be used by one thread at a time. The instance returned by 
+ * {@link org.jakstab.loader.ExecutableImage#getDisassembler()} is used by the 
+ * analysis thread, other threads have to create their own through 
+ * {@link org.jakstab.loader.ExecutableImage#createDisassembler()}.
+ */
 public class X86Disassembler implements Disassembler, X86Opcodes {
 	private final static Logger logger = Logger.getLogger(X86Disassembler.class);
 
+	// Capstone decodes all instructions in a window of this many bytes at once
+	private static final int DECODE_WINDOW = 64;
+	private static final int MAX_CACHED_INSTRUCTIONS = 4096;
+
+	private static final AtomicLong decodedInstructions = new AtomicLong();
+	private static final AtomicLong decodeNanos = new AtomicLong();
+	// The decoders in the opcode tables are shared by all disassemblers and 
+	// keep working state, so only one thread at a time may use them
+	private static final Object decoderLock = new Object();
+
 	protected final X86InstructionFactory factory;
 	protected final BinaryInputBuffer code;
 	private int byteIndex;
 	private Capstone cs;
+	private final byte[] window = new byte[DECODE_WINDOW];
+	// Instructions decoded by Capstone, by file offset
+	private final Map<Integer, Capstone.CsInsn> capstoneCache = 
+		new LinkedHashMap<Integer, Capstone.CsInsn>(2 * DECODE_WINDOW) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Capstone.CsInsn> eldest) {
+				return size() > MAX_CACHED_INSTRUCTIONS;
+			}
+		};
 
 	private X86Disassembler(BinaryInputBuffer code, X86InstructionFactory factory) {
 		this.code = code;
 		this.factory = factory;
 		cs = new Capstone(Capstone.CS_ARCH_X86, Capstone.CS_MODE_32);
 		cs.setSyntax(cs.CS_OPT_SYNTAX_ATT);
-		cs.setDetail(cs.CS_OPT_ON);
+		// Operand details are not used, and converting them to Java objects 
+		// is by far the most expensive part of decoding
+		cs.setDetail(cs.CS_OPT_OFF);
+	}
+	
+	/**
+	 * @return the number of instructions decoded by all disassemblers.
+	 */
+	public static long getDecodedInstructionCount() {
+		return decodedInstructions.get();
+	}
+
+	/**
+	 * @return the time spent decoding instructions in all disassemblers, in milliseconds.
+	 */
+	public static long getDecodingTime() {
+		return decodeNanos.get() / 1000000;
 	}
 
 	/**
@@ -69,14 +121,44 @@ public class X86Disassembler implements Disassembler, X86Opcodes {
 	 */
 	public X86Disassembler(BinaryInputBuffer code) {
 		this(code, new X86InstructionFactoryImpl());
-		cs = new Capstone(Capstone.CS_ARCH_X86, Capstone.CS_MODE_32);
-		cs.setSyntax(cs.CS_OPT_SYNTAX_ATT);
-		cs.setDetail(cs.CS_OPT_ON);
+	}
+	
+	/**
+	 * Returns the Capstone decoding of the instruction at the given file offset. 
+	 * On a cache miss, decodes all instructions in the window starting at the 
+	 * offset with a single call to Capstone.
+	 * 
+	 * @return the decoded instruction, or null if Capstone cannot decode it
+	 */
+	private Capstone.CsInsn capstoneDecode(int offset) {
+		Capstone.CsInsn csin = capstoneCache.get(offset);
+		if (csin != null)
+			return csin;
+		int length = code.getBytesAt(offset, window, 0, DECODE_WINDOW);
+		if (length <= 0)
+			return null;
+		byte[] bytes = length == DECODE_WINDOW ? window : Arrays.copyOf(window, length);
+		Capstone.CsInsn[] batch = cs.disasm(bytes, offset);
+		for (Capstone.CsInsn c : batch) {
+			capstoneCache.put((int)c.address, c);
+			if (logger.isDebugEnabled())
+				logger.debug(c.address + " " + c.mnemonic + " " + c.opStr);
+		}
+		return capstoneCache.get(offset);
 	}
 
-	// TODO Dom almost for sure the place to start
 	@Override
 	public final Instruction decodeInstruction(long index) {
+		long startTime = System.nanoTime();
+		Instruction instr = decode(index);
+		decodeNanos.addAndGet(System.nanoTime() - startTime);
+		if (instr != null)
+			decodedInstructions.incrementAndGet();
+		return instr;
+	}
+
+	// TODO Dom almost for sure the place to start
+	private Instruction decode(long index) {
 
 		Instruction instr = null;
 		InstructionDecoder instrDecoder = null;
@@ -93,23 +175,12 @@ public class X86Disassembler implements Disassembler, X86Opcodes {
 			// check if there is any prefix
 			prefixes = getPrefixes();
 			int segmentOverride = 1; // get segment override prefix
-			logger.warn((byteIndex - instrStartIndex));
 
-			byte[] insbytes = new byte[15 + (byteIndex - instrStartIndex)];
-			for (int i = instrStartIndex; i < 15 + byteIndex; i++) {// TODO Dom - This is an arbitrary
-																	// number should probably calculate this.
-				insbytes[i - instrStartIndex] = (byte) InstructionDecoder.readByte(code, i);
-			}
-
-			StringBuilder sb = new StringBuilder();
-			for (byte b : insbytes) {
-				sb.append(String.format("%02X ", b));
+			csin = capstoneDecode(instrStartIndex);
+			if (csin == null) {
+				logger.error("Capstone cannot decode instruction at file offset 0x" + Integer.toHexString(instrStartIndex) + ".");
+				return null;
 			}
-			logger.warn(sb.toString());
-			Capstone.CsInsn[] all_insn = cs.disasm(insbytes, instrStartIndex, 1);
-			for (Capstone.CsInsn c : all_insn)
-				logger.warn(c.address + " " + c.mnemonic + " " + c.opStr);
-			csin = all_insn[0];
 
 			// Read opcode
 			int opcode = InstructionDecoder.readByte(code, byteIndex);
@@ -151,15 +222,18 @@ public class X86Disassembler implements Disassembler, X86Opcodes {
 				return null;
 			}
 
-			instr = instrDecoder.decode(code, byteIndex, instrStartIndex, segmentOverride, prefixes, factory);
+			synchronized (decoderLock) {
+				instr = instrDecoder.decode(code, byteIndex, instrStartIndex, segmentOverride, prefixes, factory);
+				// len = instrDecoder.getCurrentIndex();
+				// byteIndex = len;
+				if (instr != null)
+					byteIndex = instrDecoder.getCurrentIndex();
+			}
 			if (instr == null) {
 				logger.error("Decoder " + instrDecoder.getClass().toString() + " for opcode " + Long.toHexString(opcode)
 						+ " returned null instruction!");
 				return null;
 			}
-			// len = instrDecoder.getCurrentIndex();
-			// byteIndex = len;
-			byteIndex = instrDecoder.getCurrentIndex();
 		} catch (Exception exp) {
 			logger.error("Error during disassembly:", exp);
 			if (logger.isInfoEnabled())
@@ -226,18 +300,6 @@ public class X86Disassembler implements Disassembler, X86Opcodes {
 		((org.jakstab.asm.x86.X86Instruction) instr).name = csin.mnemonic;
 		// ((org.jakstab.asm.x86.X86Instruction) instr).size = csin.size;
 		((org.jakstab.asm.x86.X86Instruction) instr).size = csin.size;
-		logger.warn("Size:  ==========================" + csin.size + " " + (byteIndex - instrStartIndex));
-		for (int i = 0; i < instr.getOperandCount(); i++)
-			if (instr.getOperand(i) instanceof org.jakstab.asm.Address)
-				logger.warn("Deeeerrppp one addr here: " + ((capstone.X86.OpInfo) (csin.operands)).op[i].type);
-		// logger.warn((temp.equals(instr.getName()))?"Gd":"Baaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaad");
-		for (int i = 0; i < instr.getOperandCount(); i++)
-			if (instr.getOperand(i) instanceof org.jakstab.asm.Immediate)
-				logger.warn("Deeeerrppp one Imm here---------------: "
-						+ ((capstone.X86.OpInfo) (csin.operands)).op[instr.getOperandCount() - (i + 1)].type);
-		for (int i = 0; i < instr.getOperandCount(); i++)
-			if (((capstone.X86.OpInfo) (csin.operands)).op[instr.getOperandCount() - (i + 1)].type == 2)
-				logger.warn("Deeeerrppp one more here---------------: " + instr.getOperand(i).getClass().toString());
 		return instr;
 	}
 
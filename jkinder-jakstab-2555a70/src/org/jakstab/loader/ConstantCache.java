@@ -0,0 +1,70 @@
+/*
+ * ConstantCache.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.loader;
+
+import org.jakstab.rtl.expressions.RTLNumber;
+
+/**
+ * Caches the values read from read-only sections of a module, such as jump
+ * table or vtable entries, so repeated reads of the same constant return the
+ * same number object.
+ *
+ * The cache is a direct mapped table of immutable entries. Lookups do not
+ * allocate and need no locking: a thread sees either a complete entry or an
+ * older one, in which case the value is just read from the image again.
+ */
+public final class ConstantCache {
+
+	private static final int TABLE_BITS = 12;
+
+	private static final class Entry {
+		private final long address;
+		private final int bitWidth;
+		private final RTLNumber value;
+
+		private Entry(long address, int bitWidth, RTLNumber value) {
+			this.address = address;
+			this.bitWidth = bitWidth;
+			this.value = value;
+		}
+	}
+
+	private final Entry[] table = new Entry[1 << TABLE_BITS];
+
+	/**
+	 * Returns the cached value of the given size at the given virtual address.
+	 *
+	 * @return the value, or null if it is not cached.
+	 */
+	public RTLNumber get(long address, int bitWidth) {
+		Entry e = table[index(address, bitWidth)];
+		if (e != null && e.address == address && e.bitWidth == bitWidth)
+			return e.value;
+		return null;
+	}
+
+	public void put(long address, int bitWidth, RTLNumber value) {
+		table[index(address, bitWidth)] = new Entry(address, bitWidth, value);
+	}
+
+	private static int index(long address, int bitWidth) {
+		long h = (address + bitWidth) * 0x9E3779B97F4A7C15L;
+		return (int)(h >>> (64 - TABLE_BITS));
+	}
+
+}
@@ -27,6 +27,7 @@ import org.jakstab.asm.SymbolFinder;
 import org.jakstab.disasm.Disassembler;
 import org.jakstab.rtl.expressions.RTLMemoryLocation;
 import org.jakstab.rtl.expressions.RTLNumber;
+import org.jakstab.util.BinaryFileInputBuffer;
 
 /**
  * {@code ExecutableImage} provides an interface to information about the logical structure
@@ -52,8 +53,8 @@ public interface ExecutableImage {
 	 * 
 	 * @param va a virtual address that lies within the values of {@code getMinAddress()} 
 	 * and {@code getMaxAddress()}.
-	 * @return A file pointer, which is an offset into the byte array returned by 
-	 * {@code getByteArray()}.
+	 * @return A file pointer, which is an offset into the buffer returned by 
+	 * {@code getInputBuffer()}.
 	 */
 	public long getFilePointer(AbsoluteAddress va);
 	
@@ -79,6 +80,16 @@ public interface ExecutableImage {
 	 * @return the minimal virtual address.
 	 */
 	public AbsoluteAddress getMinAddress();
+
+	/**
+	 * Returns the address ranges of this image that are backed by file contents,
+	 * indexed by section number. Each range is an array of its start address, its 
+	 * end address (exclusive), and the file pointer of its start address. Sections
+	 * that are not mapped from the file are null. 
+	 * 
+	 * @return the ranges of all sections.
+	 */
+	public long[][] getMappedSections();
 	
 	/**
 	 * Get an iterator that iterates over all bytes that can possibly be 
@@ -112,6 +123,17 @@ public interface ExecutableImage {
 	 * @return The result of the memory read as a number object of the requested bit length.
 	 */
 	public RTLNumber readMemoryLocation(RTLMemoryLocation m) throws IOException;
+
+	/**
+	 * Read a static memory location given by its virtual address. Like 
+	 * {@link #readMemoryLocation(RTLMemoryLocation)}, but does not require to create
+	 * an IL expression for the location first.
+	 * 
+	 * @param va The virtual address to read from.
+	 * @param bitWidth The number of bits to read.
+	 * @return The result of the memory read, or null if the address is outside of the image's data.
+	 */
+	public RTLNumber readMemoryLocation(AbsoluteAddress va, int bitWidth) throws IOException;
 	
 	/**
 	 * Determines whether the given address references read only memory. This is
@@ -132,11 +154,20 @@ public interface ExecutableImage {
 	
 	/**
 	 * Returns a disassembler object for this module, which can be used for disassembling individual
-	 * instructions.
+	 * instructions. The disassembler is shared and not thread-safe, so it may only be used by the
+	 * thread running the analysis.
 	 * 
 	 * @return a disassembler object, or {@code null} if no disassembler is available.
 	 */
 	public Disassembler getDisassembler();
+
+	/**
+	 * Creates a new disassembler for this module. Disassemblers keep state while
+	 * decoding, so threads disassembling in parallel each need their own.
+	 * 
+	 * @return a new disassembler object, or {@code null} if no disassembler is available.
+	 */
+	public Disassembler createDisassembler();
 	
 	/**
 	 * Returns the set of unresolved symbols referenced from this module. Used for resolving
@@ -155,9 +186,9 @@ public interface ExecutableImage {
 	public Set<ExportedSymbol> getExportedSymbols();
 	
 	/**
-	 * Returns the file contents as an array of bytes.
+	 * Returns the buffer holding the file contents.
 	 *  
-	 * @return the byte array.
+	 * @return the input buffer.
 	 */
-	public byte[] getByteArray();
+	public BinaryFileInputBuffer getInputBuffer();
 }
\ No newline at end of file
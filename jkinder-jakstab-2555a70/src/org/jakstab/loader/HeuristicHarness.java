@@ -17,18 +17,26 @@
  */
 package org.jakstab.loader;
 
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.jakstab.Options;
 import org.jakstab.Program;
 import org.jakstab.asm.AbsoluteAddress;
-import org.jakstab.loader.pe.AbstractCOFFModule;
 import org.jakstab.cfa.RTLLabel;
 import org.jakstab.rtl.expressions.ExpressionFactory;
 import org.jakstab.rtl.expressions.RTLExpression;
 import org.jakstab.rtl.expressions.RTLVariable;
 import org.jakstab.rtl.statements.*;
+import org.jakstab.util.BinaryFileInputBuffer;
+import org.jakstab.util.BytePatternMatcher;
 import org.jakstab.util.Logger;
 
 public class HeuristicHarness implements Harness {
@@ -54,24 +62,71 @@ public class HeuristicHarness implements Harness {
 		entryPoints = new LinkedList<AbsoluteAddress>();
 		
 		Program program = Program.getProgram();
+		ExecutableImage module = program.getMainModule();
+		BinaryFileInputBuffer data = module.getInputBuffer();
+		BytePatternMatcher matcher = new BytePatternMatcher(getProcedureHeads());
+		int threads = Runtime.getRuntime().availableProcessors();
 		
-		if (program.getMainModule() instanceof AbstractCOFFModule) {
-		byte[] data = ((AbstractCOFFModule)program.getMainModule()).getByteArray();
-		for (int filePtr=0; filePtr<data.length; filePtr++) {
-			patternLoop: for (int patternIdx = 0; patternIdx < procedureHeads.length; patternIdx++) {
-				for (int i = 0; i < procedureHeads[patternIdx].length; i++) {
-					if (data[filePtr + i] != procedureHeads[patternIdx][i])
-						continue patternLoop;
+		// Scan the file contents of all code sections
+		List<AbsoluteAddress> found = new ArrayList<AbsoluteAddress>();
+		for (long[] section : module.getMappedSections()) {
+			if (section == null || !module.isCodeArea(new AbsoluteAddress(section[0])))
+				continue;
+			int from = (int)section[2];
+			int to = (int)Math.min(section[2] + section[1] - section[0], data.getSize());
+			for (BytePatternMatcher.Match m : matcher.selectNonOverlapping(matcher.findAll(data, from, to, threads)))
+				found.add(new AbsoluteAddress(section[0] + m.getOffset() - section[2]));
+		}
+		Collections.sort(found);
+		for (AbsoluteAddress newEntryPoint : found) {
+			entryPoints.add(newEntryPoint);
+			logger.verbose("Found possible procedure entry at " + newEntryPoint); 
+		}
+	}
+	
+	/**
+	 * Returns the byte patterns marking procedure entries, read from the file 
+	 * given by the prologues option, or the default ones.
+	 */
+	private static List<byte[]> getProcedureHeads() {
+		List<byte[]> patterns = new ArrayList<byte[]>();
+		String fileName = Options.prologuePatterns.getValue();
+		if (fileName.length() == 0) {
+			patterns.addAll(Arrays.asList(procedureHeads));
+			return patterns;
+		}
+		BufferedReader in = null;
+		try {
+			in = new BufferedReader(new FileReader(fileName));
+			String line;
+			while ((line = in.readLine()) != null) {
+				int comment = line.indexOf('#');
+				if (comment >= 0)
+					line = line.substring(0, comment);
+				String[] tokens = line.trim().split("\\s+");
+				if (tokens.length == 0 || tokens[0].length() == 0)
+					continue;
+				byte[] pattern = new byte[tokens.length];
+				for (int i = 0; i < tokens.length; i++)
+					pattern[i] = (byte)Integer.parseInt(tokens[i], 16);
+				patterns.add(pattern);
+			}
+		} catch (IOException e) {
+			logger.fatal("Cannot read prologue patterns from " + fileName + ": " + e.getMessage());
+			throw new RuntimeException(e);
+		} catch (NumberFormatException e) {
+			logger.fatal("Invalid prologue pattern in " + fileName + ": " + e.getMessage());
+			throw new RuntimeException(e);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
 				}
-				// Pattern matched!
-				AbsoluteAddress newEntryPoint = program.getMainModule().getVirtualAddress(filePtr);
-				entryPoints.add(newEntryPoint);
-				logger.verbose("Found possible procedure entry at " + newEntryPoint); 
-				filePtr += procedureHeads[patternIdx].length;
-				break;
 			}
 		}
-		}
+		logger.info("Read " + patterns.size() + " prologue patterns from " + fileName);
+		return patterns;
 	}
 	
 	@Override
@@ -108,6 +163,10 @@ public class HeuristicHarness implements Harness {
 		
 		lastAddress = currentAddress;
 
+		// Start disassembling the detected procedures in the background
+		for (AbsoluteAddress entryPoint : entryPoints)
+			program.preDecode(entryPoint);
+
 		// epilogue with halt statement
 		seq = new StatementSequence();
 		//seq.addLast(new RTLSkip());
@@ -0,0 +1,148 @@
+/*
+ * ModuleIndex.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.loader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable index of the file-backed sections of all loaded modules,
+ * sorted by address. A lookup finds the range containing an address by
+ * binary search and returns its slot in the index, from which the module,
+ * section number, and file pointer can be read without allocating objects.
+ *
+ * If sections overlap, the section listed first by its module keeps the
+ * overlapping addresses.
+ */
+public final class ModuleIndex {
+
+	private final long[] starts;
+	private final long[] ends;
+	private final long[] filePointers;
+	private final int[] sections;
+	private final ExecutableImage[] modules;
+
+	private static final class Range {
+		private final long[] bounds;
+		private final ExecutableImage module;
+		private final int section;
+
+		private Range(long[] bounds, ExecutableImage module, int section) {
+			this.bounds = bounds;
+			this.module = module;
+			this.section = section;
+		}
+	}
+
+	public ModuleIndex(Collection<ExecutableImage> images) {
+		List<Range> ranges = new ArrayList<Range>();
+		for (ExecutableImage module : images) {
+			long[][] mapped = module.getMappedSections();
+			for (int i = 0; i < mapped.length; i++) {
+				if (mapped[i] != null && mapped[i][0] < mapped[i][1])
+					ranges.add(new Range(mapped[i], module, i));
+			}
+		}
+		Range[] sorted = ranges.toArray(new Range[ranges.size()]);
+		// Stable sort, so overlapping ranges keep their original order
+		Arrays.sort(sorted, new Comparator<Range>() {
+			@Override
+			public int compare(Range o1, Range o2) {
+				return Long.compare(o1.bounds[0], o2.bounds[0]);
+			}
+		});
+
+		long[] starts = new long[sorted.length];
+		long[] ends = new long[sorted.length];
+		long[] filePointers = new long[sorted.length];
+		int[] sections = new int[sorted.length];
+		ExecutableImage[] modules = new ExecutableImage[sorted.length];
+		int n = 0;
+		for (Range range : sorted) {
+			long[] r = range.bounds;
+			long start = r[0];
+			long fp = r[2];
+			if (n > 0 && start < ends[n - 1]) {
+				// Keep only the part after the previous range
+				if (r[1] <= ends[n - 1])
+					continue;
+				fp += ends[n - 1] - start;
+				start = ends[n - 1];
+			}
+			starts[n] = start;
+			ends[n] = r[1];
+			filePointers[n] = fp;
+			modules[n] = range.module;
+			sections[n] = range.section;
+			n++;
+		}
+		this.starts = Arrays.copyOf(starts, n);
+		this.ends = Arrays.copyOf(ends, n);
+		this.filePointers = Arrays.copyOf(filePointers, n);
+		this.sections = Arrays.copyOf(sections, n);
+		this.modules = Arrays.copyOf(modules, n);
+	}
+
+	/**
+	 * Finds the range containing the given virtual address.
+	 *
+	 * @param va a virtual address
+	 * @return the slot of the range, or -1 if no file-backed section contains the address.
+	 */
+	public int find(long va) {
+		int lo = 0;
+		int hi = starts.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (starts[mid] <= va)
+				lo = mid + 1;
+			else
+				hi = mid - 1;
+		}
+		// hi is the last range starting at or below va
+		if (hi >= 0 && va < ends[hi])
+			return hi;
+		return -1;
+	}
+
+	public ExecutableImage getModule(int slot) {
+		return modules[slot];
+	}
+
+	/**
+	 * Returns the section number of the range in the slot, as used by its module.
+	 */
+	public int getSection(int slot) {
+		return sections[slot];
+	}
+
+	/**
+	 * Returns the file pointer of an address inside the range in the slot.
+	 */
+	public long getFilePointer(int slot, long va) {
+		return filePointers[slot] + (va - starts[slot]);
+	}
+
+	public int size() {
+		return starts.length;
+	}
+
+}
@@ -46,19 +46,23 @@ public class RawModule implements ExecutableImage {
 
 	public RawModule(File file, Architecture architecture) throws IOException {
 		logger.info("Loading image as raw binary...");
-		InputStream inStream = new FileInputStream(file);
-		inBuf = new BinaryFileInputBuffer(inStream);
+		inBuf = new BinaryFileInputBuffer(file);
 		baseAddress = new AbsoluteAddress(0x0);
 	}
 
 	@Override
 	public Disassembler getDisassembler() {
 		if (disassembler == null) {
-			disassembler = new X86Disassembler(inBuf);
+			disassembler = createDisassembler();
 		}
 		return disassembler;
 	}
 
+	@Override
+	public Disassembler createDisassembler() {
+		return new X86Disassembler(inBuf);
+	}
+
 	@Override
 	public AbsoluteAddress getEntryPoint() {
 		return baseAddress;
@@ -79,6 +83,11 @@ public class RawModule implements ExecutableImage {
 		return new AbsoluteAddress(baseAddress.getValue() + inBuf.getSize());
 	}
 
+	@Override
+	public long[][] getMappedSections() {
+		return new long[][] {{baseAddress.getValue(), baseAddress.getValue() + inBuf.getSize(), 0}};
+	}
+
 	@Override
 	public AbsoluteAddress getMinAddress() {
 		return baseAddress;
@@ -115,14 +124,19 @@ public class RawModule implements ExecutableImage {
 		return null;
 	}
 
+	@Override
+	public RTLNumber readMemoryLocation(AbsoluteAddress va, int bitWidth) {
+		return null;
+	}
+
 	@Override
 	public Iterator<AbsoluteAddress> codeBytesIterator() {
 		throw new UnsupportedOperationException("Code iteration not yet implemented for " + this.getClass().getSimpleName() + "!");
 	}
 
 	@Override
-	public byte[] getByteArray() {
-		return inBuf.getByteArray();
+	public BinaryFileInputBuffer getInputBuffer() {
+		return inBuf;
 	}
 
 	@Override
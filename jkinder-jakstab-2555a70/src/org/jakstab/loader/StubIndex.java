@@ -0,0 +1,428 @@
+/*
+ * StubIndex.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.loader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+
+import org.jakstab.util.Logger;
+
+/**
+ * An index of the stub definitions in all .def files of a stub directory.
+ * The index is built once and stored in a single file in the directory, which
+ * later runs memory-map, so looking up a function does not require parsing
+ * any definition files.
+ *
+ * The index file starts with its length and a stamp listing the names,
+ * sizes, and modification times of the definition files it was built from.
+ * If the length does not match, as in a file truncated by an interrupted
+ * copy, or the stamp does not match the current definition files, the index
+ * is rebuilt. Functions
+ * are found through an open addressing hash table of record positions, keyed
+ * by the library and function name.
+ */
+final class StubIndex {
+
+	private static final Logger logger = Logger.getLogger(StubIndex.class);
+
+	private static final int MAGIC = 0x4a535458;
+	private static final int FORMAT_VERSION = 2;
+	private static final String FILE_NAME = "stubs.idx";
+	private static final String DEF_SUFFIX = ".def";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final class Record {
+		private final String library;
+		private final String name;
+		private final int callingConvention;
+		private final int stackIncrement;
+		private final boolean returns;
+
+		private Record(String library, String name, int callingConvention, int stackIncrement, boolean returns) {
+			this.library = library;
+			this.name = name;
+			this.callingConvention = callingConvention;
+			this.stackIncrement = stackIncrement;
+			this.returns = returns;
+		}
+	}
+
+	private final ByteBuffer buffer;
+	private final Set<String> libraries;
+	/** Position of the hash table in the buffer. */
+	private final int tablePosition;
+	private final int tableMask;
+
+	private StubIndex(ByteBuffer buffer, Set<String> libraries, int tablePosition, int tableSize) {
+		this.buffer = buffer;
+		this.libraries = libraries;
+		this.tablePosition = tablePosition;
+		this.tableMask = tableSize - 1;
+	}
+
+	/**
+	 * Opens the index of the given stub directory, building it if it does not
+	 * exist or does not match the definition files.
+	 */
+	static StubIndex open(File dir) {
+		File indexFile = new File(dir, FILE_NAME);
+		String stamp = stamp(dir);
+		if (indexFile.isFile()) {
+			try {
+				StubIndex index = load(indexFile, stamp);
+				if (index != null)
+					return index;
+				logger.debug("Rebuilding stale stub index " + indexFile.getName());
+			} catch (IOException e) {
+				logger.warn("Could not read stub index " + indexFile.getName() + ": " + e);
+			}
+		}
+
+		byte[] image;
+		try {
+			image = build(dir, stamp);
+		} catch (IOException e) {
+			throw new RuntimeException("Error reading definition file. " + e.getMessage());
+		}
+		store(indexFile, image);
+		try {
+			return parse(ByteBuffer.wrap(image), stamp);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param library the base name of a definition file, in lower case
+	 * @return true if there is a definition file for the library.
+	 */
+	boolean hasLibrary(String library) {
+		return libraries.contains(library);
+	}
+
+	/**
+	 * Looks up the stub definition of a function.
+	 *
+	 * @param library the base name of a definition file, in lower case
+	 * @param name the exported name of the function
+	 * @return the stub, or null if the definition file does not list the function.
+	 */
+	Win32StubLibrary.Stub lookup(String library, String name) {
+		byte[] libraryBytes = library.getBytes(UTF8);
+		byte[] nameBytes = name.getBytes(UTF8);
+		for (int slot = hash(libraryBytes, nameBytes) & tableMask; ; slot = (slot + 1) & tableMask) {
+			int pos = buffer.getInt(tablePosition + 4 * slot);
+			if (pos == 0)
+				return null;
+			// Record: calling convention, stack increment, returns flag, library, name
+			int p = pos + 9;
+			if (!matches(p, libraryBytes))
+				continue;
+			p += 2 + libraryBytes.length;
+			if (!matches(p, nameBytes))
+				continue;
+			return new Win32StubLibrary.Stub(buffer.getInt(pos), name, buffer.getInt(pos + 4), buffer.get(pos + 8) != 0);
+		}
+	}
+
+	private boolean matches(int pos, byte[] bytes) {
+		if ((buffer.getShort(pos) & 0xFFFF) != bytes.length)
+			return false;
+		for (int i = 0; i < bytes.length; i++) {
+			if (buffer.get(pos + 2 + i) != bytes[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static int hash(byte[] library, byte[] name) {
+		// FNV-1a over library and name, separated by a zero byte
+		int h = 0x811c9dc5;
+		for (byte b : library)
+			h = (h ^ (b & 0xFF)) * 0x01000193;
+		h *= 0x01000193;
+		for (byte b : name)
+			h = (h ^ (b & 0xFF)) * 0x01000193;
+		return h ^ (h >>> 16);
+	}
+
+	private static File[] defFiles(File dir) {
+		File[] files = dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File d, String name) {
+				return name.toLowerCase(Locale.ENGLISH).endsWith(DEF_SUFFIX);
+			}
+		});
+		if (files == null)
+			return new File[0];
+		Arrays.sort(files);
+		return files;
+	}
+
+	private static String libraryName(File defFile) {
+		String name = defFile.getName();
+		return name.substring(0, name.length() - DEF_SUFFIX.length()).toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Describes the current definition files, to detect changes to them.
+	 */
+	private static String stamp(File dir) {
+		StringBuilder sb = new StringBuilder();
+		for (File f : defFiles(dir))
+			sb.append(f.getName()).append(':').append(f.length()).append(':').append(f.lastModified()).append(';');
+		return sb.toString();
+	}
+
+	private static StubIndex load(File indexFile, String stamp) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			// The mapping stays valid after closing the file
+			return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), stamp);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Reads the header of an index image.
+	 *
+	 * @return the index, or null if it was built for different definition files.
+	 */
+	private static StubIndex parse(ByteBuffer buffer, String stamp) throws IOException {
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		try {
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION)
+				throw new IOException("Invalid header");
+			// Records are only read by lookups, so check that none is cut off
+			if (buffer.getInt(8) != buffer.limit())
+				throw new IOException("Truncated file");
+			int stampLength = buffer.getInt(12);
+			if (stampLength < 0 || stampLength > buffer.limit() - 16)
+				throw new IOException("Invalid header");
+			byte[] stampBytes = new byte[stampLength];
+			for (int i = 0; i < stampLength; i++)
+				stampBytes[i] = buffer.get(16 + i);
+			if (!new String(stampBytes, UTF8).equals(stamp))
+				return null;
+			int pos = 16 + stampLength;
+			int libraryCount = buffer.getInt(pos);
+			pos += 4;
+			Set<String> libraries = new HashSet<String>();
+			for (int i = 0; i < libraryCount; i++) {
+				String library = readString(buffer, pos);
+				libraries.add(library);
+				pos += 2 + (buffer.getShort(pos) & 0xFFFF);
+			}
+			int tableSize = buffer.getInt(pos);
+			pos += 4;
+			if (Integer.bitCount(tableSize) != 1 || pos + 4L * tableSize > buffer.limit())
+				throw new IOException("Invalid hash table");
+			return new StubIndex(buffer, libraries, pos, tableSize);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Truncated file");
+		}
+	}
+
+	private static String readString(ByteBuffer buffer, int pos) {
+		int length = buffer.getShort(pos) & 0xFFFF;
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = buffer.get(pos + 2 + i);
+		return new String(bytes, UTF8);
+	}
+
+	private static byte[] build(File dir, String stamp) throws IOException {
+		List<String> libraries = new ArrayList<String>();
+		List<Record> records = new ArrayList<Record>();
+		Set<String> keys = new HashSet<String>();
+		for (File defFile : defFiles(dir)) {
+			String library = libraryName(defFile);
+			if (libraries.contains(library))
+				continue;
+			libraries.add(library);
+			for (Record r : parseDefFile(defFile, library)) {
+				// The first definition of a name counts
+				if (keys.add(library + '\0' + r.name))
+					records.add(r);
+			}
+		}
+
+		int tableSize = 16;
+		while (tableSize < 2 * records.size())
+			tableSize <<= 1;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(0);
+		byte[] stampBytes = stamp.getBytes(UTF8);
+		out.writeInt(stampBytes.length);
+		out.write(stampBytes);
+		out.writeInt(libraries.size());
+		for (String library : libraries)
+			writeString(out, library);
+		out.writeInt(tableSize);
+		int tablePosition = out.size();
+		int[] table = new int[tableSize];
+		for (int i = 0; i < tableSize; i++)
+			out.writeInt(0);
+		for (Record r : records) {
+			byte[] libraryBytes = r.library.getBytes(UTF8);
+			byte[] nameBytes = r.name.getBytes(UTF8);
+			int slot = hash(libraryBytes, nameBytes) & (tableSize - 1);
+			while (table[slot] != 0)
+				slot = (slot + 1) & (tableSize - 1);
+			table[slot] = out.size();
+			out.writeInt(r.callingConvention);
+			out.writeInt(r.stackIncrement);
+			out.writeByte(r.returns ? 1 : 0);
+			writeString(out, r.library);
+			writeString(out, r.name);
+		}
+		out.close();
+
+		ByteBuffer image = ByteBuffer.wrap(bytes.toByteArray());
+		image.putInt(8, image.limit());
+		for (int i = 0; i < tableSize; i++)
+			image.putInt(tablePosition + 4 * i, table[i]);
+		logger.debug("Built stub index with " + records.size() + " functions from " + libraries.size() + " definition files.");
+		return image.array();
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(UTF8);
+		if (bytes.length > 0xFFFF)
+			throw new IOException("String too long: " + s.substring(0, 32) + "...");
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Writes the index image to the index file. Failures are only logged, as
+	 * the index can be rebuilt in every run.
+	 */
+	private static void store(File indexFile, byte[] image) {
+		File tmpFile = null;
+		OutputStream out = null;
+		try {
+			tmpFile = File.createTempFile(FILE_NAME, ".tmp", indexFile.getParentFile());
+			out = new FileOutputStream(tmpFile);
+			out.write(image);
+			out.close();
+			out = null;
+			if (!tmpFile.renameTo(indexFile)) {
+				// Windows does not replace existing files when renaming
+				indexFile.delete();
+				if (!tmpFile.renameTo(indexFile))
+					throw new IOException("Cannot rename " + tmpFile.getName());
+			}
+			logger.debug("Wrote stub index " + indexFile.getName());
+		} catch (IOException e) {
+			logger.warn("Could not write stub index " + indexFile.getName() + ": " + e);
+			if (tmpFile != null)
+				tmpFile.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+				tmpFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Parses the exported functions of a definition file.
+	 */
+	private static List<Record> parseDefFile(File defFile, String library) throws IOException {
+		List<Record> records = new ArrayList<Record>();
+		BufferedReader in = new BufferedReader(new FileReader(defFile));
+		try {
+			boolean inExports = false;
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+
+				// Skip empty lines
+				if (line.length() == 0)
+					continue;
+
+				// ignore comments and preprocessor directives
+				if (line.startsWith(";") || line.startsWith("#")) continue;
+				if (line.startsWith("EXPORTS")) {
+					inExports = true;
+					continue;
+				}
+				if (!inExports) continue;
+				// parse exported function:
+
+				int callingConvention = StubProvider.STDCALL;
+				boolean returns = true;
+				int stackIncrement = 0;
+
+				int i = line.length();
+				if (line.length() > 4 && line.substring(i - 4, i).equals("DATA")) {
+					callingConvention = StubProvider.EXTERNAL_VARIABLE;
+					i -= 4;
+					while (i >= 1 && line.charAt(i - 1) == ' ')
+						i--;
+				}
+				int finalAt = line.lastIndexOf('@');
+				if (finalAt >= 0 && finalAt < i - 1) {
+					try {
+						stackIncrement = Integer.parseInt(line.substring(finalAt + 1, i));
+						i = finalAt;
+					} catch (NumberFormatException e) {
+						// Failed to parse, the last @ is still within the function name, so leave i at where it is
+					}
+				}
+
+				// Parse prefixes
+				int start = 0;
+				prefixParse: for (; start <= i; start++) {
+					char c = line.charAt(start);
+					switch (c) {
+					case '@':
+						callingConvention = StubProvider.FASTCALL;
+						break;
+					case '!':
+						returns = false;
+						break;
+					default:
+						break prefixParse;
+					}
+				}
+
+				String name = line.substring(start, i);
+				records.add(new Record(library, name, callingConvention, stackIncrement, returns));
+			}
+		} finally {
+			in.close();
+		}
+		return records;
+	}
+
+}
@@ -18,6 +18,7 @@
 package org.jakstab.loader;
 
 import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.util.BinaryFileInputBuffer;
 import org.jakstab.util.Logger;
 
 public class UnresolvedSymbol {
@@ -46,7 +47,7 @@ public class UnresolvedSymbol {
 	}	
 
 	public void resolve(AbsoluteAddress virtualAddress) {
-		byte[] data = module.getByteArray();
+		BinaryFileInputBuffer data = module.getInputBuffer();
 		long address = Integer.MIN_VALUE;
 		if (addressingType == AddressingType.ABSOLUTE) {
 			address = virtualAddress.getValue();
@@ -54,12 +55,12 @@ public class UnresolvedSymbol {
 			// offset = absolute address - PC value (PC holds address of _next_ instruction, which is 4 bytes (address size) from file pointer)
 			address = virtualAddress.getValue() - module.getVirtualAddress(fp + 4).getValue();
 		}
-		logger.debug("Patching bytes at VA " + module.getVirtualAddress(fp) + ", offset 0x" + Integer.toHexString(fp) + " in byte array, " +
-				"which were " + Integer.toHexString(data[fp]) + " " + Integer.toHexString(data[fp+1]) + " " + Integer.toHexString(data[fp+2]) + " " + Integer.toHexString(data[fp+3])); 
-		data[fp]     = (byte)( address        & 0xFFL);  
-		data[fp + 1] = (byte)((address >>  8) & 0xFFL);  
-		data[fp + 2] = (byte)((address >> 16) & 0xFFL);  
-		data[fp + 3] = (byte)((address >> 24) & 0xFFL);
+		logger.debug("Patching bytes at VA " + module.getVirtualAddress(fp) + ", offset 0x" + Integer.toHexString(fp) + " in input buffer, " +
+				"which were " + Integer.toHexString(data.getByteAt(fp)) + " " + Integer.toHexString(data.getByteAt(fp+1)) + " " + Integer.toHexString(data.getByteAt(fp+2)) + " " + Integer.toHexString(data.getByteAt(fp+3))); 
+		data.putByteAt(fp,     (byte)( address        & 0xFFL));  
+		data.putByteAt(fp + 1, (byte)((address >>  8) & 0xFFL));  
+		data.putByteAt(fp + 2, (byte)((address >> 16) & 0xFFL));  
+		data.putByteAt(fp + 3, (byte)((address >> 24) & 0xFFL));
 	}
 
 	public String getName() {
@@ -18,8 +18,9 @@
 
 package org.jakstab.loader;
 
-import java.io.*;
+import java.io.File;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -102,130 +103,50 @@ public class Win32StubLibrary implements StubProvider {
 	}
 
 	private Architecture arch;
-	private final Map<String,Map<String,Stub>> stubMap;
+	private StubIndex stubIndex;
 	private Map<String,Map<String,AbsoluteAddress>> activeStubs;
 	private Map<AbsoluteAddress,String> addressMap;
 	private int impId;
-	private Set<String> loadedDefFiles = new FastSet<String>();
+	private Set<String> missingDefFiles = new FastSet<String>();
 	private RTLExpression arg0;
 	private RTLExpression arg1;
 	private SymbolFinder symFinder;
 	
-	private final void registerStub(String library, int callingConvention, String name, int stackIncrement, boolean returns) {
-		Map<String, Stub> exportMap = stubMap.get(library);
-		if (exportMap == null) {
-			exportMap = new HashMap<String, Stub>();
-			stubMap.put(library, exportMap);
-		}
-		if (!exportMap.containsKey(name))
-			exportMap.put(name, new Stub(callingConvention, name, stackIncrement, returns));
-	}
-	
 	public Win32StubLibrary(Architecture arch) {
 		this.arch = arch;
 		activeStubs = new HashMap<String, Map<String, AbsoluteAddress>>();
-		stubMap = new HashMap<String, Map<String,Stub>>();
 		addressMap = new HashMap<AbsoluteAddress, String>();
 		impId = 0;
 		arg0 = ExpressionFactory.createMemoryLocation(ExpressionFactory.createPlus(arch.stackPointer(), ExpressionFactory.createNumber(4, 32)), 32);
 		arg1 = ExpressionFactory.createMemoryLocation(ExpressionFactory.createPlus(arch.stackPointer(), ExpressionFactory.createNumber(8, 32)), 32);
 	}
 	
-	private void loadDefFile(String library) {
-
-		// Add to loaded files even if we fail to load it to avoid multiple warnings
-		loadedDefFiles.add(library);
+	/**
+	 * Looks up the definition of a function in the def file of its library.
+	 * 
+	 * @return the stub definition, or null if the function or the def file do not exist.
+	 */
+	private Stub lookupStub(String library, String function) {
 		String baseName;
 		int dotIndex = library.lastIndexOf('.');
 		if (dotIndex > 0) 
 			baseName = library.substring(0, dotIndex);
 		else 
 			baseName = library;
-		File defFile = new File(stubDir + baseName + ".def");
-
-		if (!defFile.canRead()) {
-			logger.error("Cannot find definition file " + defFile.getAbsolutePath() + "!");
-			return;
-		}
-		
-		BufferedReader in = null;
-		try {
-			in = new BufferedReader(new FileReader(defFile));
-			boolean inExports = false; 
-			String line;
-			while ((line = in.readLine()) != null) {
-				line = line.trim();
-
-				// Skip empty lines
-				if (line.length() == 0)
-					continue;
-
-				// ignore comments and preprocessor directives
-				if (line.startsWith(";") || line.startsWith("#")) continue;
-				if (line.startsWith("EXPORTS")) {
-					inExports = true;
-					continue;
-				}
-				if (!inExports) continue;
-				// parse exported function:
-
-				int callingConvention = STDCALL;
-				boolean returns = true;
-				int stackIncrement = 0;
-
-				int i = line.length();
-				if (line.length() > 4 && line.substring(i - 4, i).equals("DATA")) {
-					callingConvention = EXTERNAL_VARIABLE;
-					i -= 4;
-					while (i >= 1 && line.charAt(i - 1) == ' ')
-						i--;
-				}
-				int finalAt = line.lastIndexOf('@');
-				if (finalAt >= 0 && finalAt < i - 1) {
-					try {
-						stackIncrement = Integer.parseInt(line.substring(finalAt + 1, i));
-						i = finalAt;
-					} catch (NumberFormatException e) {
-						// Failed to parse, the last @ is still within the function name, so leave i at where it is							
-					}
-				}
-
-				// Parse prefixes
-				int start = 0;
-				prefixParse: for (; start <= i; start++) {
-					char c = line.charAt(start);
-					switch (c) {
-					case '@':
-						callingConvention = FASTCALL;
-						break;
-					case '!':
-						returns = false;
-						break;
-					default:
-						break prefixParse; 
-					}
-				}
-
-				String name = line.substring(start, i);
-
-				//logger.debug("Registering " + name.toString() + "@" + library + " " + callingConvention + " " + stackIncrement + " " + returns);
-				registerStub(library, callingConvention, name, stackIncrement, returns);
+		baseName = baseName.toLowerCase(Locale.ENGLISH);
 
-			} /* end file reading while */
+		if (stubIndex == null)
+			stubIndex = StubIndex.open(new File(stubDir));
 
-		} catch (IOException e) {
-			throw new RuntimeException("Error reading definition file. " + e.getMessage());
-		} finally {
-			if (in != null) try {
-				in.close();
-			} catch (Exception e) {}
+		if (!stubIndex.hasLibrary(baseName)) {
+			// Only warn once per library
+			if (missingDefFiles.add(library))
+				logger.error("Cannot find definition file " + new File(stubDir + baseName + ".def").getAbsolutePath() + "!");
+			return null;
 		}
-
-
+		return stubIndex.lookup(baseName, function);
 	}
 
-	
-
 	private AbsoluteAddress createStubInstance(String library, String function) {
 		int callingConvention = CDECL;
 		int stackIncrement = 0;
@@ -269,13 +190,8 @@ public class Win32StubLibrary implements StubProvider {
 
 
 
-			if (!loadedDefFiles.contains(library)) {
-				// search for def file
-				loadDefFile(library);
-			}
-
-			if (stubMap.containsKey(library) && stubMap.get(library).containsKey(function)) {
-				Stub stub = stubMap.get(library).get(function);
+			Stub stub = lookupStub(library, function);
+			if (stub != null) {
 				callingConvention = stub.callingConvention;
 				returns = stub.returns;
 				stackIncrement = stub.stackIncrement;
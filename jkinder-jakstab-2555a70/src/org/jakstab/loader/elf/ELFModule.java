@@ -18,7 +18,6 @@
 package org.jakstab.loader.elf;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.*;
 
@@ -50,6 +49,7 @@ public class ELFModule implements ExecutableImage {
 
 	private Elf elf;
 	private BinaryFileInputBuffer inBuf;
+	private final ConstantCache constants = new ConstantCache();
 	private Disassembler disassembler;
 	private long pltStart;
 	private long pltSize;
@@ -61,9 +61,9 @@ public class ELFModule implements ExecutableImage {
 
 	public ELFModule(File moduleFile, Architecture architecture) throws IOException, BinaryParseException {
 		
-		inBuf = new BinaryFileInputBuffer(new FileInputStream(moduleFile));
-		byte[] data = inBuf.getByteArray();
-		elf = new Elf(moduleFile.getAbsolutePath());
+		inBuf = new BinaryFileInputBuffer(moduleFile);
+		// Parse the headers from the same mapping instead of opening the file again
+		elf = new Elf(moduleFile.getAbsolutePath(), inBuf.getByteBuffer());
 		elf.loadSymbols();
 		
 		requiredLibraries = new FastSet<String>();
@@ -128,7 +128,7 @@ public class ELFModule implements ExecutableImage {
 		pltIdx += instr.getSize();
 
 		while (true) {
-			if (data[pltIdx] == 0) {
+			if (inBuf.getByteAt(pltIdx) == 0) {
 				pltIdx++;
 			} else {
 				instr = disasm.decodeInstruction(pltIdx);
@@ -183,7 +183,7 @@ public class ELFModule implements ExecutableImage {
 			// And now pltIdx points to the next PLT entry
 
 			// Check if there are more plt entries.
-			if (data[pltIdx] == 0) {
+			if (inBuf.getByteAt(pltIdx) == 0) {
 				break;
 			}
 			instr = disasm.decodeInstruction(pltIdx);
@@ -208,11 +208,16 @@ public class ELFModule implements ExecutableImage {
 	@Override
 	public Disassembler getDisassembler() {
 		if (disassembler == null) {
-			disassembler = new X86Disassembler(inBuf);
+			disassembler = createDisassembler();
 		}
 		return disassembler;
 	}
 
+	@Override
+	public Disassembler createDisassembler() {
+		return new X86Disassembler(inBuf);
+	}
+
 	/*
 	 * @see org.jakstab.loader.ExecutableImage#getEntryPoint()
 	 */
@@ -328,9 +333,30 @@ public class ELFModule implements ExecutableImage {
 		return symbolMap;
 	}
 
+	@Override
+	public long[][] getMappedSections() {
+		long[][] ranges = new long[elf.sections.length][];
+		for (int i = 0; i < ranges.length; i++) {
+			Elf.Section section = elf.sections[i];
+			if ((section.sh_flags & Elf.Section.SHF_ALLOC) == 0 || section.sh_type == Elf.Section.SHT_NOBITS)
+				continue;
+			long start = section.sh_addr.getValue().longValue();
+			ranges[i] = new long[] {start, start + section.sh_size, section.sh_offset};
+		}
+		return ranges;
+	}
+
 	@Override
 	public boolean isReadOnly(AbsoluteAddress a) {
-		// TODO: Implement
+		long va = a.getValue();
+		for (Elf.Section section : elf.sections) {
+			if ((section.sh_flags & Elf.Section.SHF_ALLOC) != 0 &&
+					va >= section.sh_addr.getValue().longValue() && 
+					va < section.sh_addr.getValue().longValue() + section.sh_size) {
+				return (section.sh_flags & Elf.Section.SHF_WRITE) == 0 && 
+						section.sh_type != Elf.Section.SHT_NOBITS;
+			}
+		}
 		return false;
 	}
 
@@ -339,27 +365,27 @@ public class ELFModule implements ExecutableImage {
 		
 		if (!(m.getAddress() instanceof RTLNumber)) return null;
 		
-		AbsoluteAddress va = new AbsoluteAddress((RTLNumber)m.getAddress());
+		return readMemoryLocation(new AbsoluteAddress((RTLNumber)m.getAddress()), m.getBitWidth());
+	}
+
+	@Override
+	public RTLNumber readMemoryLocation(AbsoluteAddress va, int bitWidth) throws IOException {
+		RTLNumber cached = constants.get(va.getValue(), bitWidth);
+		if (cached != null)
+			return cached;
 
 		long fp = getFilePointer(va);
 		if (fp > 0) {
-			assert m.getBitWidth() % 8 == 0 : "Non-byte-aligned memory reference!";
-			long val = 0;
-			int bytes = m.getBitWidth()/8;
-			
-			inBuf.seek(fp);
-			// OR together the least significant bytes 
-			for (int i=0; i<bytes - 1; i++) {
-				val = val | ((long)inBuf.readBYTE()) << (i*8);
-			}
-			// do not mask the MSB with 0xFF, so we get sign extension for free
-			val = val | (((long)inBuf.readINT8()) << (bytes - 1) * 8);
-			//logger.debug("Read constant value " + val + " from address " + m + " (file offset: " + Long.toHexString(fp) + ") in image.");
-			return ExpressionFactory.createNumber(val, m.getBitWidth());
-
+			assert bitWidth % 8 == 0 : "Non-byte-aligned memory reference!";
+			long val = inBuf.getINTAt((int)fp, bitWidth / 8);
+			//logger.debug("Read constant value " + val + " from address " + va + " (file offset: " + Long.toHexString(fp) + ") in image.");
+			RTLNumber value = ExpressionFactory.createNumber(val, bitWidth);
+			if (isReadOnly(va))
+				constants.put(va.getValue(), bitWidth, value);
+			return value;
 		} 
 
-		logger.debug("No value can be read from image for address " + m);
+		logger.debug("No value can be read from image for address " + va);
 		return null;
 	}
 	
@@ -429,8 +455,8 @@ public class ELFModule implements ExecutableImage {
 
 
 	@Override
-	public byte[] getByteArray() {
-		return inBuf.getByteArray();
+	public BinaryFileInputBuffer getInputBuffer() {
+		return inBuf;
 	}
 
 	@Override
@@ -15,55 +15,105 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
-public class ERandomAccessFile extends RandomAccessFile {
+/**
+ * Reads ELF files with selectable endianness. Reads are served from a buffer
+ * holding the file contents, usually a memory mapping of the file, instead of
+ * reading the file one byte per call.
+ */
+public class ERandomAccessFile {
 	private boolean isle;
     private long    ptr_offset;
-    int val[] = new int[4];
+    private ByteBuffer buffer;
+    private long    pos;
 		
 	public ERandomAccessFile(String file, String mode) throws IOException {
-		super(file, mode);
+		this(new File(file), mode);
 	}
 
 	public ERandomAccessFile(File file, String mode) throws IOException {
-		super(file, mode);
+		RandomAccessFile raf = new RandomAccessFile(file, mode);
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("File too large: " + file.getName());
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+	}
+
+	public ERandomAccessFile(ByteBuffer buffer) {
+		this.buffer = buffer;
 	}
 
 	public void setEndian(boolean le)
 	{
 		isle = le;
 	}
+
+	public int read() throws IOException {
+		if (pos >= buffer.limit())
+			return -1;
+		return buffer.get((int)pos++) & 0xFF;
+	}
+
+	public int read(byte[] b) throws IOException {
+		if (pos >= buffer.limit())
+			return -1;
+		int len = (int)Math.min(b.length, buffer.limit() - pos);
+		ByteBuffer view = buffer.duplicate();
+		view.position((int)pos);
+		view.get(b, 0, len);
+		pos += len;
+		return len;
+	}
+
+	public final void readFully(byte[] b) throws IOException {
+		if (pos + b.length > buffer.limit())
+			throw new EOFException();
+		read(b);
+	}
+
+	public final byte readByte() throws IOException {
+		int b = read();
+		if (b < 0)
+			throw new EOFException();
+		return (byte)b;
+	}
 	
 	public final short readShortE() throws IOException {
-		val[0] = read();
-		val[1] = read();
-		if ((val[0] | val[1]) < 0)
+		int val0 = read();
+		int val1 = read();
+		if ((val0 | val1) < 0)
 		    throw new EOFException();
    		if ( isle ) {
-	 		return (short)((val[1] << 8) + val[0]);
+	 		return (short)((val1 << 8) + val0);
 		}
-		return (short)((val[0] << 8) + val[1]);
+		return (short)((val0 << 8) + val1);
 	}
 	
 	public final long readIntE() throws IOException
 	{
-		val[0] = read();
-		val[1] = read();
-		val[2] = read();
-		val[3] = read();
-		if ((val[0] | val[1] | val[2] | val[3]) < 0)
+		int val0 = read();
+		int val1 = read();
+		int val2 = read();
+		int val3 = read();
+		if ((val0 | val1 | val2 | val3) < 0)
 		    throw new EOFException();
 		if ( isle ) {
-			return ((val[3] << 24) + (val[2] << 16) + (val[1] << 8) + val[0]);
+			return ((val3 << 24) + (val2 << 16) + (val1 << 8) + val0);
 		}
-		return ((val[0] << 24) + (val[1] << 16) + (val[2] << 8) + val[3]);
+		return ((val0 << 24) + (val1 << 16) + (val2 << 8) + val3);
 	}
 
 	public final long readLongE() throws IOException
 	{
 		byte [] bytes = new byte[8];
 		long result = 0;
-		super.readFully(bytes);
+		readFully(bytes);
 		int shift = 0;		
 		if ( isle ) 
 			for(int i=7; i >= 0; i-- )
@@ -82,7 +132,7 @@ public class ERandomAccessFile extends RandomAccessFile {
 	
 	public final void readFullyE(byte [] bytes) throws IOException
 	{
-		super.readFully(bytes);
+		readFully(bytes);
 		byte tmp = 0;
 		if( isle )
 			for(int i=0; i < (bytes.length / 2); i++)
@@ -95,21 +145,24 @@ public class ERandomAccessFile extends RandomAccessFile {
 
     public void setFileOffset( long offset ) throws IOException {
         ptr_offset = offset;
-        super.seek( offset );
+        pos = offset;
     }
 
-    @Override
 	public long getFilePointer() throws IOException {
-        long ptr = super.getFilePointer();
-        ptr = ptr - ptr_offset;
-        return ptr;
+        return pos - ptr_offset;
     }
 
-    @Override
 	public void seek( long pos ) throws IOException {
-        long real_pos = pos + ptr_offset;
-        super.seek( real_pos );
+		if (pos + ptr_offset < 0)
+			throw new IOException("Negative seek offset");
+        this.pos = pos + ptr_offset;
     }
-}
 
+	public long length() throws IOException {
+		return buffer.limit();
+	}
 
+	public void close() throws IOException {
+		buffer = null;
+	}
+}
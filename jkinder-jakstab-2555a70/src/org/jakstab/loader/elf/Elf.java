@@ -12,6 +12,7 @@
 package org.jakstab.loader.elf;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -731,6 +732,23 @@ public class Elf {
 		commonSetup(file, 0);
 	}
 
+	/**
+	 * Parses the ELF file from the given buffer holding its contents.
+	 */
+	public Elf(String file, ByteBuffer image) throws BinaryParseException {
+		try {
+			efile = new ERandomAccessFile(image);
+			ehdr = new ELFhdr();
+			this.file = file;
+		} catch (IOException e) {
+			throw new BinaryParseException("IOException: " + e.getMessage());
+		} finally {
+			if (ehdr == null) {
+				dispose();
+			}
+		}
+	}
+
 	public ELFhdr getELFhdr() throws IOException {
 		return ehdr;
 	}
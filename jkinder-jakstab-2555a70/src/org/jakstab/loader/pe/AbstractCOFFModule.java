@@ -23,6 +23,7 @@ import java.util.Iterator;
 import org.jakstab.asm.AbsoluteAddress;
 import org.jakstab.disasm.Disassembler;
 import org.jakstab.disasm.x86.X86Disassembler;
+import org.jakstab.loader.ConstantCache;
 import org.jakstab.loader.ExecutableImage;
 import org.jakstab.rtl.expressions.ExpressionFactory;
 import org.jakstab.rtl.expressions.RTLMemoryLocation;
@@ -41,6 +42,7 @@ public abstract class AbstractCOFFModule implements ExecutableImage {
 	private static final Logger logger = Logger.getLogger(AbstractCOFFModule.class);
 	
 	protected BinaryFileInputBuffer inBuf;
+	private final ConstantCache constants = new ConstantCache();
 	protected COFF_Header coff_header;
 	protected SectionHeader[] section_headers;
 	protected Disassembler disassembler;
@@ -159,28 +161,30 @@ public abstract class AbstractCOFFModule implements ExecutableImage {
 	@Override
 	public RTLNumber readMemoryLocation(RTLMemoryLocation m) throws IOException {
 		if (!(m.getAddress() instanceof RTLNumber)) return null;
-		AbsoluteAddress va = new AbsoluteAddress((RTLNumber)m.getAddress());
+		return readMemoryLocation(new AbsoluteAddress((RTLNumber)m.getAddress()), m.getBitWidth());
+	}
+
+	@Override
+	public RTLNumber readMemoryLocation(AbsoluteAddress va, int bitWidth) throws IOException {
+		RTLNumber cached = constants.get(va.getValue(), bitWidth);
+		if (cached != null)
+			return cached;
 		long fp = getFilePointer(va);
 		if (getSectionNumber(fp) >= 0) {
-			assert m.getBitWidth() % 8 == 0 : "Non-byte-aligned memory reference!";
-			long val = 0;
-			int bytes = m.getBitWidth()/8;
-			// OR together the least significant bytes 
-			inBuf.seek(fp);
-			for (int i=0; i<bytes - 1; i++) {
-				val = val | ((long)inBuf.readBYTE()) << (i*8);
-			}
-			// do not mask the MSB with 0xFF, so we get sign extension for free
-			val = val | (((long)inBuf.readINT8()) << (bytes - 1) * 8);
-			//logger.debug("Read constant value " + val + " from address " + m + " (file offset: " + Long.toHexString(fp) + ") in image.");
-			return ExpressionFactory.createNumber(val, m.getBitWidth());
+			assert bitWidth % 8 == 0 : "Non-byte-aligned memory reference!";
+			long val = inBuf.getINTAt((int)fp, bitWidth / 8);
+			//logger.debug("Read constant value " + val + " from address " + va + " (file offset: " + Long.toHexString(fp) + ") in image.");
+			RTLNumber value = ExpressionFactory.createNumber(val, bitWidth);
+			if (isReadOnly(va))
+				constants.put(va.getValue(), bitWidth, value);
+			return value;
 		}
-		logger.debug("No value can be read from image for address " + m);
+		logger.debug("No value can be read from image for address " + va);
 		return null;
 	}
 	
-	public byte[] getByteArray() {
-		return inBuf.getByteArray();
+	public BinaryFileInputBuffer getInputBuffer() {
+		return inBuf;
 	}
 	
 	@Override
@@ -244,11 +248,16 @@ public abstract class AbstractCOFFModule implements ExecutableImage {
 	@Override
 	public Disassembler getDisassembler() {
 		if (disassembler == null) {
-			disassembler = new X86Disassembler(inBuf);
+			disassembler = createDisassembler();
 		}
 		return disassembler;
 	}
 
+	@Override
+	public Disassembler createDisassembler() {
+		return new X86Disassembler(inBuf);
+	}
+
 	@Override
 	public boolean isImportArea(AbsoluteAddress va) {
 		int section = getSectionNumber(va);
@@ -53,14 +53,17 @@ public class ObjectFile extends AbstractCOFFModule {
 	
 	
 	public ObjectFile(File peFile, Architecture arch) throws java.io.IOException, BinaryParseException {
-		this(new FileInputStream(peFile), arch);
+		this(new BinaryFileInputBuffer(peFile), arch);
 	}
 
-	
 	public ObjectFile(InputStream inStream, Architecture arch) throws java.io.IOException, BinaryParseException {
+		this(new BinaryFileInputBuffer(inStream), arch);
+	}
+
+	private ObjectFile(BinaryFileInputBuffer inBuf, Architecture arch) throws java.io.IOException, BinaryParseException {
 
 		imageBase = 0x1000;
-		inBuf = new BinaryFileInputBuffer(inStream);
+		this.inBuf = inBuf;
 
 		coff_header = new COFF_Header(inBuf);
 		logger.debug("Reading " + coff_header.getNumberOfSections() + " sections.");
@@ -194,6 +197,19 @@ public class ObjectFile extends AbstractCOFFModule {
 		return entryPoint;
 	}
 
+	@Override
+	public long[][] getMappedSections() {
+		long[][] ranges = new long[getNumberOfSections()][];
+		for (int i = 0; i < ranges.length; i++) {
+			SectionHeader sh = getSectionHeader(i);
+			if (sh.isDiscardable() || sh.isRemovedByLinker())
+				continue;
+			long start = getBaseAddress() + sh.VirtualAddress;
+			ranges[i] = new long[] {start, start + Math.min(sh.VirtualSize, sh.SizeOfRawData), sh.PointerToRawData};
+		}
+		return ranges;
+	}
+
 	/*
 	 * @see org.jakstab.loader.ExecutableImage#isReadOnly(org.jakstab.asm.AbsoluteAddress)
 	 */
@@ -55,10 +55,9 @@ public class PEModule extends AbstractCOFFModule {
 	 */
 	public PEModule(File peFile, Architecture arch) throws IOException, BinaryParseException {
 
-		InputStream inStream = new FileInputStream(peFile);
 		fileName = peFile.getName();
 		
-		inBuf = new BinaryFileInputBuffer(inStream);
+		inBuf = new BinaryFileInputBuffer(peFile);
 
 		msdos_stub = new MSDOS_Stub(inBuf);
 
@@ -217,6 +216,17 @@ public class PEModule extends AbstractCOFFModule {
 		return new AbsoluteAddress(getBaseAddress() + pe_header.getAddressOfEntryPoint());
 	}
 
+	@Override
+	public long[][] getMappedSections() {
+		long[][] ranges = new long[getNumberOfSections()][];
+		for (int i = 0; i < ranges.length; i++) {
+			SectionHeader sh = getSectionHeader(i);
+			long start = getBaseAddress() + sh.VirtualAddress;
+			ranges[i] = new long[] {start, start + sh.SizeOfRawData, sh.PointerToRawData};
+		}
+		return ranges;
+	}
+
 	@Override
 	public boolean isReadOnly(AbsoluteAddress a) {
 		int section = getSectionNumber(a);
@@ -17,6 +17,8 @@
  */
 package org.jakstab.rtl.expressions;
 
+import java.io.Serializable;
+
 import org.jakstab.rtl.TypeInferenceException;
 import org.jakstab.ssl.Architecture;
 import org.jakstab.util.Logger;
@@ -26,12 +28,21 @@ import org.jakstab.util.Logger;
  * 
  * @author Johannes Kinder
  */
-public abstract class AbstractRTLExpression implements RTLExpression {
+public abstract class AbstractRTLExpression implements RTLExpression, Serializable {
+
+	private static final long serialVersionUID = 125167277292620910L;
 	
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(AbstractRTLExpression.class);
 
-	protected SetOfVariables usedVariables = null;
+	protected transient SetOfVariables usedVariables = null;
+	
+	/**
+	 * Set if this expression is the canonical instance in the intern table 
+	 * of the ExpressionFactory. Two distinct interned expressions are never
+	 * equal.
+	 */
+	transient boolean interned = false;
 
 	@Override
 	public RTLExpression inferBitWidth(Architecture arch, int expectedBitWidth)
@@ -18,6 +18,7 @@
 
 package org.jakstab.rtl.expressions;
 
+import java.lang.ref.WeakReference;
 import java.util.*;
 
 import org.jakstab.util.Logger;
@@ -57,12 +58,19 @@ public final class ExpressionFactory {
 	private static final SetMultimap<RTLVariable, RTLVariable> coveredRegs;
 	private static final SetMultimap<RTLVariable, RTLVariable> coveredBy;
 	
+	// Canonical instances of numbers, operations, and memory locations. Keys 
+	// are weak and values are weak references to the keys, so instances that 
+	// are no longer used elsewhere are removed from the table.
+	private static final Map<RTLExpression, WeakReference<RTLExpression>> internTable = 
+		new WeakHashMap<RTLExpression, WeakReference<RTLExpression>>();
+	private static volatile boolean interning = false;
+	
 	static {
 		uniqueVariableCount = 0;
 		variableInstances = new HashMap<String, RTLVariable>(DEFAULT_VARIABLE_COUNT);
 		variableArray = new ArrayList<RTLVariable>(DEFAULT_VARIABLE_COUNT);
 		nondetArray = new RTLNondet[128];
-		sharedRegisterMap = new HashMap<RTLVariable, RTLBitRange>();
+		sharedRegisterMap = new LinkedHashMap<RTLVariable, RTLBitRange>();
 		coveredRegs = HashMultimap.create();
 		coveredBy = HashMultimap.create();
 	
@@ -74,6 +82,46 @@ public final class ExpressionFactory {
 	private ExpressionFactory() {
 	}
 	
+	/**
+	 * Enables or disables hash-consing of numbers, operations, and memory 
+	 * locations. While enabled, structurally equal expressions created by 
+	 * this factory are the same instance, so equals() on them reduces to a
+	 * reference comparison.
+	 */
+	public static void setInterning(boolean enabled) {
+		interning = enabled;
+	}
+	
+	public static boolean isInterning() {
+		return interning;
+	}
+	
+	/**
+	 * @return the number of canonical expressions currently in the intern table.
+	 */
+	public static int getInternedExpressionCount() {
+		synchronized (internTable) {
+			return internTable.size();
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T extends AbstractRTLExpression> T intern(T e) {
+		if (!interning) 
+			return e;
+		synchronized (internTable) {
+			WeakReference<RTLExpression> ref = internTable.get(e);
+			if (ref != null) {
+				RTLExpression canonical = ref.get();
+				if (canonical != null)
+					return (T)canonical;
+			}
+			e.interned = true;
+			internTable.put(e, new WeakReference<RTLExpression>(e));
+			return e;
+		}
+	}
+	
 	public static RTLBitRange createBitRange(RTLExpression operand,
 			RTLExpression firstBit, RTLExpression lastBit) {
 		return new RTLBitRange(operand, firstBit, lastBit);
@@ -111,7 +159,7 @@ public final class ExpressionFactory {
 
 	public static RTLMemoryLocation createMemoryLocation(int memoryState, RTLExpression segmentRegister, RTLExpression address, int bitWidth) {
 		assert bitWidth > 0 : "Trying to create memory location of unknown width with address " + address + "!";
-		return new RTLMemoryLocation(memoryState, segmentRegister, address, bitWidth);
+		return intern(new RTLMemoryLocation(memoryState, segmentRegister, address, bitWidth));
 	}
 
 	public static RTLNumber createNumber(Number value) {
@@ -120,7 +168,7 @@ public final class ExpressionFactory {
 		else if (value instanceof Integer) bitWidth = 32;
 		else if (value instanceof Short) bitWidth = 16;
 		else if (value instanceof Byte) bitWidth = 8;
-		return new RTLNumber(value.longValue(), bitWidth);
+		return intern(new RTLNumber(value.longValue(), bitWidth));
 	}
 
 	public static RTLNumber createNumber(long value, int bitWidth) {
@@ -128,11 +176,11 @@ public final class ExpressionFactory {
 			if (value == 0) return FALSE;
 			else return TRUE;
 		}
-		return new RTLNumber(value, bitWidth);
+		return intern(new RTLNumber(value, bitWidth));
 	}
 	
 	public static RTLNumber createNumber(AbsoluteAddress addr) {
-		return new RTLNumber(addr.getValue(), addr.getBitWidth());
+		return intern(new RTLNumber(addr.getValue(), addr.getBitWidth()));
 	}
 
 	/**
@@ -353,6 +401,9 @@ public final class ExpressionFactory {
 			break;
 		default: // nothing
 		}
+		// Copy the operands of interned operations, the caller might reuse the array
+		if (interning)
+			return intern(new RTLOperation(operator, operands.clone()));
 		return new RTLOperation(operator, operands);
 	}
 
@@ -428,6 +479,14 @@ public final class ExpressionFactory {
 		return sharedRegisterMap.get(var);
 	}
 	
+	/**
+	 * @return all shared register variables and the bit ranges of their parent 
+	 *         registers, in the order they were created.
+	 */
+	public static Map<RTLVariable, RTLBitRange> getSharedRegisters() {
+		return Collections.unmodifiableMap(sharedRegisterMap);
+	}
+	
 	public static Set<RTLVariable> coveredRegisters(RTLVariable var) {
 		return coveredRegs.get(var);
 	}
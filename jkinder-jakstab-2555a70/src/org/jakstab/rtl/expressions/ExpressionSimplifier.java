@@ -19,9 +19,14 @@ package org.jakstab.rtl.expressions;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jakstab.Options;
 import org.jakstab.rtl.Context;
@@ -35,6 +40,10 @@ import org.jakstab.util.Logger;
  * Template based expression simplifier. Reads a set of simplification rules from 
  * an SSL file when initialized.
  * 
+ * Rules are indexed by the operator and arity of their root, so for each 
+ * expression only the rules that can possibly match are tried. Results of 
+ * top-level simplifications are kept in a small LRU cache.
+ * 
  * @author Johannes Kinder
  */
 public class ExpressionSimplifier {
@@ -55,9 +64,47 @@ public class ExpressionSimplifier {
 		return instance;
 	}
 	
+	private static final int MEMO_CAPACITY = 8192;
+	private static final int[] NO_CANDIDATES = new int[0];
+	
+	private static final AtomicLong simplifyNanos = new AtomicLong();
+	private static final AtomicLong memoLookups = new AtomicLong();
+	private static final AtomicLong memoHits = new AtomicLong();
+	
 	private final RTLExpression[] patterns;
 	private final RTLExpression[] results;
 	
+	/** Candidate rules for operations, by operator and operand count. */
+	private final Map<Operator, int[][]> operationCandidates;
+	/** Candidate rules for all other expressions, by expression class. */
+	private final Map<Class<?>, int[]> otherCandidates;
+	/** Rules whose pattern is just a variable, which match any expression. */
+	private final int[] wildcardCandidates;
+	
+	private final Map<RTLExpression, RTLExpression> memo = 
+		new LinkedHashMap<RTLExpression, RTLExpression>(2 * MEMO_CAPACITY, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<RTLExpression, RTLExpression> eldest) {
+				return size() > MEMO_CAPACITY;
+			}
+		};
+	
+	/**
+	 * @return the total time spent in {@link #simplify(RTLExpression)} in milliseconds, summed over all threads.
+	 */
+	public static long getSimplificationTime() {
+		return simplifyNanos.get() / 1000000;
+	}
+	
+	public static long getMemoLookupCount() {
+		return memoLookups.get();
+	}
+	
+	public static long getMemoHitCount() {
+		return memoHits.get();
+	}
+	
 	private ExpressionSimplifier() throws Exception {
 		// (x < y) | (x = y)   <->   x <= y
 		File specFile = new File(Options.jakstabHome + "/ssl/simplifications.ssl");
@@ -89,6 +136,89 @@ public class ExpressionSimplifier {
 		logger.debug("Substitution rules:");
 		for (int i=0; i<patterns.length; i++)
 			logger.debug("  " + patterns[i] + " ----> " + results[i]);
+		
+		// Build the rule index. Each bucket lists rule indices in ascending 
+		// order, so rules are still tried in the order of the SSL file.
+		List<Integer> wildcards = new ArrayList<Integer>();
+		Map<Operator, Map<Integer, List<Integer>>> opLists = new EnumMap<Operator, Map<Integer, List<Integer>>>(Operator.class);
+		Map<Class<?>, List<Integer>> otherLists = new HashMap<Class<?>, List<Integer>>();
+		for (int i=0; i<patterns.length; i++) {
+			RTLExpression p = patterns[i];
+			if (p instanceof RTLVariable) {
+				wildcards.add(i);
+			} else if (p instanceof RTLOperation) {
+				RTLOperation op = (RTLOperation)p;
+				Map<Integer, List<Integer>> byArity = opLists.get(op.getOperator());
+				if (byArity == null) {
+					byArity = new HashMap<Integer, List<Integer>>();
+					opLists.put(op.getOperator(), byArity);
+				}
+				addCandidate(byArity, op.getOperandCount(), i);
+				// Negated variables can match constants, see match()
+				if (op.getOperator() == Operator.NEG)
+					addCandidate(otherLists, RTLNumber.class, i);
+			} else {
+				addCandidate(otherLists, p.getClass(), i);
+			}
+		}
+		
+		wildcardCandidates = toSortedArray(wildcards, null);
+		operationCandidates = new EnumMap<Operator, int[][]>(Operator.class);
+		for (Map.Entry<Operator, Map<Integer, List<Integer>>> entry : opLists.entrySet()) {
+			int maxArity = 0;
+			for (Integer arity : entry.getValue().keySet())
+				maxArity = Math.max(maxArity, arity);
+			int[][] byArity = new int[maxArity + 1][];
+			for (Map.Entry<Integer, List<Integer>> arityEntry : entry.getValue().entrySet())
+				byArity[arityEntry.getKey()] = toSortedArray(arityEntry.getValue(), wildcards);
+			operationCandidates.put(entry.getKey(), byArity);
+		}
+		otherCandidates = new HashMap<Class<?>, int[]>();
+		for (Map.Entry<Class<?>, List<Integer>> entry : otherLists.entrySet())
+			otherCandidates.put(entry.getKey(), toSortedArray(entry.getValue(), wildcards));
+		
+		logger.debug("Indexed " + patterns.length + " rules for " + operationCandidates.size() + " operators.");
+	}
+	
+	private static <K> void addCandidate(Map<K, List<Integer>> lists, K key, int rule) {
+		List<Integer> list = lists.get(key);
+		if (list == null) {
+			list = new ArrayList<Integer>();
+			lists.put(key, list);
+		}
+		list.add(rule);
+	}
+	
+	private static int[] toSortedArray(List<Integer> rules, List<Integer> wildcards) {
+		int size = rules.size() + (wildcards == null ? 0 : wildcards.size());
+		if (size == 0)
+			return NO_CANDIDATES;
+		int[] result = new int[size];
+		int j = 0;
+		for (Integer i : rules)
+			result[j++] = i;
+		if (wildcards != null)
+			for (Integer i : wildcards)
+				result[j++] = i;
+		Arrays.sort(result);
+		return result;
+	}
+	
+	/**
+	 * Returns the indices of all rules whose pattern might match the given 
+	 * expression, in ascending order.
+	 */
+	private int[] candidates(RTLExpression e) {
+		int[] result = null;
+		if (e instanceof RTLOperation) {
+			RTLOperation op = (RTLOperation)e;
+			int[][] byArity = operationCandidates.get(op.getOperator());
+			if (byArity != null && op.getOperandCount() < byArity.length)
+				result = byArity[op.getOperandCount()];
+		} else {
+			result = otherCandidates.get(e.getClass());
+		}
+		return result == null ? wildcardCandidates : result;
 	}
 	
 	/**
@@ -100,6 +230,28 @@ public class ExpressionSimplifier {
 	 *         not be simplified at all
 	 */
 	public RTLExpression simplify(RTLExpression e) {
+		long startTime = System.nanoTime();
+		try {
+			memoLookups.incrementAndGet();
+			RTLExpression result;
+			synchronized (memo) {
+				result = memo.get(e);
+			}
+			if (result != null) {
+				memoHits.incrementAndGet();
+				return result;
+			}
+			result = simplifyUncached(e);
+			synchronized (memo) {
+				memo.put(e, result);
+			}
+			return result;
+		} finally {
+			simplifyNanos.addAndGet(System.nanoTime() - startTime);
+		}
+	}
+	
+	private RTLExpression simplifyUncached(RTLExpression e) {
 		
 		ExpressionVisitor<RTLExpression> simplificationVisitor = new ExpressionVisitor<RTLExpression>() {
 
@@ -210,10 +362,16 @@ public class ExpressionSimplifier {
 	 */
 	private RTLExpression applyTemplates(RTLExpression e) {
 		
+		int[] candidates = candidates(e);
+		if (candidates.length == 0)
+			return e;
+		
 		Map<RTLVariable, RTLExpression> bindings = new HashMap<RTLVariable, RTLExpression>(); 
 
-		// Just go through all patterns and check for a match
-		for (int i=0; i<patterns.length; i++) {
+		// Go through all candidate patterns in order and check for a match
+		int k = 0;
+		while (k < candidates.length) {
+			int i = candidates[k++];
 			if (match(e, patterns[i], bindings)) {
 				// Success
 				Context context = new Context();
@@ -222,6 +380,11 @@ public class ExpressionSimplifier {
 				RTLExpression result = results[i].evaluate(context);
 				//logger.debug("Simplified " + e + " to " + result);
 				e = result;
+				// Continue with the remaining rules that can match the new expression
+				candidates = candidates(e);
+				k = Arrays.binarySearch(candidates, i + 1);
+				if (k < 0)
+					k = -k - 1;
 			}
 			bindings.clear();
 		}
@@ -33,6 +33,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLBitRange extends AbstractRTLExpression implements RTLExpression, Writable {
 
+	private static final long serialVersionUID = 6289202382625706573L;
+
 	/**
 	 * Creates a Bitmask in which all bits from startbit to and including
 	 * endbit are set.
@@ -63,7 +65,7 @@ public class RTLBitRange extends AbstractRTLExpression implements RTLExpression,
 	private final RTLExpression lastBit;
 	private final RTLExpression operand;
 	private final int size;
-	private SetOfVariables usedVariablesOnWrite = null;
+	private transient SetOfVariables usedVariablesOnWrite = null;
 
 	protected RTLBitRange(RTLExpression variable, RTLExpression firstBit, RTLExpression lastBit) {
 		super();
@@ -32,10 +32,12 @@ import org.jakstab.util.Logger;
  */
 public class RTLConditionalExpression extends AbstractRTLExpression implements RTLExpression {
 
+	private static final long serialVersionUID = -9178093080873347405L;
+
 	@SuppressWarnings("unused")
 	private final static Logger logger = Logger.getLogger(RTLConditionalExpression.class);
 
-	protected Set<RTLMemoryLocation> usedMemoryLocations = null;
+	protected transient Set<RTLMemoryLocation> usedMemoryLocations = null;
 
 	private final RTLExpression condition;
 	private final RTLExpression trueExpression;
@@ -35,16 +35,19 @@ import org.jakstab.util.Logger;
  */
 public class RTLMemoryLocation extends AbstractRTLExpression implements RTLExpression, Writable {
 
+	private static final long serialVersionUID = 2039501623575606400L;
+
 	@SuppressWarnings("unused")
 	private final static Logger logger = Logger.getLogger(RTLMemoryLocation.class);
 			
-	private Set<RTLMemoryLocation> usedMemoryLocations = null;
-	private SetOfVariables usedVariablesOnWrite;
+	private transient Set<RTLMemoryLocation> usedMemoryLocations = null;
+	private transient SetOfVariables usedVariablesOnWrite;
 	private final RTLExpression segmentRegister;
 	private final RTLExpression address;
 	private final int bitWidth;
 	private final int size;
 	private final int memoryState;
+	private transient int hashCode = 0;
 
 	protected RTLMemoryLocation(int memoryState, RTLExpression segmentRegister, RTLExpression address, int bitWidth) {
 		super();
@@ -193,8 +196,10 @@ public class RTLMemoryLocation extends AbstractRTLExpression implements RTLExpre
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if (this == obj) return true;
 		if (obj == null || obj.getClass() != this.getClass()) return false;
 		RTLMemoryLocation other = (RTLMemoryLocation)obj;
+		if (interned && other.interned) return false;
 		return other.address.equals(address) && 
 		other.bitWidth == bitWidth && 
 		other.memoryState == memoryState && 
@@ -207,7 +212,12 @@ public class RTLMemoryLocation extends AbstractRTLExpression implements RTLExpre
 	 */
 	@Override
 	public int hashCode() {
-		return 59 + address.hashCode() + bitWidth;
+		int h = hashCode;
+		if (h == 0) {
+			h = 59 + address.hashCode() + bitWidth;
+			hashCode = h;
+		}
+		return h;
 	}
 
 	@Override
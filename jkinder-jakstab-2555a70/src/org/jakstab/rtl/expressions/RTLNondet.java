@@ -18,6 +18,7 @@
 
 package org.jakstab.rtl.expressions;
 
+import java.io.ObjectStreamException;
 import java.util.Collections;
 import java.util.Set;
 
@@ -32,6 +33,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLNondet extends AbstractRTLExpression implements RTLExpression {
 
+	private static final long serialVersionUID = 583827531897269938L;
+
 	@SuppressWarnings("unused")
 	private final static Logger logger = Logger.getLogger(RTLNondet.class);
 	private final int bitWidth;
@@ -103,4 +106,8 @@ public class RTLNondet extends AbstractRTLExpression implements RTLExpression {
 	public <T> T accept(ExpressionVisitor<T> visitor) {
 		return visitor.visit(this);
 	}
+
+	private Object readResolve() throws ObjectStreamException {
+		return ExpressionFactory.nondet(bitWidth);
+	}
 }
@@ -18,6 +18,7 @@
 
 package org.jakstab.rtl.expressions;
 
+import java.io.ObjectStreamException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Set;
@@ -34,6 +35,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLNumber extends AbstractRTLExpression implements RTLExpression, AbstractDomainElement {
 
+	private static final long serialVersionUID = -5230821036006485521L;
+
 	public static final RTLNumber WILDCARD = null;
 	public static final Set<RTLNumber> ALL_NUMBERS = Collections.singleton(WILDCARD);
 	
@@ -84,9 +87,13 @@ public class RTLNumber extends AbstractRTLExpression implements RTLExpression, A
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
 		if (obj == null || obj.getClass() != this.getClass()) 
 			return false;
 		RTLNumber other = ((RTLNumber)obj);
+		if (interned && other.interned)
+			return false;
 		// If one is weakly typed, only check values
 		/*if (bitWidth == RTLVariable.UNKNOWN_BITWIDTH || other.bitWidth == RTLVariable.UNKNOWN_BITWIDTH)
 			return other.value == value;*/
@@ -266,4 +273,11 @@ public class RTLNumber extends AbstractRTLExpression implements RTLExpression, A
 	public boolean lessOrEqual(LatticeElement l) {
 		return equals(l);
 	}
+
+	/**
+	 * Makes sure TRUE and FALSE stay unique after deserialization.
+	 */
+	private Object readResolve() throws ObjectStreamException {
+		return ExpressionFactory.createNumber(value, bitWidth);
+	}
 }
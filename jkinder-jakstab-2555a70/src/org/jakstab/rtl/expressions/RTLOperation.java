@@ -32,15 +32,18 @@ import org.jakstab.util.Logger;
  */
 public class RTLOperation extends AbstractRTLExpression implements RTLExpression {
 
+	private static final long serialVersionUID = 6257831767788518468L;
+
 	private final static Logger logger = Logger.getLogger(RTLOperation.class);
 
-	protected Set<RTLMemoryLocation> usedMemoryLocations = null;
+	protected transient Set<RTLMemoryLocation> usedMemoryLocations = null;
 
 	private final Operator operator;
 	private final RTLExpression[] operands;
 	private final int operandCount;
 	private final int size;
 	private final int bitWidth;
+	private transient int hashCode = 0;
 
 	protected RTLOperation(Operator operator, RTLExpression... operands) {
 		super();
@@ -518,8 +521,10 @@ public class RTLOperation extends AbstractRTLExpression implements RTLExpression
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if (this == obj) return true;
 		if (obj == null || obj.getClass() != this.getClass()) return false;
 		RTLOperation other = (RTLOperation)obj;
+		if (interned && other.interned) return false;
 		return this.operator.equals(other.operator) && Arrays.equals(this.operands, other.operands);
 	}
 
@@ -528,7 +533,13 @@ public class RTLOperation extends AbstractRTLExpression implements RTLExpression
 	 */
 	@Override
 	public int hashCode() {
-		return 43 + operator.hashCode() + Arrays.hashCode(operands);
+		// Cache hash code, it is recursive over the whole expression tree
+		int h = hashCode;
+		if (h == 0) {
+			h = 43 + operator.hashCode() + Arrays.hashCode(operands);
+			hashCode = h;
+		}
+		return h;
 	}
 
 	@Override
@@ -32,6 +32,8 @@ import org.jakstab.util.Logger;
  * @author Johannes Kinder
  */
 public class RTLSpecialExpression extends AbstractRTLExpression implements RTLExpression  {
+
+	private static final long serialVersionUID = 9038385548465805805L;
 	
 	public static final String FTRUNC = "ftrunc";
 	public static final String LOG2 = "log2";
@@ -41,7 +43,7 @@ public class RTLSpecialExpression extends AbstractRTLExpression implements RTLEx
 	
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(RTLSpecialExpression.class);
-	protected Set<RTLMemoryLocation> usedMemoryLocations = null;
+	protected transient Set<RTLMemoryLocation> usedMemoryLocations = null;
 
 	private final String operation;
 	private final RTLExpression[] operands;
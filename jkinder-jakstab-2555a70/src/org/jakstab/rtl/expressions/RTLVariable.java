@@ -18,6 +18,7 @@
 
 package org.jakstab.rtl.expressions;
 
+import java.io.ObjectStreamException;
 import java.util.Collections;
 import java.util.Set;
 
@@ -35,6 +36,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLVariable extends AbstractRTLExpression 
 implements RTLExpression, Writable, ValueContainer, Comparable<RTLVariable> {
+
+	private static final long serialVersionUID = 5323183466604449015L;
 	
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(RTLVariable.class);
@@ -42,7 +45,7 @@ implements RTLExpression, Writable, ValueContainer, Comparable<RTLVariable> {
 	public static final int UNKNOWN_BITWIDTH = Integer.MIN_VALUE;
 	
 	private final String name;
-	private SetOfVariables setOfThis;
+	private transient SetOfVariables setOfThis;
 	private final int bitWidth;
 	private final int index;
 	
@@ -153,4 +156,11 @@ implements RTLExpression, Writable, ValueContainer, Comparable<RTLVariable> {
 	public <T> T accept(ExpressionVisitor<T> visitor) {
 		return visitor.visit(this);
 	}
+
+	/**
+	 * Replaces deserialized variables by the unique instance from the ExpressionFactory.
+	 */
+	private Object readResolve() throws ObjectStreamException {
+		return ExpressionFactory.createVariable(name, bitWidth);
+	}
 }
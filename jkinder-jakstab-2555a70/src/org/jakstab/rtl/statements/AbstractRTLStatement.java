@@ -18,6 +18,7 @@
 
 package org.jakstab.rtl.statements;
 
+import java.io.Serializable;
 import java.util.Set;
 
 import org.jakstab.cfa.RTLLabel;
@@ -33,17 +34,20 @@ import org.jakstab.asm.AbsoluteAddress;
  * 
  * @author Johannes Kinder
  */
-public abstract class AbstractRTLStatement implements RTLStatement, Cloneable {
+public abstract class AbstractRTLStatement implements RTLStatement, Cloneable, Serializable {
+
+	private static final long serialVersionUID = 4557322747205053463L;
 	
 	@SuppressWarnings("unused")
 	private final static Logger logger = Logger.getLogger(AbstractRTLStatement.class);
 
 	/**
-	 * Cached results for simple queries.
+	 * Cached results for simple queries. They are not serialized, as sets of 
+	 * variables depend on the variable indices of the running instance.
 	 */
-	protected SetOfVariables usedVariables = null;
-	protected SetOfVariables definedVariables = null;
-	protected Set<RTLMemoryLocation> usedMemoryLocations = null;
+	protected transient SetOfVariables usedVariables = null;
+	protected transient SetOfVariables definedVariables = null;
+	protected transient Set<RTLMemoryLocation> usedMemoryLocations = null;
 
 	protected RTLLabel label;
 	protected RTLLabel nextLabel;
@@ -34,6 +34,8 @@ import org.jakstab.util.Logger;
  */
 public class AssignmentTemplate extends AbstractRTLStatement {
 
+	private static final long serialVersionUID = 6359087996906428773L;
+
 	private static final Logger logger = Logger
 			.getLogger(AssignmentTemplate.class);
 
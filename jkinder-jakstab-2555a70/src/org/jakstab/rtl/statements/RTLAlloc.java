@@ -32,6 +32,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLAlloc extends AbstractRTLStatement implements RTLStatement {
 
+	private static final long serialVersionUID = -6424603245855359168L;
+
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(RTLAlloc.class);
 	
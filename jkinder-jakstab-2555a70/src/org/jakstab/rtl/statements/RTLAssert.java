@@ -32,6 +32,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLAssert extends AbstractRTLStatement implements RTLStatement {
 
+	private static final long serialVersionUID = 3274401054187812679L;
+
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(RTLAssert.class);
 	
@@ -30,6 +30,8 @@ import org.jakstab.util.Logger;
  * @author Johannes Kinder
  */
 public class RTLAssume extends AbstractRTLStatement implements RTLStatement {
+
+	private static final long serialVersionUID = -4881624603616131071L;
 	
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(RTLAssume.class);
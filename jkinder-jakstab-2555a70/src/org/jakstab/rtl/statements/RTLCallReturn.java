@@ -26,6 +26,8 @@ import org.jakstab.rtl.expressions.SetOfVariables;
 
 public class RTLCallReturn extends AbstractRTLStatement {
 
+	private static final long serialVersionUID = 6962407851325138573L;
+
 	@Override
 	public <T> T accept(StatementVisitor<T> visitor) {
 		return visitor.visit(this);
@@ -31,6 +31,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLDealloc extends AbstractRTLStatement implements RTLStatement {
 
+	private static final long serialVersionUID = -5514774632788760824L;
+
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(RTLDealloc.class);
 	
@@ -33,6 +33,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLDebugPrint extends AbstractRTLStatement implements RTLStatement {
 
+	private static final long serialVersionUID = 1365242072911521958L;
+
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(RTLDebugPrint.class);
 	
@@ -38,6 +38,8 @@ import org.jakstab.util.FastSet;
  */
 public class RTLGoto extends AbstractRTLStatement implements RTLStatement {
 
+	private static final long serialVersionUID = 871716695490650410L;
+
 	@SuppressWarnings("unused")
 	private final static Logger logger = Logger.getLogger(RTLGoto.class);
 	
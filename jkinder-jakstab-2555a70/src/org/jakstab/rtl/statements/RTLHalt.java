@@ -33,6 +33,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLHalt extends AbstractRTLStatement implements RTLStatement {
 
+	private static final long serialVersionUID = -4106015138143640664L;
+
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(RTLHalt.class);
 
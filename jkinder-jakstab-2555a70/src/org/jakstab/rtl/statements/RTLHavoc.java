@@ -32,6 +32,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLHavoc extends AbstractRTLStatement implements RTLStatement {
 
+	private static final long serialVersionUID = 6391442445701274016L;
+
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(RTLHavoc.class);
 
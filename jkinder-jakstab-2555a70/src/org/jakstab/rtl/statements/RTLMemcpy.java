@@ -31,6 +31,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLMemcpy extends AbstractRTLStatement implements RTLStatement {
 
+	private static final long serialVersionUID = -4631134123130421255L;
+
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(RTLMemcpy.class);
 
@@ -34,6 +34,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLMemoryAssignment extends AbstractRTLStatement implements RTLStatement {
 
+	private static final long serialVersionUID = 5270367051489175429L;
+
 	private static final Logger logger = Logger.getLogger(RTLMemoryAssignment.class);
 
 	private RTLMemoryLocation leftHandSide;
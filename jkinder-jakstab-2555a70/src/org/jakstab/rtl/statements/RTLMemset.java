@@ -33,6 +33,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLMemset extends AbstractRTLStatement implements RTLStatement {
 
+	private static final long serialVersionUID = 1725497094045834159L;
+
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(RTLMemset.class);
 	
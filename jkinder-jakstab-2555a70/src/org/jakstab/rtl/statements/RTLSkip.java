@@ -33,6 +33,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLSkip extends AbstractRTLStatement implements RTLStatement {
 
+	private static final long serialVersionUID = -7190527746190156775L;
+
 	@SuppressWarnings("unused")
 	private final static Logger logger = Logger.getLogger(RTLSkip.class);
 
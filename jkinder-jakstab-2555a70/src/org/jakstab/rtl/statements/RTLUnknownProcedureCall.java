@@ -33,6 +33,8 @@ import org.jakstab.util.Logger;
 public class RTLUnknownProcedureCall extends AbstractRTLStatement implements
 		RTLStatement {
 
+	private static final long serialVersionUID = -3181492944366787033L;
+
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(RTLUnknownProcedureCall.class);
 	
@@ -34,6 +34,8 @@ import org.jakstab.util.Logger;
  */
 public class RTLVariableAssignment extends AbstractRTLStatement implements RTLStatement {
 
+	private static final long serialVersionUID = -2276710880084835003L;
+
 	private static final Logger logger = Logger.getLogger(RTLVariableAssignment.class);
 
 	private RTLVariable leftHandSide;
@@ -19,6 +19,7 @@ package org.jakstab.ssl;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jakstab.Options;
 import org.jakstab.util.Logger;
@@ -93,6 +94,7 @@ public class Architecture {
 
 	
 	private File specFile;
+	private String specHash;
 	private Map<String, SSLInstruction> instructions;
 	private Map<String, List<SSLInstruction>> instrGroups;
 	private final RTLVariable stackPointer;
@@ -105,6 +107,20 @@ public class Architecture {
 
 	private SetOfVariables registers;
 
+	// Cache of instantiated RTL for instructions whose semantics do not depend
+	// on their address, keyed by SSL prototype and operands
+	private static final int TEMPLATE_CACHE_CAPACITY = 65536;
+	private final Map<TemplateKey, InstantiatedTemplate> templateCache = 
+		new LinkedHashMap<TemplateKey, InstantiatedTemplate>(1024, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<TemplateKey, InstantiatedTemplate> eldest) {
+				return size() > TEMPLATE_CACHE_CAPACITY;
+			}
+		};
+	private final AtomicLong templateLookups = new AtomicLong();
+	private final AtomicLong templateHits = new AtomicLong();
+
 	/**
 	 * Parses an SSL specification from a given filename and converts the RTL 
 	 * blocks to canonical form.
@@ -372,10 +388,31 @@ public class Architecture {
 		/* Transform Parameters. If there are excessive Asm operands, skip the first.
 		 * This fixes the problem with an implicit EAX operand. Might not work on other
 		 * architectures than x86! */
-		if (sslInstr != null) for (int i=0; i<sslInstr.getParameterCount(); i++) {
-			Operand iOp = excessAsmOps ? instr.getOperand(i+1) : instr.getOperand(i);
-			RTLExpression opAsExpr = ExpressionFactory.createOperand(iOp);
-			instrParamContext.substitute(sslInstr.getParameter(i), opAsExpr);
+		RTLExpression[] parameters = null;
+		if (sslInstr != null) {
+			parameters = new RTLExpression[sslInstr.getParameterCount()];
+			for (int i=0; i<sslInstr.getParameterCount(); i++) {
+				Operand iOp = excessAsmOps ? instr.getOperand(i+1) : instr.getOperand(i);
+				RTLExpression opAsExpr = ExpressionFactory.createOperand(iOp);
+				parameters[i] = opAsExpr;
+				instrParamContext.substitute(sslInstr.getParameter(i), opAsExpr);
+			}
+		}
+		
+		AbsoluteAddress fallThroughAddress = new AbsoluteAddress(address.getValue() + instr.getSize());
+		
+		TemplateKey key = null;
+		if (sslInstr != null) {
+			key = new TemplateKey(sslInstr, parameters);
+			templateLookups.incrementAndGet();
+			InstantiatedTemplate cached;
+			synchronized (templateCache) {
+				cached = templateCache.get(key);
+			}
+			if (cached != null) {
+				templateHits.incrementAndGet();
+				return cached.instantiate(address, fallThroughAddress);
+			}
 		}
 
 		/* Assign PC - the PC value in the RTL is that of the next instruction in Intel assembly */
@@ -408,7 +445,7 @@ public class Architecture {
 			instrRTL.addFirst(nop);
 		}
 		// set next label of the last statement to fall-through instruction 
-		instrRTL.getLast().setNextLabel(new RTLLabel(new AbsoluteAddress(address.getValue() + instr.getSize()), 0));
+		instrRTL.getLast().setNextLabel(new RTLLabel(fallThroughAddress, 0));
 		
 		// infer missing bit widths:
 		try {
@@ -428,15 +465,154 @@ public class Architecture {
 		// One more simplification step
 		instrRTL = instrRTL.evaluate(new Context());
 		
+		if (key != null && isAddressIndependent(sslInstr, instrRTL)) {
+			InstantiatedTemplate template = new InstantiatedTemplate(instrRTL.copy(), address, fallThroughAddress);
+			synchronized (templateCache) {
+				templateCache.put(key, template);
+			}
+		}
+		
 		return instrRTL;
 	}
 	
+	/**
+	 * Checks whether an instantiated instruction can be reused at a different
+	 * address by relabeling it. This is not the case if the SSL body refers to 
+	 * the program counter, or if instantiation added gotos to the instruction 
+	 * itself or to its successor (for REP prefixes).
+	 */
+	private static boolean isAddressIndependent(SSLInstruction sslInstr, StatementSequence instrRTL) {
+		StatementSequence body = sslInstr.getBody();
+		if (body != null) {
+			for (RTLStatement s : body) {
+				if (s.getUsedVariables().contains(ExpressionFactory.pc) || 
+						s.getDefinedVariables().contains(ExpressionFactory.pc))
+					return false;
+			}
+		}
+		for (RTLStatement s : instrRTL) {
+			if (s instanceof RTLGoto) {
+				RTLGoto.Type type = ((RTLGoto)s).getType();
+				if (type == RTLGoto.Type.REPEAT || type == RTLGoto.Type.STRING_LENGTH_CHECK)
+					return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return the number of instructions that were looked up in the instantiated template cache. 
+	 */
+	public long getTemplateCacheLookups() {
+		return templateLookups.get();
+	}
+
+	/**
+	 * @return the number of instructions whose RTL was copied from the instantiated template cache. 
+	 */
+	public long getTemplateCacheHits() {
+		return templateHits.get();
+	}
+	
+	private static final class TemplateKey {
+		private final SSLInstruction instr;
+		private final RTLExpression[] parameters;
+		private final int hash;
+		
+		private TemplateKey(SSLInstruction instr, RTLExpression[] parameters) {
+			this.instr = instr;
+			this.parameters = parameters;
+			hash = 31 * System.identityHashCode(instr) + Arrays.hashCode(parameters);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof TemplateKey))
+				return false;
+			TemplateKey other = (TemplateKey)obj;
+			return hash == other.hash && instr == other.instr && Arrays.equals(parameters, other.parameters);
+		}
+	}
+	
+	/**
+	 * The RTL of an instruction instantiated at some address, which is copied
+	 * and relabeled for other occurrences of the same instruction.
+	 */
+	private static final class InstantiatedTemplate {
+		private final StatementSequence rtl;
+		private final AbsoluteAddress address;
+		private final AbsoluteAddress fallThroughAddress;
+		
+		private InstantiatedTemplate(StatementSequence rtl, AbsoluteAddress address, AbsoluteAddress fallThroughAddress) {
+			this.rtl = rtl;
+			this.address = address;
+			this.fallThroughAddress = fallThroughAddress;
+		}
+		
+		private StatementSequence instantiate(AbsoluteAddress newAddress, AbsoluteAddress newFallThroughAddress) {
+			StatementSequence result = rtl.copy();
+			for (RTLStatement stmt : result) {
+				stmt.setLabel(relabel(stmt.getLabel(), newAddress, newFallThroughAddress));
+				stmt.setNextLabel(relabel(stmt.getNextLabel(), newAddress, newFallThroughAddress));
+			}
+			return result;
+		}
+		
+		private RTLLabel relabel(RTLLabel label, AbsoluteAddress newAddress, AbsoluteAddress newFallThroughAddress) {
+			if (label == null)
+				return null;
+			if (label.getAddress().equals(address))
+				return new RTLLabel(newAddress, label.getIndex());
+			if (label.getAddress().equals(fallThroughAddress))
+				return new RTLLabel(newFallThroughAddress, label.getIndex());
+			return label;
+		}
+	}
+	
+	/**
+	 * Returns the SHA-1 hash of the SSL file this architecture was read from.
+	 * 
+	 * @return the hash as hex string, or null if the file could not be hashed.
+	 */
+	public String getSpecificationHash() {
+		return specHash;
+	}
+	
 	public int getAddressBitWidth() {
 		return stackPointer.getBitWidth();
 	}
 	
 	public void parseSSL(String fileName) throws FileNotFoundException, ANTLRException {
 		specFile = new File(fileName);
+		
+		specHash = null;
+		try {
+			specHash = SpecificationCache.hash(specFile);
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			logger.warn("Could not hash " + specFile.getName() + ": " + e);
+		}
+		if (specHash != null) {
+			SpecificationCache cache = SpecificationCache.load(specFile, specHash);
+			if (cache != null) {
+				logger.info("Loaded compiled machine specification for " + specFile.getName() + " from cache.");
+				registers = cache.getRegisters();
+				instructions = cache.getInstructions();
+				instrGroups = cache.getInstructionGroups();
+				return;
+			}
+		}
+		int variableBase = ExpressionFactory.getVariableCount();
+		int sharedBase = ExpressionFactory.getSharedRegisters().size();
+		
 		logger.info("Reading machine specification from " + specFile.getName() + ".");
 
 		SSLLexer lex = new SSLLexer(new FileInputStream(specFile));
@@ -530,6 +706,9 @@ public class Architecture {
 				instrGroups.get(parts[0]).add(instr);
 		}
 		logger.debug("-- Suffix map has " + instrGroups.size() + " unique instructions.");
+		
+		if (specHash != null)
+			SpecificationCache.store(specFile, specHash, variableBase, sharedBase, registers, instructions, instrGroups);
 	}
 
 }
@@ -18,6 +18,8 @@
 
 package org.jakstab.ssl;
 
+import java.io.Serializable;
+
 import org.jakstab.rtl.expressions.ExpressionFactory;
 import org.jakstab.rtl.expressions.RTLVariable;
 import org.jakstab.rtl.statements.StatementSequence;
@@ -26,7 +28,9 @@ import org.jakstab.rtl.statements.StatementSequence;
 /**
  * @author Johannes Kinder
  */
-public final class SSLInstruction {
+public final class SSLInstruction implements Serializable {
+
+	private static final long serialVersionUID = -4879593107140357618L;
 
 	private final RTLVariable[] parameters;
 	private final String stringRep;
@@ -0,0 +1,227 @@
+/*
+ * SpecificationCache.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.ssl;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+import org.jakstab.Main;
+import org.jakstab.rtl.expressions.*;
+import org.jakstab.util.CheckedObjectInputStream;
+import org.jakstab.util.Logger;
+
+/**
+ * Stores the parsed instructions of an SSL specification in serialized form
+ * next to the SSL file, so later runs do not have to run the SSL parser again.
+ *
+ * Parsing the specification also creates the register variables and shared
+ * registers in the ExpressionFactory. The cache file records them in creation
+ * order and recreates them before reading the instructions, so all variables
+ * get the same indices as when parsing. The cache is only used if it was
+ * written by the same Jakstab version for an SSL file with the same SHA-1
+ * hash and with the same number of variables existing before parsing. It is
+ * read through a {@link CheckedObjectInputStream}, which also rejects the
+ * cache if the serialized fields of a class have changed since it was
+ * written, as their serialVersionUIDs stay the same.
+ */
+final class SpecificationCache {
+
+	private static final Logger logger = Logger.getLogger(SpecificationCache.class);
+
+	private static final int FORMAT_VERSION = 3;
+	private static final String SUFFIX = ".cache";
+
+	private final SetOfVariables registers;
+	private final Map<String, SSLInstruction> instructions;
+	private final Map<String, List<SSLInstruction>> instrGroups;
+
+	private SpecificationCache(SetOfVariables registers, Map<String, SSLInstruction> instructions,
+			Map<String, List<SSLInstruction>> instrGroups) {
+		this.registers = registers;
+		this.instructions = instructions;
+		this.instrGroups = instrGroups;
+	}
+
+	SetOfVariables getRegisters() {
+		return registers;
+	}
+
+	Map<String, SSLInstruction> getInstructions() {
+		return instructions;
+	}
+
+	Map<String, List<SSLInstruction>> getInstructionGroups() {
+		return instrGroups;
+	}
+
+	static File getCacheFile(File specFile) {
+		return new File(specFile.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Computes the hash of the SSL file used to detect stale cache files.
+	 */
+	static String hash(File specFile) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		InputStream in = new FileInputStream(specFile);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0)
+				digest.update(buffer, 0, read);
+		} finally {
+			in.close();
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest())
+			sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+
+	/**
+	 * Loads the cached specification for the given SSL file.
+	 *
+	 * @return the cached specification, or null if there is no valid cache file.
+	 */
+	@SuppressWarnings("unchecked")
+	static SpecificationCache load(File specFile, String hash) {
+		File cacheFile = getCacheFile(specFile);
+		if (!cacheFile.isFile())
+			return null;
+		ObjectInputStream in = null;
+		try {
+			in = new CheckedObjectInputStream(new BufferedInputStream(new FileInputStream(cacheFile), 1 << 16));
+			if (in.readInt() != FORMAT_VERSION || !in.readUTF().equals(Main.version) ||
+					!in.readUTF().equals(hash) ||
+					in.readInt() != ExpressionFactory.getVariableCount() ||
+					in.readInt() != ExpressionFactory.getSharedRegisters().size()) {
+				logger.debug("Ignoring stale cache file " + cacheFile.getName());
+				return null;
+			}
+
+			// Recreate variables in their original order before reading any expressions
+			int variableCount = in.readInt();
+			for (int i = 0; i < variableCount; i++) {
+				String name = in.readUTF();
+				int bitWidth = in.readInt();
+				int index = ExpressionFactory.getVariableCount();
+				if (ExpressionFactory.createVariable(name, bitWidth).getIndex() != index)
+					throw new InvalidObjectException("Variable " + name + " already exists!");
+			}
+			int sharedCount = in.readInt();
+			for (int i = 0; i < sharedCount; i++) {
+				String name = in.readUTF();
+				String parentName = in.readUTF();
+				int startBit = in.readInt();
+				int endBit = in.readInt();
+				ExpressionFactory.createSharedRegisterVariable(name, parentName, startBit, endBit);
+			}
+
+			SetOfVariables registers = (SetOfVariables)in.readObject();
+			Map<String, SSLInstruction> instructions = (Map<String, SSLInstruction>)in.readObject();
+			Map<String, List<SSLInstruction>> instrGroups = (Map<String, List<SSLInstruction>>)in.readObject();
+			return new SpecificationCache(registers, instructions, instrGroups);
+		} catch (Exception e) {
+			logger.warn("Could not read cache file " + cacheFile.getName() + ": " + e);
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the parsed specification to the cache file of the given SSL file.
+	 * Failures are only logged, as the cache is optional.
+	 *
+	 * @param variableBase the number of variables that existed before parsing
+	 * @param sharedBase the number of shared registers that existed before parsing
+	 */
+	static void store(File specFile, String hash, int variableBase, int sharedBase, SetOfVariables registers,
+			Map<String, SSLInstruction> instructions, Map<String, List<SSLInstruction>> instrGroups) {
+		File cacheFile = getCacheFile(specFile);
+		File tmpFile = null;
+		ObjectOutputStream out = null;
+		try {
+			// A unique name, so concurrent runs do not write to the same file
+			tmpFile = File.createTempFile(specFile.getName(), SUFFIX + ".tmp", cacheFile.getAbsoluteFile().getParentFile());
+			out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16));
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(Main.version);
+			out.writeUTF(hash);
+			out.writeInt(variableBase);
+			out.writeInt(sharedBase);
+
+			out.writeInt(ExpressionFactory.getVariableCount() - variableBase);
+			for (int i = variableBase; i < ExpressionFactory.getVariableCount(); i++) {
+				RTLVariable var = ExpressionFactory.getVariable(i);
+				out.writeUTF(var.getName());
+				out.writeInt(var.getBitWidth());
+			}
+			Map<RTLVariable, RTLBitRange> sharedRegisters = ExpressionFactory.getSharedRegisters();
+			out.writeInt(sharedRegisters.size() - sharedBase);
+			int i = 0;
+			for (Map.Entry<RTLVariable, RTLBitRange> entry : sharedRegisters.entrySet()) {
+				if (i++ < sharedBase)
+					continue;
+				RTLBitRange range = entry.getValue();
+				out.writeUTF(entry.getKey().getName());
+				out.writeUTF(((RTLVariable)range.getOperand()).getName());
+				out.writeInt((int)((RTLNumber)range.getFirstBitIndex()).longValue());
+				out.writeInt((int)((RTLNumber)range.getLastBitIndex()).longValue());
+			}
+
+			out.writeObject(registers);
+			out.writeObject(instructions);
+			out.writeObject(instrGroups);
+			out.close();
+			out = null;
+			if (!tmpFile.renameTo(cacheFile)) {
+				// Windows does not replace existing files when renaming
+				cacheFile.delete();
+				if (!tmpFile.renameTo(cacheFile))
+					throw new IOException("Cannot rename " + tmpFile.getName());
+			}
+			logger.debug("Wrote compiled specification to " + cacheFile.getName());
+		} catch (IOException e) {
+			logger.warn("Could not write cache file " + cacheFile.getName() + ": " + e);
+			if (tmpFile != null)
+				tmpFile.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+				tmpFile.delete();
+			}
+		}
+	}
+
+}
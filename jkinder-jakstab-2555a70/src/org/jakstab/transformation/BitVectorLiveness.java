@@ -0,0 +1,400 @@
+/*
+ * BitVectorLiveness.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.transformation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.cfa.CompactCFG;
+import org.jakstab.cfa.Location;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.rtl.statements.RTLStatement;
+import org.jakstab.rtl.statements.RTLUnknownProcedureCall;
+
+/**
+ * Live variable analysis over a CFA whose edges are removed one by one.
+ * Locations are numbered by a {@link CompactCFG}, and the live variables at
+ * each location are stored as a row of bits in a single array, indexed by
+ * the variable indices. The GEN and KILL sets of each edge, including the
+ * registers covering used and covered by defined registers, are computed
+ * once and shared between edges with equal sets.
+ *
+ * Removing an edge redirects the in-edges of its source to its target. The
+ * next call to {@link #solve()} then resets and recomputes only the locations
+ * that reach a redirected edge, since the live variables at all other
+ * locations depend on unchanged parts of the CFA only.
+ */
+final class BitVectorLiveness {
+
+	private final CompactCFG graph;
+	/** The original edges, indexed by their ids in the compact graph. */
+	private final CFAEdge[] edges;
+	private final int words;
+
+	private final long[][] vectors;
+	private final int[] gen;
+	private final int[] kill;
+	private final long[] sinkVector;
+	private final long[] live;
+
+	// Current targets and in-edge lists, as doubly linked lists of edges
+	private final int[] targets;
+	private final int[] inHead;
+	private final int[] inNext;
+	private final int[] inPrev;
+	private final int[] inDegree;
+	private final int[] outDegree;
+	private final BitSet removed;
+
+	/** Locations whose out-edges changed since the last solve. */
+	private final BitSet dirty;
+	private boolean solved = false;
+	private int lastSolvedCount;
+	private volatile boolean stop = false;
+
+	/**
+	 * @param cfa the edges of the CFA, all transformers have to be statements
+	 * @param liveInSinks the variables live at locations without out-edges
+	 * @param callRegisters the variables used by unknown procedure calls
+	 */
+	BitVectorLiveness(Set<CFAEdge> cfa, Set<RTLVariable> liveInSinks, Set<RTLVariable> callRegisters) {
+		graph = new CompactCFG(cfa);
+		int n = graph.getLocationCount();
+		int m = graph.getEdgeCount();
+
+		edges = new CFAEdge[m];
+		for (CFAEdge e : cfa) {
+			int id = graph.findEdge(graph.getId(e.getSource()), graph.getId(e.getTarget()));
+			// Parallel edges, e.g., of a conditional jump to the next instruction, are
+			// numbered in the iteration order of the set, so take the first free one
+			while (edges[id] != null)
+				id++;
+			assert graph.getTransformer(id) == e.getTransformer();
+			edges[id] = e;
+		}
+
+		// Expand defined and used variables by the registers they overlap, once per variable
+		Map<RTLVariable, List<RTLVariable>> killExpansions = new HashMap<RTLVariable, List<RTLVariable>>();
+		Map<RTLVariable, List<RTLVariable>> genExpansions = new HashMap<RTLVariable, List<RTLVariable>>();
+		int maxIndex = -1;
+		for (RTLVariable v : liveInSinks)
+			maxIndex = Math.max(maxIndex, v.getIndex());
+		for (RTLVariable v : callRegisters)
+			maxIndex = Math.max(maxIndex, v.getIndex());
+		for (int e = 0; e < m; e++) {
+			RTLStatement stmt = (RTLStatement)graph.getTransformer(e);
+			for (RTLVariable v : stmt.getDefinedVariables())
+				maxIndex = Math.max(maxIndex, expand(v, killExpansions, true));
+			for (RTLVariable v : stmt.getUsedVariables())
+				maxIndex = Math.max(maxIndex, expand(v, genExpansions, false));
+		}
+		words = (maxIndex + 64) >>> 6;
+
+		Map<VectorKey, Integer> vectorIds = new HashMap<VectorKey, Integer>();
+		List<long[]> vectorList = new ArrayList<long[]>();
+		gen = new int[m];
+		kill = new int[m];
+		for (int e = 0; e < m; e++) {
+			RTLStatement stmt = (RTLStatement)graph.getTransformer(e);
+			long[] k = new long[words];
+			for (RTLVariable v : stmt.getDefinedVariables())
+				for (RTLVariable x : killExpansions.get(v))
+					set(k, x);
+			long[] g = new long[words];
+			for (RTLVariable v : stmt.getUsedVariables())
+				for (RTLVariable x : genExpansions.get(v))
+					set(g, x);
+			// Registers might be used inside an unknown procedure call
+			if (stmt instanceof RTLUnknownProcedureCall)
+				for (RTLVariable x : callRegisters)
+					set(g, x);
+			kill[e] = intern(k, vectorIds, vectorList);
+			gen[e] = intern(g, vectorIds, vectorList);
+		}
+		vectors = vectorList.toArray(new long[vectorList.size()][]);
+
+		sinkVector = new long[words];
+		for (RTLVariable v : liveInSinks)
+			set(sinkVector, v);
+		live = new long[n * words];
+
+		targets = new int[m];
+		inHead = new int[n];
+		inNext = new int[m];
+		inPrev = new int[m];
+		inDegree = new int[n];
+		outDegree = new int[n];
+		Arrays.fill(inHead, -1);
+		for (int e = m - 1; e >= 0; e--) {
+			targets[e] = graph.getTarget(e);
+			link(e, targets[e]);
+			outDegree[graph.getSource(e)]++;
+		}
+		removed = new BitSet(m);
+		dirty = new BitSet(n);
+	}
+
+	int getEdgeCount() {
+		return edges.length;
+	}
+
+	CFAEdge getEdge(int edge) {
+		return edges[edge];
+	}
+
+	boolean isRemoved(int edge) {
+		return removed.get(edge);
+	}
+
+	int getSource(int edge) {
+		return graph.getSource(edge);
+	}
+
+	int getTarget(int edge) {
+		return targets[edge];
+	}
+
+	int getOutDegree(int location) {
+		return outDegree[location];
+	}
+
+	int getLocationCount() {
+		return graph.getLocationCount();
+	}
+
+	/**
+	 * @return the id of a location, or -1 if it is not part of the CFA.
+	 */
+	int getLocationId(Location l) {
+		return graph.getId(l);
+	}
+
+	/**
+	 * @return the number of locations recomputed by the last call to solve.
+	 */
+	int getLastSolvedCount() {
+		return lastSolvedCount;
+	}
+
+	boolean isLive(int location, RTLVariable v) {
+		int i = v.getIndex();
+		if ((i >>> 6) >= words)
+			return false;
+		return (live[location * words + (i >>> 6)] & (1L << i)) != 0;
+	}
+
+	/**
+	 * Removes an edge whose source has no other out-edges, and makes all
+	 * in-edges of its source point to its target instead.
+	 */
+	void removeEdge(int edge) {
+		int source = graph.getSource(edge);
+		int target = targets[edge];
+		assert outDegree[source] == 1 && !removed.get(edge);
+		unlink(edge, target);
+		removed.set(edge);
+		outDegree[source]--;
+		dirty.set(source);
+
+		if (source == target)
+			return;
+		CFAEdge targetEdge = edges[edge];
+		for (int i = inHead[source]; i >= 0; ) {
+			int next = inNext[i];
+			unlink(i, source);
+			targets[i] = target;
+			edges[i].setTarget(targetEdge.getTarget());
+			link(i, target);
+			dirty.set(graph.getSource(i));
+			i = next;
+		}
+	}
+
+	/**
+	 * Computes the least fixpoint of live variables for all locations that
+	 * can be affected by edges removed since the last call.
+	 */
+	void solve() {
+		int n = graph.getLocationCount();
+		BitSet affected = new BitSet(n);
+		if (!solved) {
+			affected.set(0, n);
+		} else {
+			// Collect all locations that reach a changed location backwards
+			int[] stack = new int[n];
+			int top = 0;
+			for (int v = dirty.nextSetBit(0); v >= 0; v = dirty.nextSetBit(v + 1)) {
+				affected.set(v);
+				stack[top++] = v;
+			}
+			while (top > 0) {
+				int v = stack[--top];
+				for (int i = inHead[v]; i >= 0; i = inNext[i]) {
+					int p = graph.getSource(i);
+					if (!affected.get(p)) {
+						affected.set(p);
+						stack[top++] = p;
+					}
+				}
+			}
+		}
+		dirty.clear();
+		solved = true;
+
+		// Queue of locations, each location is queued at most once at a time
+		int[] queue = new int[n];
+		BitSet queued = new BitSet(n);
+		int head = 0;
+		int size = 0;
+		lastSolvedCount = 0;
+		for (int v = affected.nextSetBit(0); v >= 0; v = affected.nextSetBit(v + 1)) {
+			if (outDegree[v] == 0 && inDegree[v] > 0)
+				System.arraycopy(sinkVector, 0, live, v * words, words);
+			else
+				Arrays.fill(live, v * words, (v + 1) * words, 0L);
+			lastSolvedCount++;
+		}
+		for (int v = affected.nextSetBit(0); v >= 0; v = affected.nextSetBit(v + 1)) {
+			// Take in the live variables of unaffected successors, which are final
+			for (int e = graph.getOutEdgeStart(v); e < graph.getOutEdgeEnd(v); e++) {
+				if (!removed.get(e) && !affected.get(targets[e]))
+					transfer(e, targets[e], v);
+			}
+			queue[size++] = v;
+			queued.set(v);
+		}
+
+		while (size > 0 && !stop) {
+			int v = queue[head];
+			head = (head + 1) % n;
+			size--;
+			queued.clear(v);
+			for (int i = inHead[v]; i >= 0; i = inNext[i]) {
+				int p = graph.getSource(i);
+				if (transfer(i, v, p) && !queued.get(p)) {
+					queue[(head + size) % n] = p;
+					size++;
+					queued.set(p);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the variables live before an edge to the live variables at its source.
+	 *
+	 * @return true if the live variables at the source changed.
+	 */
+	private boolean transfer(int edge, int target, int source) {
+		int tBase = target * words;
+		int sBase = source * words;
+		long[] g = vectors[gen[edge]];
+		long[] k = vectors[kill[edge]];
+		boolean changed = false;
+		for (int w = 0; w < words; w++) {
+			long old = live[sBase + w];
+			long updated = old | (live[tBase + w] & ~k[w]) | g[w];
+			if (updated != old) {
+				live[sBase + w] = updated;
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	void stop() {
+		stop = true;
+	}
+
+	private void link(int edge, int location) {
+		inPrev[edge] = -1;
+		inNext[edge] = inHead[location];
+		if (inHead[location] >= 0)
+			inPrev[inHead[location]] = edge;
+		inHead[location] = edge;
+		inDegree[location]++;
+	}
+
+	private void unlink(int edge, int location) {
+		if (inPrev[edge] >= 0)
+			inNext[inPrev[edge]] = inNext[edge];
+		else
+			inHead[location] = inNext[edge];
+		if (inNext[edge] >= 0)
+			inPrev[inNext[edge]] = inPrev[edge];
+		inDegree[location]--;
+	}
+
+	private static int expand(RTLVariable v, Map<RTLVariable, List<RTLVariable>> expansions, boolean covered) {
+		List<RTLVariable> expansion = expansions.get(v);
+		if (expansion == null) {
+			expansion = new ArrayList<RTLVariable>();
+			expansion.add(v);
+			expansion.addAll(covered ? ExpressionFactory.coveredRegisters(v) :
+				ExpressionFactory.coveringRegisters(v));
+			expansions.put(v, expansion);
+		}
+		int max = -1;
+		for (RTLVariable x : expansion)
+			max = Math.max(max, x.getIndex());
+		return max;
+	}
+
+	private static void set(long[] vector, RTLVariable v) {
+		vector[v.getIndex() >>> 6] |= 1L << v.getIndex();
+	}
+
+	private static int intern(long[] vector, Map<VectorKey, Integer> ids, List<long[]> list) {
+		VectorKey key = new VectorKey(vector);
+		Integer id = ids.get(key);
+		if (id == null) {
+			id = list.size();
+			list.add(vector);
+			ids.put(key, id);
+		}
+		return id;
+	}
+
+	private static final class VectorKey {
+		private final long[] vector;
+		private final int hash;
+
+		private VectorKey(long[] vector) {
+			this.vector = vector;
+			hash = Arrays.hashCode(vector);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof VectorKey && Arrays.equals(vector, ((VectorKey)obj).vector);
+		}
+	}
+
+}
@@ -58,6 +58,16 @@ public class ExpressionSubstitution implements CFATransformation {
 				substCtx.addAssignment(v, el.getExpression());
 			}
 		}
+		return substituteStatement(stmt, substCtx);
+	}
+	
+	/**
+	 * Substitutes the variables assigned in a context by their values.
+	 * 
+	 * @return the substituted statement, or the same statement if there is
+	 *         nothing to substitute.
+	 */
+	public static RTLStatement substituteStatement(RTLStatement stmt, Context substCtx) {
 		if (!substCtx.getAssignments().isEmpty()) {
 			//logger.info("Old stmt: " + stmt);
 			RTLStatement newStmt = stmt.copy().evaluate(substCtx);
@@ -0,0 +1,282 @@
+/*
+ * SparseExpressionSubstitution.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.transformation;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jakstab.analysis.SparsePropagation;
+import org.jakstab.analysis.substitution.SubstitutionState;
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.cfa.CompactCFG;
+import org.jakstab.cfa.ControlFlowGraph;
+import org.jakstab.cfa.DominatorTree;
+import org.jakstab.cfa.SSAForm;
+import org.jakstab.rtl.Context;
+import org.jakstab.rtl.expressions.ExpressionSimplifier;
+import org.jakstab.rtl.expressions.RTLExpression;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.rtl.statements.RTLStatement;
+import org.jakstab.rtl.statements.RTLVariableAssignment;
+import org.jakstab.util.Characters;
+import org.jakstab.util.Logger;
+
+/**
+ * Substitutes register definitions into their uses as a
+ * {@link SparsePropagation} over the SSA form of the graph, instead of the
+ * data flow analysis over all locations of {@link ExpressionSubstitution}.
+ * The value of a definition of a register is the substituted right hand side
+ * of its assignment. It stays valid as long as none of the variables in it is
+ * redefined, which is checked by comparing the definitions of its variables
+ * in effect at a use and at the definition.
+ *
+ * The SSA form includes the pseudo-variables for memory and unknown procedure
+ * calls, so values reading memory are invalidated by statements that may
+ * write memory, and all values are invalidated by unknown procedure calls.
+ * Like in the data flow analysis, memory stores are not substitutes
+ * themselves, so a load after a store is kept as a load.
+ *
+ * A phi function keeps a value that is the same and still valid on all
+ * in-edges. At loop heads, a value that changes is widened to no value. The
+ * data flow analysis joins the values of all iterations at every location
+ * in the loop instead, so it can miss substitutions inside loops that this
+ * pass finds. Otherwise, both substitute the same expressions.
+ */
+public class SparseExpressionSubstitution implements CFATransformation {
+
+	private static final Logger logger = Logger.getLogger(SparseExpressionSubstitution.class);
+
+	/**
+	 * The substitute for a definition, with the variables it depends on.
+	 * There is no substitute for definitions with the value TOP.
+	 */
+	private static final class Substitute {
+
+		private static final Substitute TOP = new Substitute(null);
+
+		private final RTLExpression expression;
+		private final RTLVariable[] dependencies;
+
+		private Substitute(RTLExpression expression) {
+			this.expression = expression;
+			if (expression == null) {
+				dependencies = null;
+				return;
+			}
+			Set<RTLVariable> used = expression.getUsedVariables();
+			boolean readsMemory = !expression.getUsedMemoryLocations().isEmpty();
+			dependencies = new RTLVariable[used.size() + (readsMemory ? 2 : 1)];
+			int i = 0;
+			for (RTLVariable v : used)
+				dependencies[i++] = v;
+			if (readsMemory)
+				dependencies[i++] = SSAForm.MEMORY;
+			dependencies[i++] = SSAForm.UNKNOWN_CALL;
+		}
+
+		@Override
+		public int hashCode() {
+			return expression == null ? 0 : expression.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			return obj instanceof Substitute && expression != null &&
+					expression.equals(((Substitute)obj).expression);
+		}
+	}
+
+	private final class Propagation extends SparsePropagation<Substitute> {
+
+		private Propagation(SSAForm ssa) {
+			super(ssa);
+		}
+
+		@Override
+		protected Substitute getEntryValue(RTLVariable v) {
+			return Substitute.TOP;
+		}
+
+		@Override
+		protected Substitute evaluate(int definition, int edge, RTLStatement stmt, RTLVariable v) {
+			if (!(stmt instanceof RTLVariableAssignment) ||
+					!((RTLVariableAssignment)stmt).getLeftHandSide().equals(v))
+				return Substitute.TOP;
+			RTLExpression rhs = ((RTLVariableAssignment)stmt).getRightHandSide().evaluate(getSubstitutions(edge));
+			rhs = ExpressionSimplifier.getInstance().simplify(rhs);
+			if (SubstitutionState.containsNondet(rhs))
+				return Substitute.TOP;
+			Substitute result = new Substitute(rhs);
+			// The statement must not redefine a variable of its own value, as in esp = esp - 4
+			return survives(result, edge) ? result : Substitute.TOP;
+		}
+
+		@Override
+		protected Substitute getOperandValue(int phi, int position) {
+			Substitute operand = super.getOperandValue(phi, position);
+			int location = ssa.getLocation(phi);
+			int k = position - ssa.getOperandStart(phi);
+			// The entry operand at the root has no in-edge
+			if (operand == null || operand == Substitute.TOP || k == graph.getInDegree(location))
+				return operand;
+			int edge = graph.getInEdge(graph.getInEdgeStart(location) + k);
+			int definition = ssa.getOperand(position);
+			if (ssa.getEdge(definition) == edge)
+				return operand;
+			if (survives(operand, edge) && isValid(operand, graph.getSource(edge), ssa.getLocation(definition)))
+				return operand;
+			return Substitute.TOP;
+		}
+
+		@Override
+		protected Substitute join(Substitute a, Substitute b) {
+			return a.equals(b) ? a : Substitute.TOP;
+		}
+
+		@Override
+		protected Substitute widen(Substitute oldValue, Substitute newValue) {
+			return join(oldValue, newValue);
+		}
+	}
+
+	private final ControlFlowGraph cfg;
+	private final Set<CFAEdge> edgeSet;
+	private volatile boolean stop = false;
+	private long substitutionCount;
+
+	private DominatorTree dom;
+	private CompactCFG graph;
+	private SSAForm ssa;
+	private volatile Propagation propagation;
+
+	public SparseExpressionSubstitution(ControlFlowGraph cfg) {
+		this.cfg = cfg;
+		edgeSet = new HashSet<CFAEdge>(cfg.getEdges());
+	}
+
+	public Set<CFAEdge> getCFA() {
+		return edgeSet;
+	}
+
+	public long getSubstitutionCount() {
+		return substitutionCount;
+	}
+
+	@Override
+	public void run() {
+		logger.info("Starting sparse expression substitution.");
+		long startTime = System.currentTimeMillis();
+
+		dom = cfg.getDominatorTree();
+		graph = dom.getGraph();
+		ssa = new SSAForm(dom, true);
+		propagation = new Propagation(ssa);
+		if (stop)
+			return;
+		propagation.run();
+
+		// The compact graph keeps the original statements, so the edges are
+		// only changed once all values are known
+		substitutionCount = 0;
+		for (CFAEdge edge : edgeSet) {
+			if (stop)
+				return;
+			int e = graph.findEdge(graph.getId(edge.getSource()), graph.getId(edge.getTarget()));
+			// Parallel edges are told apart by their statements
+			while (graph.getTransformer(e) != edge.getTransformer())
+				e++;
+			if (!dom.isReachable(graph.getSource(e)))
+				continue;
+			RTLStatement stmt = (RTLStatement)edge.getTransformer();
+			RTLStatement newStmt = ExpressionSubstitution.substituteStatement(stmt, getSubstitutions(e));
+			if (newStmt != stmt) {
+				edge.setTransformer(newStmt);
+				substitutionCount++;
+			}
+		}
+
+		logger.debug("Evaluated " + propagation.getEvaluationCount() + " times for " +
+				ssa.getDefinitionCount() + " definitions.");
+		dom = null;
+		graph = null;
+		ssa = null;
+		propagation = null;
+
+		long endTime = System.currentTimeMillis();
+		logger.verbose("Substituted " + substitutionCount + " statements, finished after " +
+				(endTime - startTime) + "ms.");
+	}
+
+	public void stop() {
+		logger.fatal("");
+		logger.fatal(Characters.starredBox("Interrupt! Stopping sparse expression substitution!"));
+		stop = true;
+		Propagation p = propagation;
+		if (p != null)
+			p.stop();
+	}
+
+	/**
+	 * @return the substitutes for the variables used by the statement of an
+	 * edge that are still valid at the edge.
+	 */
+	private Context getSubstitutions(int edge) {
+		Context substCtx = new Context();
+		for (int u = ssa.getUseStart(edge); u < ssa.getUseEnd(edge); u++) {
+			int definition = ssa.getUseDefinition(u);
+			Substitute s = propagation.getValue(definition);
+			if (s != null && s != Substitute.TOP &&
+					isValid(s, graph.getSource(edge), ssa.getLocation(definition)))
+				substCtx.addAssignment(ssa.getUseVariable(u), s.expression);
+		}
+		return substCtx;
+	}
+
+	/**
+	 * Checks that no variable of a value is redefined at the locations from
+	 * a use up the dominator tree to the location of the value's definition,
+	 * both inclusive. The definition dominates the use, so by the SSA
+	 * property, no path between them redefines a variable either. This is
+	 * the case if each variable has the same definition in effect at the use
+	 * as at the immediate dominator of the value's definition.
+	 */
+	private boolean isValid(Substitute s, int from, int to) {
+		int before = dom.getImmediateDominator(to);
+		for (RTLVariable v : s.dependencies) {
+			// Before the root, no variable has a definition
+			int d = before < 0 ? -1 : ssa.getDefinitionAt(before, v);
+			if (ssa.getDefinitionAt(from, v) != d)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the statement of an edge does not redefine a variable
+	 * of the value.
+	 */
+	private boolean survives(Substitute s, int edge) {
+		for (RTLVariable v : s.dependencies)
+			if (ssa.getDefinition(edge, v) >= 0)
+				return false;
+		return true;
+	}
+
+}
@@ -17,41 +17,128 @@
  */
 package org.jakstab.util;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
+ * An input buffer holding the complete contents of a file. Files are mapped
+ * into memory instead of being copied to the heap, and all loaders parse their
+ * headers and read code from the same mapping.
+ * 
+ * The mapping is read only. Bytes changed by {@link #putByteAt(int, byte)},
+ * e.g., when resolving imported symbols, are kept in private copies of the
+ * changed pages, which take precedence over the mapped file contents.
+ * 
  * @author Johannes Kinder
  */
 public class BinaryFileInputBuffer extends BinaryInputBuffer {
 
-	private byte[] data;
-	private int size;
+	private static final int PAGE_BITS = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private final ByteBuffer data;
+	private final int size;
+	/** Copies of pages with changed bytes, null as long as no byte has been changed. */
+	private byte[][] patchedPages;
 
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(BinaryFileInputBuffer.class);
 
+	/**
+	 * Creates a BinaryInputBuffer by mapping the given file into memory.
+	 */
+	public BinaryFileInputBuffer(File file) throws IOException {
+		current = 0;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("File too large: " + file.getName());
+			size = (int)channel.size();
+			// The mapping stays valid after closing the channel
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		} finally {
+			raf.close();
+		}
+	}
+
 	/** 
 	 * Creates a BinaryInputBuffer from the given InputStream and buffers all the available data.
 	 * Note: if input is a network stream, this constructor will only buffer the 
 	 * data that is available at the time the constructor is called (i.e. as much as is reported by 
 	 * InputStream.available()).
 	 */
-	public BinaryFileInputBuffer(java.io.InputStream input) throws java.io.IOException {
+	public BinaryFileInputBuffer(InputStream input) throws IOException {
 		// reads in an entire input stream and buffers it
 		current = 0;
-		data = new byte[input.available()];
-		size = input.read(data);
+		byte[] bytes = new byte[input.available()];
+		size = Math.max(0, input.read(bytes));
 		input.close();
+		data = ByteBuffer.wrap(bytes, 0, size);
 	}
 
 	@Override
-	public int readBYTE() throws java.io.IOException {
-		// throws java.io.IOException if EOF
-		return (data[current++]&0xFF)&0xFF;
+	public int readBYTE() throws IOException {
+		return getByteAt(current++) & 0xFF;
 	}
 	
 	@Override
 	public byte getByteAt(int fp) {
-		return data[fp];
+		if (patchedPages != null) {
+			byte[] page = patchedPages[fp >>> PAGE_BITS];
+			if (page != null)
+				return page[fp & PAGE_MASK];
+		}
+		return data.get(fp);
+	}
+
+	@Override
+	public int getBytesAt(int fp, byte[] dest, int destPos, int length) {
+		int count = Math.max(0, Math.min(length, size - fp));
+		int copied = 0;
+		while (copied < count) {
+			int pos = fp + copied;
+			int chunk = Math.min(count - copied, PAGE_SIZE - (pos & PAGE_MASK));
+			byte[] page = patchedPages == null ? null : patchedPages[pos >>> PAGE_BITS];
+			if (page != null) {
+				System.arraycopy(page, pos & PAGE_MASK, dest, destPos + copied, chunk);
+			} else {
+				ByteBuffer view = data.duplicate();
+				view.position(pos);
+				view.get(dest, destPos + copied, chunk);
+			}
+			copied += chunk;
+		}
+		return count;
+	}
+
+	/**
+	 * Changes a single byte of the buffered file contents. The file itself is not modified.
+	 * 
+	 * @param fp Address of the byte to change
+	 * @param b the new value
+	 */
+	public void putByteAt(int fp, byte b) {
+		if (fp < 0 || fp >= size)
+			throw new IndexOutOfBoundsException("Cannot patch byte outside of file: " + fp);
+		if (patchedPages == null)
+			patchedPages = new byte[(size + PAGE_SIZE - 1) >>> PAGE_BITS][];
+		int pageIndex = fp >>> PAGE_BITS;
+		byte[] page = patchedPages[pageIndex];
+		if (page == null) {
+			int pageStart = pageIndex << PAGE_BITS;
+			page = new byte[PAGE_SIZE];
+			ByteBuffer view = data.duplicate();
+			view.position(pageStart);
+			view.get(page, 0, Math.min(PAGE_SIZE, size - pageStart));
+			patchedPages[pageIndex] = page;
+		}
+		page[fp & PAGE_MASK] = b;
 	}
 
 	@Override
@@ -59,8 +146,12 @@ public class BinaryFileInputBuffer extends BinaryInputBuffer {
 		return size;
 	}
 
-	public byte[] getByteArray() {
-		return data;
+	/**
+	 * Returns a read only view of the original file contents, without any
+	 * bytes changed through {@link #putByteAt(int, byte)}.
+	 */
+	public ByteBuffer getByteBuffer() {
+		return data.asReadOnlyBuffer();
 	}
 
 }
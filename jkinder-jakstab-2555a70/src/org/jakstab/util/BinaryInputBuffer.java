@@ -140,6 +140,42 @@ public abstract class BinaryInputBuffer {
 	 * @return a signed byte value
 	 */
 	public abstract byte getByteAt(int fp);
+	
+	/**
+	 * Copies bytes from the file into an array without changing the file pointer.
+	 * Stops at the end of the file.
+	 * 
+	 * @param fp Address to start reading from
+	 * @param dest the array to copy to
+	 * @param destPos the start index in the destination array
+	 * @param length the maximum number of bytes to copy
+	 * @return the number of bytes copied
+	 */
+	public int getBytesAt(int fp, byte[] dest, int destPos, int length) {
+		int count = (int)Math.max(0, Math.min(length, getSize() - fp));
+		for (int i = 0; i < count; i++)
+			dest[destPos + i] = getByteAt(fp + i);
+		return count;
+	}
+
+	/**
+	 * Reads a little-endian integer without changing the file pointer. The
+	 * most significant byte is sign-extended.
+	 * 
+	 * @param fp Address to start reading from
+	 * @param bytes the size of the integer in bytes, at most 8
+	 * @return the signed integer value
+	 */
+	public long getINTAt(int fp, int bytes) throws java.io.IOException {
+		if (fp < 0 || fp + bytes > getSize())
+			throw new java.io.IOException("BinaryInputBuffer.getINTAt: Read position outside of file bounds: " + fp);
+		long val = 0;
+		// OR together the least significant bytes
+		for (int i = 0; i < bytes - 1; i++)
+			val |= (getByteAt(fp + i) & 0xFFL) << (i * 8);
+		// do not mask the MSB with 0xFF, so we get sign extension for free
+		return val | ((long)getByteAt(fp + bytes - 1)) << ((bytes - 1) * 8);
+	}
 
 		/**
 	 *  Reads an unsigned 2-byte integer from the file, returned in the lower 2 bytes of an int
@@ -0,0 +1,247 @@
+/*
+ * BytePatternMatcher.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds all occurrences of a set of byte patterns in a single pass over the
+ * input, using an Aho-Corasick automaton. The automaton is compiled into a
+ * complete transition table, so scanning takes one table lookup per byte
+ * regardless of the number of patterns.
+ *
+ * Large ranges are split into chunks that are scanned in parallel. Each chunk
+ * is scanned past its end by the length of the longest pattern, so matches
+ * crossing chunk boundaries are found, and reports only the matches starting
+ * inside it.
+ */
+public final class BytePatternMatcher {
+
+	private static final int CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * An occurrence of a pattern. Matches are ordered by their offset, and
+	 * matches at the same offset by the index of their pattern.
+	 */
+	public static final class Match implements Comparable<Match> {
+		private final int offset;
+		private final int pattern;
+
+		private Match(int offset, int pattern) {
+			this.offset = offset;
+			this.pattern = pattern;
+		}
+
+		public int getOffset() {
+			return offset;
+		}
+
+		public int getPattern() {
+			return pattern;
+		}
+
+		@Override
+		public int compareTo(Match o) {
+			if (offset != o.offset)
+				return offset < o.offset ? -1 : 1;
+			return pattern - o.pattern;
+		}
+
+		@Override
+		public String toString() {
+			return "Pattern " + pattern + " at 0x" + Integer.toHexString(offset);
+		}
+	}
+
+	private final int[] patternLengths;
+	private final int maxPatternLength;
+	/** Transitions of all states, 256 per state. */
+	private final int[] transitions;
+	/** The patterns ending in each state, including those of its suffix states. */
+	private final int[][] outputs;
+
+	public BytePatternMatcher(List<byte[]> patterns) {
+		patternLengths = new int[patterns.size()];
+		int max = 0;
+		int totalLength = 0;
+		for (int i = 0; i < patterns.size(); i++) {
+			if (patterns.get(i).length == 0)
+				throw new IllegalArgumentException("Empty pattern!");
+			patternLengths[i] = patterns.get(i).length;
+			max = Math.max(max, patternLengths[i]);
+			totalLength += patternLengths[i];
+		}
+		maxPatternLength = max;
+
+		// Build the trie, using -1 for missing edges
+		int[] trie = new int[(totalLength + 1) << 8];
+		Arrays.fill(trie, -1);
+		List<List<Integer>> stateOutputs = new ArrayList<List<Integer>>();
+		stateOutputs.add(new ArrayList<Integer>());
+		int stateCount = 1;
+		for (int i = 0; i < patterns.size(); i++) {
+			int state = 0;
+			for (byte b : patterns.get(i)) {
+				int edge = (state << 8) | (b & 0xFF);
+				if (trie[edge] < 0) {
+					trie[edge] = stateCount++;
+					stateOutputs.add(new ArrayList<Integer>());
+				}
+				state = trie[edge];
+			}
+			stateOutputs.get(state).add(i);
+		}
+
+		// Complete the transitions along the failure links in breadth-first order
+		int[] fail = new int[stateCount];
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		for (int c = 0; c < 256; c++) {
+			if (trie[c] < 0) {
+				trie[c] = 0;
+			} else {
+				fail[trie[c]] = 0;
+				queue.add(trie[c]);
+			}
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.removeFirst();
+			stateOutputs.get(state).addAll(stateOutputs.get(fail[state]));
+			for (int c = 0; c < 256; c++) {
+				int edge = (state << 8) | c;
+				int next = trie[edge];
+				int fallback = trie[(fail[state] << 8) | c];
+				if (next < 0) {
+					trie[edge] = fallback;
+				} else {
+					fail[next] = fallback;
+					queue.add(next);
+				}
+			}
+		}
+
+		transitions = Arrays.copyOf(trie, stateCount << 8);
+		outputs = new int[stateCount][];
+		for (int s = 0; s < stateCount; s++) {
+			List<Integer> out = stateOutputs.get(s);
+			outputs[s] = new int[out.size()];
+			for (int i = 0; i < out.size(); i++)
+				outputs[s][i] = out.get(i);
+		}
+	}
+
+	public int getPatternCount() {
+		return patternLengths.length;
+	}
+
+	public int getPatternLength(int pattern) {
+		return patternLengths[pattern];
+	}
+
+	/**
+	 * Finds all occurrences of the patterns that lie completely inside the
+	 * given range of the buffer.
+	 *
+	 * @param data the buffer to search
+	 * @param from the start offset of the range
+	 * @param to the end offset of the range, exclusive
+	 * @param threads the maximum number of threads to use
+	 * @return the matches in ascending order
+	 */
+	public List<Match> findAll(final BinaryInputBuffer data, int from, final int to, int threads) {
+		List<Match> matches;
+		if (threads <= 1 || to - from <= CHUNK_SIZE) {
+			matches = scan(data, from, to, to);
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<List<Match>>> chunks = new ArrayList<Future<List<Match>>>();
+				for (int start = from; start < to; start += CHUNK_SIZE) {
+					final int chunkStart = start;
+					final int chunkEnd = (int)Math.min((long)start + CHUNK_SIZE, to);
+					chunks.add(executor.submit(new Callable<List<Match>>() {
+						@Override
+						public List<Match> call() {
+							return scan(data, chunkStart, chunkEnd, to);
+						}
+					}));
+				}
+				matches = new ArrayList<Match>();
+				for (Future<List<Match>> chunk : chunks)
+					matches.addAll(chunk.get());
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			} finally {
+				executor.shutdown();
+			}
+		}
+		Collections.sort(matches);
+		return matches;
+	}
+
+	/**
+	 * Selects non-overlapping matches from left to right. Of several matches at
+	 * the same offset, the one with the lowest pattern index is selected.
+	 *
+	 * @param matches matches in ascending order
+	 * @return the selected matches in ascending order
+	 */
+	public List<Match> selectNonOverlapping(List<Match> matches) {
+		List<Match> selected = new ArrayList<Match>();
+		long next = Long.MIN_VALUE;
+		for (Match m : matches) {
+			if (m.offset >= next) {
+				selected.add(m);
+				next = (long)m.offset + patternLengths[m.pattern];
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Scans from start to at most limit and reports the matches starting before end.
+	 */
+	private List<Match> scan(BinaryInputBuffer data, int start, int end, int limit) {
+		int length = (int)Math.min((long)end + maxPatternLength - 1, limit) - start;
+		byte[] bytes = new byte[Math.max(0, length)];
+		length = data.getBytesAt(start, bytes, 0, bytes.length);
+
+		List<Match> matches = new ArrayList<Match>();
+		int state = 0;
+		for (int i = 0; i < length; i++) {
+			state = transitions[(state << 8) | (bytes[i] & 0xFF)];
+			for (int pattern : outputs[state]) {
+				int offset = start + i - patternLengths[pattern] + 1;
+				if (offset < end)
+					matches.add(new Match(offset, pattern));
+			}
+		}
+		return matches;
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * CheckedObjectInputStream.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An ObjectInputStream for reading cache files, which only resolves the
+ * classes of instructions, IL statements and expressions, SSL instructions,
+ * and the JDK collections and boxed numbers they use. Cache files may be
+ * written by other users or runs, so reading them must not instantiate
+ * arbitrary serializable classes. Streams referring to any other class fail
+ * with an {@link InvalidClassException}, and callers treat them like other
+ * unreadable cache files.
+ *
+ * Jakstab classes declare a serialVersionUID, so serialization would accept
+ * objects written before fields were added or removed and leave the new
+ * fields at their default values. This stream also fails if the serialized
+ * fields of a Jakstab class in the stream differ from those of the loaded
+ * class, so cache files written by a different version are not used.
+ */
+public class CheckedObjectInputStream extends ObjectInputStream {
+
+	private static final String[] ALLOWED_PACKAGES = {
+		"org.jakstab.asm.",
+		"org.jakstab.rtl.",
+		"org.jakstab.ssl."
+	};
+
+	private static final Set<String> ALLOWED_CLASSES = new HashSet<String>(Arrays.asList(
+			"org.jakstab.cfa.RTLLabel",
+			"java.lang.Boolean",
+			"java.lang.Byte",
+			"java.lang.Character",
+			"java.lang.Enum",
+			"java.lang.Integer",
+			"java.lang.Long",
+			"java.lang.Number",
+			"java.lang.Short",
+			"java.util.ArrayList",
+			"java.util.BitSet",
+			"java.util.HashMap",
+			"java.util.HashSet",
+			"java.util.LinkedHashMap",
+			"java.util.LinkedHashSet",
+			"java.util.LinkedList",
+			"java.util.TreeMap",
+			"java.util.TreeSet"
+	));
+
+	public CheckedObjectInputStream(InputStream in) throws IOException {
+		super(in);
+	}
+
+	/**
+	 * Returns whether objects of the named class may be read. Arrays may be
+	 * read if they hold primitive values or objects of allowed classes.
+	 */
+	static boolean isAllowed(String name) {
+		int dims = 0;
+		while (dims < name.length() && name.charAt(dims) == '[')
+			dims++;
+		if (dims > 0) {
+			// Primitive arrays have a single type code after the brackets
+			if (name.length() == dims + 1)
+				return true;
+			if (name.charAt(dims) != 'L' || !name.endsWith(";"))
+				return false;
+			name = name.substring(dims + 1, name.length() - 1);
+		}
+		if (ALLOWED_CLASSES.contains(name))
+			return true;
+		for (String p : ALLOWED_PACKAGES)
+			if (name.startsWith(p))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns whether two class descriptors have the same serialized fields.
+	 * Both list their fields in the same canonical order.
+	 */
+	static boolean sameFields(ObjectStreamClass a, ObjectStreamClass b) {
+		ObjectStreamField[] fa = a.getFields();
+		ObjectStreamField[] fb = b.getFields();
+		if (fa.length != fb.length)
+			return false;
+		for (int i = 0; i < fa.length; i++) {
+			if (!fa[i].getName().equals(fb[i].getName()) || fa[i].getTypeCode() != fb[i].getTypeCode())
+				return false;
+			String ta = fa[i].getTypeString();
+			String tb = fb[i].getTypeString();
+			if (ta == null ? tb != null : !ta.equals(tb))
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+		if (!isAllowed(desc.getName()))
+			throw new InvalidClassException(desc.getName(), "Class not allowed in cache files");
+		Class<?> c = super.resolveClass(desc);
+		if (desc.getName().startsWith("org.jakstab.")) {
+			ObjectStreamClass local = ObjectStreamClass.lookup(c);
+			if (local == null || !sameFields(desc, local))
+				throw new InvalidClassException(desc.getName(), "Serialized fields have changed");
+		}
+		return c;
+	}
+
+	@Override
+	protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+		throw new InvalidClassException("Proxy classes not allowed in cache files");
+	}
+
+}
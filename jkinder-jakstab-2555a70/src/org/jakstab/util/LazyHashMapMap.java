@@ -18,11 +18,17 @@
 package org.jakstab.util;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jakstab.util.Logger;
 
 /**
  * HashMapMap with lazy copying. I.e., only copies submaps if they are modified.
+ * Sharing works on two levels: A copy shares the map from left keys to submaps
+ * with its prototype until either of them is modified. Copying that map 
+ * only creates new LazyTreeMaps for the submaps, which in turn share their
+ * contents until they are modified. So a write to one submap never copies the 
+ * contents of the others.
  * 
  * @author Johannes Kinder
  */
@@ -30,21 +36,29 @@ public final class LazyHashMapMap<K, L, V> implements MapMap<K,L,V> {
 
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(LazyHashMapMap.class);
+	
+	private static final AtomicLong copies = new AtomicLong();
+	
+	/**
+	 * Returns the number of times the map from left keys to submaps had to be
+	 * copied because a shared LazyHashMapMap was modified. Copies of the submaps
+	 * are counted by {@link LazyTreeMap#getCopyCount()}.
+	 */
+	public static long getCopyCount() {
+		return copies.get();
+	}
 
-	private static final class ReferenceCountingHashMapMap<M, N, W> extends HashMapMap<M, N, W> {
+	private static final class SubMapSharingHashMapMap<M, N, W> extends HashMapMap<M, N, W> {
 
-		private int referenceCount;
 		private int hashCode = 0;
 		
-		public ReferenceCountingHashMapMap() {
+		public SubMapSharingHashMapMap() {
 			super();
-			referenceCount = 1;
 		}
 
-		public ReferenceCountingHashMapMap(
-				ReferenceCountingHashMapMap<M, N, W> innerMap) {
+		public SubMapSharingHashMapMap(
+				SubMapSharingHashMapMap<M, N, W> innerMap) {
 			super(innerMap);
-			referenceCount = 1;
 		}
 		
 		protected Map<N, W> createSubMap() {
@@ -54,46 +68,44 @@ public final class LazyHashMapMap<K, L, V> implements MapMap<K,L,V> {
 		protected Map<N, W> createSubMap(Map<N, W> proto) {
 			return new LazyTreeMap<N, W>((LazyTreeMap<N, W>)proto);
 		}
-		
-		public void addRef() {
-			referenceCount++;
-		}
-		
-		public void release() {
-			referenceCount--;
-		}
-		
-		public boolean isShared() {
-			return referenceCount > 1;
-		}
 
 	}
 	
 	public LazyHashMapMap() {
-		this.innerMap = new ReferenceCountingHashMapMap<K, L, V>();
+		this.innerMap = new SubMapSharingHashMapMap<K, L, V>();
+		this.shared = false;
 	}
 	
 	public LazyHashMapMap(LazyHashMapMap<K, L, V> proto) {
 		this.innerMap = proto.innerMap;
-		this.innerMap.addRef();
+		proto.shared = true;
+		this.shared = true;
 	}
 
-	private ReferenceCountingHashMapMap<K, L, V> innerMap;
+	private SubMapSharingHashMapMap<K, L, V> innerMap;
+	private boolean shared;
 
 	public boolean makeExclusive() {
-		if (innerMap.isShared()) {
-			innerMap.release();
-			innerMap = new ReferenceCountingHashMapMap<K, L, V>(innerMap);
-			assert !innerMap.isShared();
+		if (shared) {
+			innerMap = new SubMapSharingHashMapMap<K, L, V>(innerMap);
+			shared = false;
+			copies.incrementAndGet();
 			return true;
 		}
+		// Called before all updates to the inner map, so reset cached hashcode 
+		innerMap.hashCode = 0;
 		return false;
 	}
 
 	@Override
 	public void clear() {
-		makeExclusive();
-		innerMap.clear();
+		if (shared) {
+			innerMap = new SubMapSharingHashMapMap<K, L, V>();
+			shared = false;
+		} else {
+			innerMap.clear();
+			innerMap.hashCode = 0;
+		}
 	}
 
 	@Override
@@ -119,6 +131,18 @@ public final class LazyHashMapMap<K, L, V> implements MapMap<K,L,V> {
 		return Collections.unmodifiableMap(subMap);
 	}
 	
+	/**
+	 * Returns the entry of the submap for the left key that has the greatest
+	 * right key less than or equal to the given right key.
+	 *
+	 * @return the entry, or null if there is no such entry.
+	 */
+	public Map.Entry<L, V> floorEntry(K keyLeft, L keyRight) {
+		LazyTreeMap<L, V> subMap = (LazyTreeMap<L, V>)innerMap.getSubMap(keyLeft);
+		if (subMap == null) return null;
+		return subMap.floorEntry(keyRight);
+	}
+
 	public Iterator<Map.Entry<L, V>> subMapIterator(K keyLeft) {
 		Map<L, V> subMap;
 		if (innerMap.containsLeftKey(keyLeft)) {
@@ -145,6 +169,10 @@ public final class LazyHashMapMap<K, L, V> implements MapMap<K,L,V> {
 
 	@Override
 	public V put(K keyLeft, L keyRight, V value) {
+		// Do not copy the inner map if nothing changes
+		V oldValue = innerMap.get(keyLeft, keyRight);
+		if (oldValue != null && oldValue == value)
+			return oldValue;
 		makeExclusive();
 		return innerMap.put(keyLeft, keyRight, value);
 	}
@@ -157,12 +185,16 @@ public final class LazyHashMapMap<K, L, V> implements MapMap<K,L,V> {
 
 	@Override
 	public V remove(K keyLeft, L keyRight) {
+		if (!innerMap.containsKey(keyLeft, keyRight))
+			return null;
 		makeExclusive();
 		return innerMap.remove(keyLeft, keyRight);
 	}
 
 	@Override
 	public void remove(K keyLeft) {
+		if (!innerMap.containsLeftKey(keyLeft))
+			return;
 		makeExclusive();
 		innerMap.remove(keyLeft);
 	}
@@ -191,12 +223,6 @@ public final class LazyHashMapMap<K, L, V> implements MapMap<K,L,V> {
 		return innerMap.toString();
 	}
 
-	@Override
-	protected void finalize() throws Throwable {
-		innerMap.release();
-		super.finalize();
-	}
-
 	@Override
 	public EntryIterator<K, L, V> entryIterator() {
 		return innerMap.entryIterator();
@@ -18,10 +18,16 @@
 package org.jakstab.util;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jakstab.util.Logger;
 
 /**
+ * TreeMap with lazy copying. A copy shares the inner map with its prototype 
+ * until either of them is modified. Instead of counting references, both 
+ * the copy and the prototype are marked as shared, so copies can be created 
+ * concurrently from different threads and no finalizer is needed. 
+ * 
  * @author Johannes Kinder
  */
 public class LazyTreeMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
@@ -29,64 +35,66 @@ public class LazyTreeMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(LazyTreeMap.class);
 	
-	private class ReferenceCountingTreeMap<L, W> extends TreeMap<L, W> {
+	private static final AtomicLong copies = new AtomicLong();
+	
+	/**
+	 * Returns the number of times an inner map had to be copied because a 
+	 * shared LazyTreeMap was modified.
+	 */
+	public static long getCopyCount() {
+		return copies.get();
+	}
+	
+	private static final class HashCachingTreeMap<L, W> extends TreeMap<L, W> {
 		private static final long serialVersionUID = -6043771577607149364L;
-		private int referenceCount;
 		private int hashCode = 0;
 		
-		public ReferenceCountingTreeMap() {
+		public HashCachingTreeMap() {
 			super();
-			referenceCount = 1;
 		}
 
-		public ReferenceCountingTreeMap(ReferenceCountingTreeMap<L, W> innerMap) {
+		public HashCachingTreeMap(HashCachingTreeMap<L, W> innerMap) {
 			super(innerMap);
-			referenceCount = 1;
-		}
-		
-		public void addRef() {
-			referenceCount++;
-		}
-		
-		public void release() {
-			referenceCount--;
-		}
-		
-		public boolean isShared() {
-			return referenceCount > 1;
 		}
 	}
 	
-	private ReferenceCountingTreeMap<K, V> innerMap;
+	private HashCachingTreeMap<K, V> innerMap;
+	private boolean shared;
 	private transient Set<Map.Entry<K, V>> entries;
 	
 	public LazyTreeMap() {
-		innerMap = new ReferenceCountingTreeMap<K, V>();
+		innerMap = new HashCachingTreeMap<K, V>();
+		shared = false;
 	}
 	
 	public LazyTreeMap(LazyTreeMap<K, V> other) {
 		innerMap = other.innerMap;
-		innerMap.addRef();
+		other.shared = true;
+		shared = true;
 	}
 	
 	private boolean makeExclusive() {
-		// makeExclsusive is called before all updates to inner map, 
-		// so reset cached hashcode
-		innerMap.hashCode = 0;
-		
-		if (innerMap.isShared()) {
-			innerMap.release();
-			innerMap = new ReferenceCountingTreeMap<K, V>(innerMap);
-			assert !innerMap.isShared();
+		if (shared) {
+			innerMap = new HashCachingTreeMap<K, V>(innerMap);
+			shared = false;
+			copies.incrementAndGet();
 			return true;
 		}
+		// makeExclusive is called before all updates to inner map, 
+		// so reset cached hashcode
+		innerMap.hashCode = 0;
 		return false;
 	}
 	
 	@Override
 	public void clear() {
-		makeExclusive();
-		innerMap.clear();
+		if (shared) {
+			innerMap = new HashCachingTreeMap<K, V>();
+			shared = false;
+		} else {
+			innerMap.clear();
+			innerMap.hashCode = 0;
+		}
 	}
 
 	@Override
@@ -94,14 +102,30 @@ public class LazyTreeMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
 		return innerMap.get(key);
 	}
 
+	/**
+	 * Returns the entry with the greatest key less than or equal to the
+	 * given key, or null if there is no such key.
+	 *
+	 * @see TreeMap#floorEntry(Object)
+	 */
+	public Map.Entry<K, V> floorEntry(K key) {
+		return innerMap.floorEntry(key);
+	}
+
 	@Override
 	public V put(K key, V value) {
+		// Do not copy the inner map if nothing changes
+		V oldValue = innerMap.get(key);
+		if (oldValue != null && oldValue == value)
+			return oldValue;
 		makeExclusive();
 		return innerMap.put(key, value);
 	}
 
 	@Override
 	public V remove(Object key) {
+		if (!innerMap.containsKey(key))
+			return null;
 		makeExclusive();
 		return innerMap.remove(key);
 	}
@@ -141,12 +165,6 @@ public class LazyTreeMap<K, V> extends AbstractMap<K, V> implements Map<K, V> {
 		return innerMap.isEmpty();
 	}
 
-	@Override
-	protected void finalize() throws Throwable {
-		innerMap.release();
-		super.finalize();
-	}
-
 	@Override
 	public Set<Map.Entry<K, V>> entrySet() {
 		if (entries == null)
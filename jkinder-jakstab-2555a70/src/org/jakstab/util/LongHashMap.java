@@ -0,0 +1,144 @@
+/*
+ * LongHashMap.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive long keys to objects, using open addressing
+ * with linear probing. Keys are stored unboxed in a flat array, so lookups
+ * do not allocate. Null values are not supported; a null value marks an
+ * empty slot. Entries cannot be removed.
+ */
+public class LongHashMap<V> {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	/** Cache of the sorted keys, null if entries were added since it was created. */
+	private long[] sortedKeys;
+
+	public LongHashMap(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < 2 * expectedSize)
+			capacity <<= 1;
+		keys = new long[capacity];
+		values = new Object[capacity];
+	}
+
+	public LongHashMap() {
+		this(MIN_CAPACITY / 2);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		long[] keys = this.keys;
+		Object[] values = this.values;
+		int mask = keys.length - 1;
+		for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key)
+				return (V)values[i];
+		}
+		return null;
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Associates the value with the key, replacing any previous value.
+	 *
+	 * @param value a non-null value
+	 * @return the previous value for the key, or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null)
+			throw new NullPointerException("Null values are not supported!");
+		int mask = keys.length - 1;
+		int i = slot(key, mask);
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V old = (V)values[i];
+				values[i] = value;
+				return old;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		sortedKeys = null;
+		if (++size > keys.length / 2)
+			resize();
+		return null;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Returns all keys in ascending order. The array is shared between
+	 * calls until the next entry is added and must not be modified.
+	 */
+	public long[] sortedKeys() {
+		long[] sorted = sortedKeys;
+		if (sorted == null) {
+			sorted = new long[size];
+			int n = 0;
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] != null)
+					sorted[n++] = keys[i];
+			}
+			Arrays.sort(sorted);
+			sortedKeys = sorted;
+		}
+		return sorted;
+	}
+
+	private void resize() {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		long[] newKeys = new long[oldKeys.length * 2];
+		Object[] newValues = new Object[oldValues.length * 2];
+		int mask = newKeys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] == null)
+				continue;
+			int i = slot(oldKeys[j], mask);
+			while (newValues[i] != null)
+				i = (i + 1) & mask;
+			newKeys[i] = oldKeys[j];
+			newValues[i] = oldValues[j];
+		}
+		keys = newKeys;
+		values = newValues;
+	}
+
+	private static int slot(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & mask;
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * ChunkedVariableMapTest.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.util.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChunkedVariableMapTest {
+
+	@SuppressWarnings("unused")
+	private static final Logger logger = Logger
+			.getLogger(ChunkedVariableMapTest.class);
+
+	private RTLVariable[] vars;
+	private ChunkedVariableMap<Integer> map1;
+	private ChunkedVariableMap<Integer> map2;
+
+	@Before
+	public void setUp() throws Exception {
+		// Use register names to not create additional variables
+		String[] names = {"eax", "ebx", "ecx", "edx", "esi", "edi", "esp", "ebp"};
+		vars = new RTLVariable[names.length + 1];
+		vars[0] = ExpressionFactory.pc;
+		for (int i = 0; i < names.length; i++)
+			vars[i + 1] = ExpressionFactory.createVariable(names[i], 32);
+		map1 = new ChunkedVariableMap<Integer>();
+		map1.put(vars[0], 0);
+		map1.put(vars[5], 5);
+		map1.put(vars[8], 8);
+		map2 = new ChunkedVariableMap<Integer>(map1);
+	}
+
+	@Test
+	public void testCopyOnWrite() {
+		map2.put(vars[5], 50);
+		map2.remove(vars[0]);
+		map2.put(vars[7], 7);
+		assertEquals(5, map1.get(vars[5]).intValue());
+		assertEquals(0, map1.get(vars[0]).intValue());
+		assertNull(map1.get(vars[7]));
+		assertEquals(3, map1.size());
+		assertEquals(50, map2.get(vars[5]).intValue());
+		assertNull(map2.get(vars[0]));
+		assertEquals(3, map2.size());
+	}
+
+	@Test
+	public void testPrototypeWrite() {
+		map1.put(vars[8], 80);
+		assertEquals(8, map2.get(vars[8]).intValue());
+		assertEquals(80, map1.get(vars[8]).intValue());
+	}
+
+	@Test
+	public void testCopyOfCopy() {
+		ChunkedVariableMap<Integer> map3 = new ChunkedVariableMap<Integer>(map2);
+		map2.put(vars[8], 80);
+		map3.put(vars[5], 50);
+		map1.put(vars[0], 1);
+		assertEquals(8, map1.get(vars[8]).intValue());
+		assertEquals(5, map1.get(vars[5]).intValue());
+		assertEquals(80, map2.get(vars[8]).intValue());
+		assertEquals(5, map2.get(vars[5]).intValue());
+		assertEquals(0, map2.get(vars[0]).intValue());
+		assertEquals(8, map3.get(vars[8]).intValue());
+		assertEquals(50, map3.get(vars[5]).intValue());
+		assertEquals(0, map3.get(vars[0]).intValue());
+	}
+
+	private static boolean sameChunk(RTLVariable a, RTLVariable b) {
+		return a.getIndex() / ChunkedVariableMap.CHUNK_SIZE == b.getIndex() / ChunkedVariableMap.CHUNK_SIZE;
+	}
+
+	@Test
+	public void testCopiesShareChunks() {
+		for (int i = 0; i < vars.length; i++)
+			map1.put(vars[i], i);
+		// A chain of copies, each writing one variable
+		ChunkedVariableMap<Integer> prev = map1;
+		for (int i = 0; i < vars.length; i++) {
+			ChunkedVariableMap<Integer> copy = new ChunkedVariableMap<Integer>(prev);
+			for (RTLVariable v : vars)
+				assertTrue(copy.sharesChunk(prev, v));
+			copy.put(vars[i], 10 + i);
+			for (RTLVariable v : vars) {
+				// Only the written chunk is copied
+				assertEquals(!sameChunk(v, vars[i]), copy.sharesChunk(prev, v));
+				// Chunks not written anywhere along the chain are still shared with the first map
+				boolean written = false;
+				for (int j = 0; j <= i; j++)
+					written |= sameChunk(v, vars[j]);
+				assertEquals(!written, copy.sharesChunk(map1, v));
+			}
+			assertEquals(i, prev.get(vars[i]).intValue());
+			prev = copy;
+		}
+		// The prototype gives up its chunks, so it copies them when writing, too
+		map2 = new ChunkedVariableMap<Integer>(map1);
+		map1.put(vars[8], 80);
+		for (RTLVariable v : vars)
+			assertEquals(!sameChunk(v, vars[8]), map1.sharesChunk(map2, v));
+		assertEquals(8, map2.get(vars[8]).intValue());
+	}
+
+	@Test
+	public void testEquals() {
+		assertEquals(map1, map2);
+		assertEquals(map1.hashCode(), map2.hashCode());
+		ChunkedVariableMap<Integer> map3 = new ChunkedVariableMap<Integer>();
+		map3.put(vars[8], 8);
+		map3.put(vars[5], 5);
+		map3.put(vars[0], 0);
+		assertEquals(map1, map3);
+		assertEquals(map1.hashCode(), map3.hashCode());
+		map2.put(vars[5], 6);
+		assertFalse(map1.equals(map2));
+		map2.put(vars[5], 5);
+		assertEquals(map1, map2);
+		map2.put(vars[3], 3);
+		map2.remove(vars[3]);
+		assertEquals(map1, map2);
+	}
+
+	@Test
+	public void testIteratorMatchesTreeMap() {
+		TreeMap<RTLVariable, Integer> treeMap = new TreeMap<RTLVariable, Integer>();
+		for (Map.Entry<RTLVariable, Integer> e : map1)
+			treeMap.put(e.getKey(), e.getValue());
+		assertEquals(treeMap.hashCode(), map1.hashCode());
+		assertEquals(treeMap.toString(), map1.toString());
+		Iterator<Map.Entry<RTLVariable, Integer>> it = map1.iterator();
+		for (Map.Entry<RTLVariable, Integer> e : treeMap.entrySet())
+			assertEquals(e, it.next());
+		assertFalse(it.hasNext());
+		assertFalse(new ChunkedVariableMap<Integer>().iterator().hasNext());
+	}
+
+}
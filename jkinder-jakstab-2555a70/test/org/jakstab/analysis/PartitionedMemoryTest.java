@@ -209,4 +209,23 @@ public class PartitionedMemoryTest {
 		assertEquals(dComb, store.get(MemoryRegion.STACK, 16, 32));
 	}
 
+	@Test
+	public void testPartialOverwrite() {
+		PartitionedMemory<NumberElement> store = new PartitionedMemory<NumberElement>(
+				valueFactory);
+		NumberElement b7 = new NumberElement(ExpressionFactory.createNumber(7, 8));
+		
+		store.set(alloc1, 16, 32, n32);
+		store.set(alloc1, 20, 32, n32b);
+		store.set(alloc1, 19, 16, n16);
+		assertEquals(n16, store.get(alloc1, 19, 16));
+		assertTrue(store.get(alloc1, 16, 32).isTop());
+		assertTrue(store.get(alloc1, 21, 8).isTop());
+		assertTrue(store.get(alloc1, 22, 16).isTop());
+
+		store.set(alloc1, 20, 8, b7);
+		assertEquals(b7, store.get(alloc1, 20, 8));
+		assertTrue(store.get(alloc1, 19, 8).isTop());
+	}
+
 }
@@ -0,0 +1,135 @@
+/*
+ * SparsePropagationTest.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.analysis;
+
+import static org.jakstab.cfa.CFAFixture.*;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.cfa.CompactCFG;
+import org.jakstab.cfa.DominatorTree;
+import org.jakstab.cfa.SSAForm;
+import org.jakstab.rtl.Context;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLExpression;
+import org.jakstab.rtl.expressions.RTLNumber;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.rtl.statements.RTLStatement;
+import org.jakstab.rtl.statements.RTLVariableAssignment;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SparsePropagationTest {
+
+	private static final Long TOP = Long.MIN_VALUE;
+
+	/**
+	 * Constant propagation, with Long.MIN_VALUE for unknown values.
+	 */
+	private static class ConstantPropagation extends SparsePropagation<Long> {
+
+		public ConstantPropagation(SSAForm ssa) {
+			super(ssa);
+		}
+
+		@Override
+		protected Long getEntryValue(RTLVariable v) {
+			return TOP;
+		}
+
+		@Override
+		protected Long evaluate(int definition, int edge, RTLStatement stmt, RTLVariable v) {
+			if (!(stmt instanceof RTLVariableAssignment) ||
+					!((RTLVariableAssignment)stmt).getLeftHandSide().equals(v))
+				return TOP;
+			Context ctx = new Context();
+			for (RTLVariable x : stmt.getUsedVariables()) {
+				Long value = getValue(edge, x);
+				if (!value.equals(TOP))
+					ctx.addAssignment(x, ExpressionFactory.createNumber(value, x.getBitWidth()));
+			}
+			RTLExpression result = ((RTLVariableAssignment)stmt).getRightHandSide().evaluate(ctx);
+			return result instanceof RTLNumber ? ((RTLNumber)result).longValue() : TOP;
+		}
+
+		@Override
+		protected Long join(Long a, Long b) {
+			return a.equals(b) ? a : TOP;
+		}
+	}
+
+	private RTLVariable esi;
+	private RTLVariable edi;
+	private RTLVariable ebp;
+	private CompactCFG graph;
+	private SSAForm ssa;
+	private ConstantPropagation analysis;
+
+	@Before
+	public void setUp() throws Exception {
+		esi = ExpressionFactory.createVariable("esi", 32);
+		edi = ExpressionFactory.createVariable("edi", 32);
+		ebp = ExpressionFactory.createVariable("ebp", 32);
+		Set<CFAEdge> edges = new HashSet<CFAEdge>();
+		edges.add(edge(0, 1, esi, number(1)));
+		edges.add(edge(1, 2, edi, ExpressionFactory.createPlus(esi, 2)));
+		edges.add(edge(2, 3, ebp, edi));
+		// A diamond assigning the same constant on both branches
+		edges.add(edge(3, 4, esi, number(5)));
+		edges.add(edge(3, 5, esi, number(5)));
+		edges.add(edge(4, 6));
+		edges.add(edge(5, 6));
+		// A loop incrementing esi
+		edges.add(edge(6, 7, edi, esi));
+		edges.add(edge(7, 7, esi, ExpressionFactory.createPlus(esi, 1)));
+		edges.add(edge(7, 8, ebp, edi));
+		graph = new CompactCFG(edges);
+		ssa = new SSAForm(new DominatorTree(graph, 0));
+		analysis = new ConstantPropagation(ssa);
+		analysis.run();
+	}
+
+	private static RTLNumber number(long value) {
+		return ExpressionFactory.createNumber(value, 32);
+	}
+
+	private Long valueAfter(int src, int tgt, RTLVariable v) {
+		return analysis.getValue(ssa.getDefinition(graph.findEdge(src, tgt), v));
+	}
+
+	@Test
+	public void testStraightLine() {
+		assertEquals(Long.valueOf(1), valueAfter(0, 1, esi));
+		assertEquals(Long.valueOf(3), valueAfter(1, 2, edi));
+		assertEquals(Long.valueOf(3), valueAfter(2, 3, ebp));
+		assertEquals(Long.valueOf(3), analysis.getValue(graph.findEdge(2, 3), edi));
+	}
+
+	@Test
+	public void testJoins() {
+		assertEquals(Long.valueOf(5), valueAfter(6, 7, edi));
+		// The loop counter is unknown, but edi is not changed in the loop
+		assertEquals(TOP, valueAfter(7, 7, esi));
+		assertEquals(Long.valueOf(5), valueAfter(7, 8, ebp));
+		assertTrue(analysis.getEvaluationCount() >= ssa.getDefinitionCount());
+	}
+
+}
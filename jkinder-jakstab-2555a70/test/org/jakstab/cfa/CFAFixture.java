@@ -0,0 +1,74 @@
+/*
+ * CFAFixture.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.cfa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLExpression;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.rtl.statements.RTLAssume;
+import org.jakstab.rtl.statements.RTLGoto;
+import org.jakstab.rtl.statements.RTLSkip;
+import org.jakstab.rtl.statements.RTLStatement;
+import org.jakstab.rtl.statements.RTLVariableAssignment;
+
+/**
+ * Edges and statements for writing small CFAs in tests. Location i is the
+ * label at address 0x401000 + i, so graphs built from these edges number
+ * their locations like the tests do. The same label object is returned for
+ * each location.
+ */
+public final class CFAFixture {
+
+	private static final long BASE_ADDRESS = 0x401000;
+	private static final List<RTLLabel> labels = new ArrayList<RTLLabel>();
+
+	private CFAFixture() {
+	}
+
+	public static RTLLabel label(int i) {
+		while (labels.size() <= i)
+			labels.add(new RTLLabel(new AbsoluteAddress(BASE_ADDRESS + labels.size())));
+		return labels.get(i);
+	}
+
+	public static CFAEdge edge(int src, int tgt, RTLStatement stmt) {
+		return new CFAEdge(label(src), label(tgt), stmt);
+	}
+
+	public static CFAEdge edge(int src, int tgt) {
+		return edge(src, tgt, new RTLSkip());
+	}
+
+	public static CFAEdge edge(int src, int tgt, RTLVariable lhs, RTLExpression rhs) {
+		return edge(src, tgt, assign(lhs, rhs));
+	}
+
+	public static RTLStatement assign(RTLVariable lhs, RTLExpression rhs) {
+		return new RTLVariableAssignment(lhs.getBitWidth(), lhs, rhs);
+	}
+
+	public static RTLStatement assume(RTLExpression condition) {
+		return new RTLAssume(condition, new RTLGoto(ExpressionFactory.createNumber(BASE_ADDRESS, 32),
+				condition, RTLGoto.Type.JUMP));
+	}
+
+}
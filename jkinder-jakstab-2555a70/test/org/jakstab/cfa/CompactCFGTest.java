@@ -0,0 +1,85 @@
+/*
+ * CompactCFGTest.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.cfa;
+
+import static org.jakstab.cfa.CFAFixture.*;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jakstab.asm.AbsoluteAddress;
+import org.jakstab.rtl.statements.RTLSkip;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompactCFGTest {
+
+	private CompactCFG graph;
+
+	@Before
+	public void setUp() throws Exception {
+		// A diamond 0 -> {1, 2} -> 3 with a back edge 3 -> 0
+		Set<CFAEdge> edges = new HashSet<CFAEdge>();
+		edges.add(edge(0, 2));
+		edges.add(edge(2, 3));
+		edges.add(edge(0, 1));
+		edges.add(edge(3, 0));
+		edges.add(new CFAEdge(label(1), label(3), new RTLSkip(), CFAEdge.Kind.MUST));
+		graph = new CompactCFG(edges);
+	}
+
+	@Test
+	public void testLocations() {
+		assertEquals(4, graph.getLocationCount());
+		assertEquals(5, graph.getEdgeCount());
+		for (int i = 0; i < graph.getLocationCount(); i++) {
+			assertEquals(i, graph.getId(label(i)));
+			assertSame(label(i), graph.getLocation(i));
+		}
+		assertEquals(-1, graph.getId(new RTLLabel(new AbsoluteAddress(0x402000))));
+	}
+
+	@Test
+	public void testOutEdges() {
+		assertEquals(2, graph.getOutDegree(0));
+		assertEquals(1, graph.getOutDegree(3));
+		int e = graph.getOutEdgeStart(0);
+		assertEquals(1, graph.getTarget(e));
+		assertEquals(2, graph.getTarget(e + 1));
+		assertEquals(e + 2, graph.getOutEdgeEnd(0));
+		assertEquals(0, graph.getSource(e + 1));
+		assertEquals(-1, graph.findEdge(0, 3));
+		int must = graph.findEdge(1, 3);
+		assertEquals(CFAEdge.Kind.MUST, graph.getKind(must));
+		assertEquals(CFAEdge.Kind.MAY, graph.getKind(e));
+		assertEquals(label(3), graph.createEdge(must).getTarget());
+	}
+
+	@Test
+	public void testInEdges() {
+		assertEquals(2, graph.getInDegree(3));
+		assertEquals(1, graph.getInDegree(0));
+		int i = graph.getInEdgeStart(3);
+		assertEquals(1, graph.getSource(graph.getInEdge(i)));
+		assertEquals(2, graph.getSource(graph.getInEdge(i + 1)));
+		assertEquals(i + 2, graph.getInEdgeEnd(3));
+		assertEquals(3, graph.getSource(graph.getInEdge(graph.getInEdgeStart(0))));
+	}
+
+}
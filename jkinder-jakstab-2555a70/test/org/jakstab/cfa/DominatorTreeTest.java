@@ -0,0 +1,133 @@
+/*
+ * DominatorTreeTest.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.cfa;
+
+import static org.jakstab.cfa.CFAFixture.*;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class DominatorTreeTest {
+
+	/**
+	 * Creates a graph with locations numbered like their ids from pairs of
+	 * source and target.
+	 */
+	private static CompactCFG graph(int... pairs) {
+		Set<CFAEdge> edges = new HashSet<CFAEdge>();
+		for (int i = 0; i < pairs.length; i += 2)
+			edges.add(edge(pairs[i], pairs[i + 1]));
+		return new CompactCFG(edges);
+	}
+
+	private static Set<Integer> frontier(DominatorTree tree, int id) {
+		Set<Integer> result = new HashSet<Integer>();
+		for (int i = tree.getFrontierStart(id); i < tree.getFrontierEnd(id); i++)
+			result.add(tree.getFrontier(i));
+		return result;
+	}
+
+	@Test
+	public void testDiamond() {
+		// A diamond 0 -> {1, 2} -> 3 with a back edge 3 -> 0, and 4 -> 3 unreachable
+		CompactCFG g = graph(0, 1, 0, 2, 1, 3, 2, 3, 3, 0, 4, 3);
+		DominatorTree tree = new DominatorTree(g, 0);
+		assertEquals(-1, tree.getImmediateDominator(0));
+		assertEquals(0, tree.getImmediateDominator(1));
+		assertEquals(0, tree.getImmediateDominator(2));
+		assertEquals(0, tree.getImmediateDominator(3));
+		assertTrue(tree.dominates(0, 3));
+		assertTrue(tree.dominates(3, 3));
+		assertFalse(tree.dominates(1, 3));
+		assertFalse(tree.dominates(3, 0));
+		assertEquals(3, tree.getChildEnd(0) - tree.getChildStart(0));
+		assertEquals(4, tree.getReachableCount());
+		assertEquals(0, tree.getLocationInOrder(0));
+
+		assertFalse(tree.isReachable(4));
+		assertFalse(tree.dominates(0, 4));
+		assertEquals(-1, tree.getImmediateDominator(4));
+
+		assertEquals(setOf(3), frontier(tree, 1));
+		assertEquals(setOf(3), frontier(tree, 2));
+		assertEquals(setOf(0), frontier(tree, 3));
+		assertEquals(setOf(0), frontier(tree, 0));
+	}
+
+	@Test
+	public void testIrreducible() {
+		// Both 1 and 2 can be entered from 0, so the cycle between them has no head
+		CompactCFG g = graph(0, 1, 0, 2, 1, 2, 2, 1, 1, 3, 2, 3);
+		DominatorTree tree = new DominatorTree(g, 0);
+		for (int v = 1; v <= 3; v++)
+			assertEquals(0, tree.getImmediateDominator(v));
+		assertFalse(tree.dominates(1, 2));
+		assertFalse(tree.dominates(2, 1));
+		assertEquals(setOf(1, 3), frontier(tree, 2));
+
+		DominatorTree post = DominatorTree.createPostDominatorTree(g);
+		assertTrue(post.isPostDominatorTree());
+		int exit = g.getLocationCount();
+		assertEquals(exit, post.getRoot());
+		assertEquals(exit, post.getImmediateDominator(3));
+		for (int v = 0; v <= 2; v++)
+			assertEquals(3, post.getImmediateDominator(v));
+		assertTrue(post.dominates(3, 0));
+		assertFalse(post.dominates(1, 0));
+	}
+
+	@Test
+	public void testPostDominators() {
+		// 0 branches to 1 and 2, which join in 3; 2 branches to the exit 4 as well
+		CompactCFG g = graph(0, 1, 0, 2, 1, 3, 2, 3, 2, 4, 3, 4);
+		DominatorTree post = DominatorTree.createPostDominatorTree(g);
+		assertEquals(3, post.getImmediateDominator(1));
+		assertEquals(4, post.getImmediateDominator(2));
+		assertEquals(4, post.getImmediateDominator(0));
+		assertEquals(5, post.getImmediateDominator(4));
+		// Control dependences
+		assertEquals(setOf(0), frontier(post, 1));
+		assertEquals(setOf(0, 2), frontier(post, 3));
+		assertEquals(setOf(0), frontier(post, 2));
+	}
+
+	@Test
+	public void testInfiniteLoop() {
+		// The loop 1 <-> 2 never reaches the exit 3
+		CompactCFG g = graph(0, 1, 1, 2, 2, 1, 0, 3);
+		DominatorTree post = DominatorTree.createPostDominatorTree(g);
+		int exit = g.getLocationCount();
+		for (int v = 0; v < g.getLocationCount(); v++)
+			assertTrue(post.isReachable(v));
+		assertEquals(exit, post.getImmediateDominator(2));
+		assertEquals(2, post.getImmediateDominator(1));
+		assertEquals(exit, post.getImmediateDominator(0));
+		assertEquals(exit, post.getImmediateDominator(3));
+	}
+
+	private static Set<Integer> setOf(Integer... values) {
+		Set<Integer> result = new HashSet<Integer>();
+		for (Integer v : values)
+			result.add(v);
+		return result;
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+ * SSAFormTest.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.cfa;
+
+import static org.jakstab.cfa.CFAFixture.*;
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.rtl.statements.RTLMemoryAssignment;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SSAFormTest {
+
+	private RTLVariable esi;
+	private RTLVariable edi;
+	private RTLVariable ebp;
+	private CompactCFG graph;
+	private SSAForm ssa;
+
+	@Before
+	public void setUp() throws Exception {
+		esi = ExpressionFactory.createVariable("esi", 32);
+		edi = ExpressionFactory.createVariable("edi", 32);
+		ebp = ExpressionFactory.createVariable("ebp", 32);
+		// A loop 1 -> 2 -> 1 entered from 0 and left to 3
+		Set<CFAEdge> edges = new HashSet<CFAEdge>();
+		edges.add(edge(0, 1, esi, ExpressionFactory.createNumber(1, 32)));
+		edges.add(edge(1, 2, edi, esi));
+		edges.add(edge(2, 1, esi, ExpressionFactory.createPlus(esi, 1)));
+		edges.add(edge(1, 3, ebp, edi));
+		graph = new CompactCFG(edges);
+		ssa = new SSAForm(new DominatorTree(graph, 0));
+	}
+
+	private int findPhi(int location, RTLVariable v) {
+		for (int p = ssa.getPhiStart(location); p < ssa.getPhiEnd(location); p++)
+			if (ssa.getVariable(p).equals(v))
+				return p;
+		return -1;
+	}
+
+	@Test
+	public void testDefinitions() {
+		int e = graph.findEdge(2, 1);
+		int d = ssa.getDefinition(e, esi);
+		assertEquals(SSAForm.Kind.STATEMENT, ssa.getKind(d));
+		assertEquals(e, ssa.getEdge(d));
+		assertEquals(1, ssa.getLocation(d));
+		assertEquals(esi, ssa.getVariable(d));
+		assertEquals(-1, ssa.getDefinition(e, edi));
+
+		int entry = ssa.getEntryDefinition(ebp);
+		assertEquals(SSAForm.Kind.ENTRY, ssa.getKind(entry));
+		assertEquals(0, ssa.getLocation(entry));
+	}
+
+	@Test
+	public void testPhis() {
+		assertEquals(ssa.getPhiStart(0), ssa.getPhiEnd(0));
+		assertEquals(ssa.getPhiStart(2), ssa.getPhiEnd(2));
+		int phi = findPhi(1, esi);
+		assertEquals(SSAForm.Kind.PHI, ssa.getKind(phi));
+		assertEquals(-1, ssa.getEdge(phi));
+		// Operands are ordered like the in-edges from 0 and 2
+		int i = ssa.getOperandStart(phi);
+		assertEquals(i + 2, ssa.getOperandEnd(phi));
+		assertEquals(ssa.getDefinition(graph.findEdge(0, 1), esi), ssa.getOperand(i));
+		assertEquals(ssa.getDefinition(graph.findEdge(2, 1), esi), ssa.getOperand(i + 1));
+
+		int ediPhi = findPhi(1, edi);
+		i = ssa.getOperandStart(ediPhi);
+		assertEquals(ssa.getEntryDefinition(edi), ssa.getOperand(i));
+		assertEquals(ssa.getDefinition(graph.findEdge(1, 2), edi), ssa.getOperand(i + 1));
+		assertEquals(-1, findPhi(1, ebp));
+	}
+
+	@Test
+	public void testUses() {
+		int phi = findPhi(1, esi);
+		assertEquals(phi, ssa.getReachingDefinition(graph.findEdge(1, 2), esi));
+		assertEquals(phi, ssa.getReachingDefinition(graph.findEdge(2, 1), esi));
+		assertEquals(findPhi(1, edi), ssa.getReachingDefinition(graph.findEdge(1, 3), edi));
+		assertEquals(-1, ssa.getReachingDefinition(graph.findEdge(1, 3), esi));
+
+		Set<Integer> dependents = new HashSet<Integer>();
+		for (int i = ssa.getDependentStart(phi); i < ssa.getDependentEnd(phi); i++)
+			dependents.add(ssa.getDependent(i));
+		assertTrue(dependents.contains(ssa.getDefinition(graph.findEdge(1, 2), edi)));
+		assertTrue(dependents.contains(ssa.getDefinition(graph.findEdge(2, 1), esi)));
+		assertFalse(dependents.contains(ssa.getDefinition(graph.findEdge(1, 3), ebp)));
+	}
+
+	@Test
+	public void testLocationDefinitions() {
+		assertEquals(ssa.getEntryDefinition(esi), ssa.getLocationDefinition(0, esi));
+		assertEquals(findPhi(1, esi), ssa.getLocationDefinition(1, esi));
+		assertEquals(ssa.getDefinition(graph.findEdge(1, 2), edi), ssa.getLocationDefinition(2, edi));
+		assertEquals(-1, ssa.getLocationDefinition(2, esi));
+		assertEquals(-1, ssa.getLocationDefinition(3, esi));
+	}
+
+	@Test
+	public void testDefinitionsAt() {
+		// Locations inherit the definitions in effect at their immediate dominators
+		assertEquals(findPhi(1, esi), ssa.getDefinitionAt(3, esi));
+		assertEquals(findPhi(1, esi), ssa.getDefinitionAt(2, esi));
+		assertEquals(ssa.getDefinition(graph.findEdge(1, 2), edi), ssa.getDefinitionAt(2, edi));
+		assertEquals(ssa.getEntryDefinition(ebp), ssa.getDefinitionAt(2, ebp));
+		assertEquals(ssa.getDefinition(graph.findEdge(1, 3), ebp), ssa.getDefinitionAt(3, ebp));
+		assertEquals(ssa.getEntryDefinition(esi), ssa.getDefinitionAt(0, esi));
+		// Asking again returns the stored definitions
+		assertEquals(findPhi(1, esi), ssa.getDefinitionAt(3, esi));
+		assertEquals(-1, ssa.getDefinitionAt(3, ExpressionFactory.createVariable("ecx", 32)));
+	}
+
+	@Test
+	public void testPseudoVariables() {
+		// A diamond 0 -> {1, 2} -> 3 with a memory write on one branch
+		Set<CFAEdge> edges = new HashSet<CFAEdge>();
+		edges.add(edge(0, 1, new RTLMemoryAssignment(
+				ExpressionFactory.createMemoryLocation(esi, 32), edi)));
+		edges.add(edge(0, 2, esi, edi));
+		edges.add(edge(1, 3));
+		edges.add(edge(2, 3));
+		CompactCFG diamond = new CompactCFG(edges);
+		DominatorTree dom = new DominatorTree(diamond, 0);
+
+		assertEquals(-1, new SSAForm(dom).getEntryDefinition(SSAForm.MEMORY));
+		SSAForm memorySSA = new SSAForm(dom, true);
+		int store = memorySSA.getDefinition(diamond.findEdge(0, 1), SSAForm.MEMORY);
+		assertEquals(SSAForm.Kind.STATEMENT, memorySSA.getKind(store));
+		assertEquals(store, memorySSA.getLocationDefinition(1, SSAForm.MEMORY));
+		assertEquals(-1, memorySSA.getDefinition(diamond.findEdge(0, 2), SSAForm.MEMORY));
+		assertEquals(-1, memorySSA.getEntryDefinition(SSAForm.UNKNOWN_CALL));
+		int phi = memorySSA.getLocationDefinition(3, SSAForm.MEMORY);
+		assertEquals(SSAForm.Kind.PHI, memorySSA.getKind(phi));
+		assertEquals(SSAForm.MEMORY, memorySSA.getVariable(phi));
+		assertEquals(-1, memorySSA.getReachingDefinition(diamond.findEdge(1, 3), SSAForm.MEMORY));
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * StubIndexTest.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.loader;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StubIndexTest {
+
+	private static final String DEFINITIONS =
+			"; Exports of a test library\n" +
+			"EXPORTS\n" +
+			"Plain@8\n" +
+			"@Fast@12\n" +
+			"!NoReturn@4\n" +
+			"Variable DATA\n" +
+			"Name@With@At\n";
+
+	private File dir;
+	private File defFile;
+	private File indexFile;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("stubs", "");
+		assertTrue(dir.delete() && dir.mkdir());
+		defFile = new File(dir, "Test.def");
+		indexFile = new File(dir, "stubs.idx");
+		write(defFile, DEFINITIONS.getBytes("UTF-8"));
+	}
+
+	@After
+	public void tearDown() {
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	private static void write(File f, byte[] bytes) throws IOException {
+		FileOutputStream out = new FileOutputStream(f);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static byte[] read(File f) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(f, "r");
+		try {
+			byte[] bytes = new byte[(int)file.length()];
+			file.readFully(bytes);
+			return bytes;
+		} finally {
+			file.close();
+		}
+	}
+
+	private static void assertDefinitions(StubIndex index) {
+		assertTrue(index.hasLibrary("test"));
+		assertFalse(index.hasLibrary("other"));
+
+		Win32StubLibrary.Stub stub = index.lookup("test", "Plain");
+		assertEquals(StubProvider.STDCALL, stub.callingConvention);
+		assertEquals(8, stub.stackIncrement);
+		assertTrue(stub.returns);
+
+		stub = index.lookup("test", "Fast");
+		assertEquals(StubProvider.FASTCALL, stub.callingConvention);
+		assertEquals(12, stub.stackIncrement);
+
+		stub = index.lookup("test", "NoReturn");
+		assertEquals(StubProvider.STDCALL, stub.callingConvention);
+		assertEquals(4, stub.stackIncrement);
+		assertFalse(stub.returns);
+
+		stub = index.lookup("test", "Variable");
+		assertEquals(StubProvider.EXTERNAL_VARIABLE, stub.callingConvention);
+		assertEquals(0, stub.stackIncrement);
+
+		// The last @ is not followed by a number, so it belongs to the name
+		stub = index.lookup("test", "Name@With@At");
+		assertEquals("Name@With@At", stub.name);
+		assertEquals(0, stub.stackIncrement);
+
+		assertNull(index.lookup("test", "Missing"));
+		assertNull(index.lookup("other", "Plain"));
+	}
+
+	@Test
+	public void testLookup() {
+		assertDefinitions(StubIndex.open(dir));
+		assertTrue(indexFile.isFile());
+		// The second run maps the stored index
+		assertDefinitions(StubIndex.open(dir));
+	}
+
+	@Test
+	public void testRebuild() throws Exception {
+		StubIndex index = StubIndex.open(dir);
+		assertNull(index.lookup("test", "Added"));
+		long length = indexFile.length();
+
+		write(defFile, (DEFINITIONS + "Added@16\n").getBytes("UTF-8"));
+		index = StubIndex.open(dir);
+		assertDefinitions(index);
+		assertEquals(16, index.lookup("test", "Added").stackIncrement);
+		assertTrue(indexFile.length() > length);
+	}
+
+	@Test
+	public void testTruncated() throws Exception {
+		StubIndex.open(dir);
+		byte[] image = read(indexFile);
+		int[] lengths = { 0, 6, 20, image.length / 2, image.length - 1 };
+		for (int length : lengths) {
+			byte[] truncated = new byte[length];
+			System.arraycopy(image, 0, truncated, 0, length);
+			write(indexFile, truncated);
+			assertDefinitions(StubIndex.open(dir));
+			assertEquals(image.length, indexFile.length());
+		}
+	}
+
+}
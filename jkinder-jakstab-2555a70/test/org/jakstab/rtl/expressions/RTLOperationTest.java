@@ -176,5 +176,30 @@ public class RTLOperationTest {
 		assertEquals(ExpressionFactory.TRUE, ExpressionFactory.createUnsignedLessThan(num5_8bit, neg125_8).evaluate(emptyContext));
 		assertEquals(ExpressionFactory.TRUE, ExpressionFactory.createUnsignedLessOrEqual(num5_8bit, neg125_8).evaluate(emptyContext));
 	}
+	
+	@Test
+	public void testInterning() {
+		ExpressionFactory.setInterning(true);
+		try {
+			RTLExpression[] operands = new RTLExpression[] {var8, ExpressionFactory.createNumber(3, 8)};
+			RTLExpression op1 = ExpressionFactory.createOperation(Operator.PLUS, operands);
+			// Changing the array must not change the interned operation
+			operands[1] = num5_8bit;
+			RTLExpression op2 = ExpressionFactory.createPlus(var8, ExpressionFactory.createNumber(3, 8));
+			assertSame(op1, op2);
+			assertSame(ExpressionFactory.createNumber(3, 8), ExpressionFactory.createNumber(3, 8));
+			assertFalse(op1.equals(ExpressionFactory.createPlus(var8, num5_8bit)));
+			assertSame(ExpressionFactory.createMemoryLocation(op1, 32), 
+					ExpressionFactory.createMemoryLocation(op2, 32));
+			// Interned and non-interned expressions are still compared structurally
+			ExpressionFactory.setInterning(false);
+			RTLExpression op3 = ExpressionFactory.createPlus(var8, ExpressionFactory.createNumber(3, 8));
+			assertNotSame(op1, op3);
+			assertEquals(op1, op3);
+			assertEquals(op1.hashCode(), op3.hashCode());
+		} finally {
+			ExpressionFactory.setInterning(false);
+		}
+	}
 
 }
@@ -0,0 +1,217 @@
+/*
+ * BitVectorLivenessTest.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.transformation;
+
+import static org.jakstab.cfa.CFAFixture.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.cfa.Location;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLExpression;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.rtl.statements.RTLStatement;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BitVectorLivenessTest {
+
+	private RTLVariable eax;
+	private RTLVariable ebx;
+	private RTLVariable ecx;
+	private RTLVariable edx;
+	private List<RTLVariable> variables;
+	private Set<RTLVariable> sinkVariables;
+
+	@Before
+	public void setUp() throws Exception {
+		eax = ExpressionFactory.createVariable("eax", 32);
+		ebx = ExpressionFactory.createVariable("ebx", 32);
+		ecx = ExpressionFactory.createVariable("ecx", 32);
+		edx = ExpressionFactory.createVariable("edx", 32);
+		variables = new ArrayList<RTLVariable>();
+		Collections.addAll(variables, eax, ebx, ecx, edx);
+		sinkVariables = Collections.singleton(eax);
+	}
+
+	private int findEdge(BitVectorLiveness liveness, CFAEdge e) {
+		for (int i = 0; i < liveness.getEdgeCount(); i++)
+			if (liveness.getEdge(i) == e)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Computes the live variables the way dead code elimination did before it
+	 * used bit vectors, with a set per location and a worklist of locations.
+	 */
+	private static Map<Location, Set<RTLVariable>> referenceLiveness(Set<CFAEdge> cfa,
+			Set<RTLVariable> liveInSinks) {
+		Map<Location, Set<RTLVariable>> liveVars = new HashMap<Location, Set<RTLVariable>>();
+		Map<Location, List<CFAEdge>> inEdges = new HashMap<Location, List<CFAEdge>>();
+		Set<Location> sources = new HashSet<Location>();
+		for (CFAEdge e : cfa) {
+			sources.add(e.getSource());
+			liveVars.put(e.getSource(), new HashSet<RTLVariable>());
+			liveVars.put(e.getTarget(), new HashSet<RTLVariable>());
+			if (!inEdges.containsKey(e.getTarget()))
+				inEdges.put(e.getTarget(), new ArrayList<CFAEdge>());
+			inEdges.get(e.getTarget()).add(e);
+		}
+		LinkedList<Location> worklist = new LinkedList<Location>(liveVars.keySet());
+		for (Location l : liveVars.keySet())
+			if (!sources.contains(l))
+				liveVars.get(l).addAll(liveInSinks);
+
+		while (!worklist.isEmpty()) {
+			Location l = worklist.removeFirst();
+			if (!inEdges.containsKey(l))
+				continue;
+			for (CFAEdge e : inEdges.get(l)) {
+				RTLStatement stmt = (RTLStatement)e.getTransformer();
+				Set<RTLVariable> in = new HashSet<RTLVariable>(liveVars.get(l));
+				for (RTLVariable v : stmt.getDefinedVariables()) {
+					in.remove(v);
+					in.removeAll(ExpressionFactory.coveredRegisters(v));
+				}
+				for (RTLVariable v : stmt.getUsedVariables()) {
+					in.add(v);
+					in.addAll(ExpressionFactory.coveringRegisters(v));
+				}
+				if (liveVars.get(e.getSource()).addAll(in) && !worklist.contains(e.getSource()))
+					worklist.add(e.getSource());
+			}
+		}
+		return liveVars;
+	}
+
+	private void assertMatchesReference(BitVectorLiveness liveness, Set<CFAEdge> cfa) {
+		Map<Location, Set<RTLVariable>> reference = referenceLiveness(cfa, sinkVariables);
+		for (Map.Entry<Location, Set<RTLVariable>> entry : reference.entrySet()) {
+			int id = liveness.getLocationId(entry.getKey());
+			for (RTLVariable v : variables)
+				assertEquals(entry.getKey() + ": " + v, entry.getValue().contains(v), liveness.isLive(id, v));
+		}
+	}
+
+	@Test
+	public void testLoop() {
+		// for (ecx = 0; ecx < edx; ecx++) ebx += ecx; eax = ebx
+		RTLExpression condition = ExpressionFactory.createLessThan(ecx, edx);
+		Set<CFAEdge> cfa = new HashSet<CFAEdge>();
+		cfa.add(edge(0, 1, assign(ecx, ExpressionFactory.createNumber(0, 32))));
+		cfa.add(edge(1, 2, assume(condition)));
+		cfa.add(edge(2, 3, assign(ebx, ExpressionFactory.createPlus(ebx, ecx))));
+		cfa.add(edge(3, 1, assign(ecx, ExpressionFactory.createPlus(ecx, 1))));
+		cfa.add(edge(1, 4, assume(ExpressionFactory.createNot(condition))));
+		cfa.add(edge(4, 5, assign(eax, ebx)));
+
+		BitVectorLiveness liveness = new BitVectorLiveness(cfa, sinkVariables, Collections.<RTLVariable>emptySet());
+		liveness.solve();
+		assertMatchesReference(liveness, cfa);
+		assertTrue(liveness.isLive(liveness.getLocationId(label(3)), edx));
+		assertTrue(liveness.isLive(liveness.getLocationId(label(0)), ebx));
+		assertFalse(liveness.isLive(liveness.getLocationId(label(0)), ecx));
+		assertFalse(liveness.isLive(liveness.getLocationId(label(4)), eax));
+		assertTrue(liveness.isLive(liveness.getLocationId(label(5)), eax));
+	}
+
+	@Test
+	public void testDiamond() {
+		RTLExpression condition = ExpressionFactory.createEqual(eax, ExpressionFactory.createNumber(0, 32));
+		Set<CFAEdge> cfa = new HashSet<CFAEdge>();
+		cfa.add(edge(0, 1, assume(condition)));
+		cfa.add(edge(0, 2, assume(ExpressionFactory.createNot(condition))));
+		cfa.add(edge(1, 3, assign(ebx, ecx)));
+		cfa.add(edge(2, 3, assign(ebx, edx)));
+		cfa.add(edge(3, 4, assign(eax, ebx)));
+
+		BitVectorLiveness liveness = new BitVectorLiveness(cfa, sinkVariables, Collections.<RTLVariable>emptySet());
+		liveness.solve();
+		assertMatchesReference(liveness, cfa);
+		int entry = liveness.getLocationId(label(0));
+		assertTrue(liveness.isLive(entry, eax));
+		assertFalse(liveness.isLive(entry, ebx));
+		assertTrue(liveness.isLive(entry, ecx));
+		assertTrue(liveness.isLive(entry, edx));
+	}
+
+	@Test
+	public void testRemoveEdge() {
+		RTLExpression condition = ExpressionFactory.createEqual(eax, ExpressionFactory.createNumber(0, 32));
+		Set<CFAEdge> cfa = new HashSet<CFAEdge>();
+		CFAEdge deadEdge = edge(2, 3, assign(ecx, edx));
+		CFAEdge branch = edge(0, 2, assume(ExpressionFactory.createNot(condition)));
+		cfa.add(edge(0, 1, assume(condition)));
+		cfa.add(branch);
+		cfa.add(edge(1, 3, assign(ebx, ecx)));
+		cfa.add(deadEdge);
+		cfa.add(edge(3, 4, assign(eax, ebx)));
+		cfa.add(edge(4, 5, assign(edx, eax)));
+
+		BitVectorLiveness liveness = new BitVectorLiveness(cfa, sinkVariables, Collections.<RTLVariable>emptySet());
+		liveness.solve();
+		assertEquals(liveness.getLocationCount(), liveness.getLastSolvedCount());
+		assertTrue(liveness.isLive(liveness.getLocationId(label(0)), edx));
+
+		// The dead edge 2 -> 3 is removed, so 0 -> 2 now points to 3
+		int dead = findEdge(liveness, deadEdge);
+		cfa.remove(deadEdge);
+		liveness.removeEdge(dead);
+		assertTrue(liveness.isRemoved(dead));
+		liveness.solve();
+		int redirected = findEdge(liveness, branch);
+		assertEquals(label(3), branch.getTarget());
+		assertEquals(liveness.getLocationId(label(3)), liveness.getTarget(redirected));
+		assertMatchesReference(liveness, cfa);
+		// Only the entry and the removed edge's source are recomputed
+		assertEquals(2, liveness.getLastSolvedCount());
+		assertFalse(liveness.isLive(liveness.getLocationId(label(0)), edx));
+	}
+
+	@Test
+	public void testParallelEdges() {
+		RTLExpression condition = ExpressionFactory.createEqual(eax, ExpressionFactory.createNumber(0, 32));
+		Set<CFAEdge> cfa = new HashSet<CFAEdge>();
+		cfa.add(edge(0, 1, assume(condition)));
+		cfa.add(edge(0, 1, assume(ExpressionFactory.createNot(condition))));
+		cfa.add(edge(1, 2, assign(eax, ebx)));
+
+		BitVectorLiveness liveness = new BitVectorLiveness(cfa, sinkVariables, Collections.<RTLVariable>emptySet());
+		assertEquals(3, liveness.getEdgeCount());
+		Set<CFAEdge> mapped = new HashSet<CFAEdge>();
+		for (int i = 0; i < liveness.getEdgeCount(); i++) {
+			CFAEdge e = liveness.getEdge(i);
+			assertTrue(mapped.add(e));
+			assertEquals(liveness.getLocationId(e.getSource()), liveness.getSource(i));
+			assertEquals(liveness.getLocationId(e.getTarget()), liveness.getTarget(i));
+		}
+		liveness.solve();
+		assertMatchesReference(liveness, cfa);
+	}
+
+}
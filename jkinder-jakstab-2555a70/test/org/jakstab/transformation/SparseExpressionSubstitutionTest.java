@@ -0,0 +1,238 @@
+/*
+ * SparseExpressionSubstitutionTest.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.transformation;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.jakstab.Program;
+import org.jakstab.cfa.CFAEdge;
+import org.jakstab.cfa.CFAFixture;
+import org.jakstab.cfa.FineGrainedCFG;
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLExpression;
+import org.jakstab.rtl.expressions.RTLMemoryLocation;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.jakstab.rtl.statements.RTLGoto;
+import org.jakstab.rtl.statements.RTLMemoryAssignment;
+import org.jakstab.rtl.statements.RTLStatement;
+import org.jakstab.rtl.statements.RTLUnknownProcedureCall;
+import org.jakstab.ssl.Architecture;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class SparseExpressionSubstitutionTest {
+
+	private static RTLVariable eax;
+	private static RTLVariable ebx;
+	private static RTLVariable ecx;
+	private static RTLVariable edx;
+	private static RTLVariable esp;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		// Control flow graphs look up stubs in the program
+		Program.createProgram(new Architecture("ssl/pentium.ssl"));
+		eax = ExpressionFactory.createVariable("eax", 32);
+		ebx = ExpressionFactory.createVariable("ebx", 32);
+		ecx = ExpressionFactory.createVariable("ecx", 32);
+		edx = ExpressionFactory.createVariable("edx", 32);
+		esp = ExpressionFactory.createVariable("esp", 32);
+	}
+
+	/**
+	 * Creates a new CFA for each substitution, since they replace statements.
+	 */
+	private static abstract class CFABuilder {
+
+		protected Set<CFAEdge> edges;
+
+		abstract void build();
+
+		Set<CFAEdge> create() {
+			edges = new HashSet<CFAEdge>();
+			build();
+			return edges;
+		}
+
+		void add(int src, int tgt, RTLStatement stmt) {
+			edges.add(CFAFixture.edge(src, tgt, stmt));
+		}
+
+		void assign(int src, int tgt, RTLVariable lhs, RTLExpression rhs) {
+			add(src, tgt, CFAFixture.assign(lhs, rhs));
+		}
+
+		void assume(int src, int tgt, RTLExpression condition) {
+			add(src, tgt, CFAFixture.assume(condition));
+		}
+	}
+
+	private static RTLExpression number(long value) {
+		return ExpressionFactory.createNumber(value, 32);
+	}
+
+	private static RTLMemoryLocation stackTop() {
+		return ExpressionFactory.createMemoryLocation(esp, 32);
+	}
+
+	private static Map<String, String> statements(Set<CFAEdge> cfa) {
+		Map<String, String> result = new TreeMap<String, String>();
+		for (CFAEdge e : cfa)
+			result.put(e.getSource() + " -> " + e.getTarget(), e.getTransformer().toString());
+		return result;
+	}
+
+	private static Map<String, String> dataFlow(CFABuilder builder) {
+		ExpressionSubstitution substitution = new ExpressionSubstitution(new FineGrainedCFG(builder.create()));
+		substitution.run();
+		return statements(substitution.getCFA());
+	}
+
+	private static Map<String, String> sparse(CFABuilder builder) {
+		SparseExpressionSubstitution substitution = new SparseExpressionSubstitution(new FineGrainedCFG(builder.create()));
+		substitution.run();
+		return statements(substitution.getCFA());
+	}
+
+	/**
+	 * Runs both substitutions on copies of a CFA and checks that they
+	 * produce the same statements.
+	 *
+	 * @return the statements after substitution, by their edges.
+	 */
+	private static Map<String, String> substitute(CFABuilder builder) {
+		Map<String, String> expected = dataFlow(builder);
+		assertEquals(expected, sparse(builder));
+		return expected;
+	}
+
+	private static String edge(int src, int tgt) {
+		return CFAFixture.label(src) + " -> " + CFAFixture.label(tgt);
+	}
+
+	@Test
+	public void testStraightLine() {
+		Map<String, String> result = substitute(new CFABuilder() {
+			@Override
+			void build() {
+				assign(0, 1, eax, ExpressionFactory.createPlus(ebx, number(4)));
+				assign(1, 2, ecx, eax);
+				assign(2, 3, ebx, number(1));
+				assign(3, 4, edx, eax);
+				assign(4, 5, esp, ExpressionFactory.createPlus(esp, number(-4)));
+				assign(5, 6, edx, esp);
+			}
+		});
+		assertEquals("ecx := (ebx + 4)", result.get(edge(1, 2)));
+		// ebx is redefined in between
+		assertEquals("edx := eax", result.get(edge(3, 4)));
+		assertEquals("edx := esp", result.get(edge(5, 6)));
+	}
+
+	@Test
+	public void testMemory() {
+		Map<String, String> result = substitute(new CFABuilder() {
+			@Override
+			void build() {
+				add(0, 1, new RTLMemoryAssignment(stackTop(), eax));
+				assign(1, 2, ebx, stackTop());
+				assign(2, 3, ecx, ebx);
+				add(3, 4, new RTLMemoryAssignment(ExpressionFactory.createMemoryLocation(edx, 32), number(0)));
+				assign(4, 5, edx, ebx);
+			}
+		});
+		// Stores are not forwarded to loads
+		assertEquals("ebx := mem32[esp]", result.get(edge(1, 2)));
+		assertEquals("ecx := mem32[esp]", result.get(edge(2, 3)));
+		// The store may overwrite the loaded value
+		assertEquals("edx := ebx", result.get(edge(4, 5)));
+	}
+
+	@Test
+	public void testUnknownCall() {
+		Map<String, String> result = substitute(new CFABuilder() {
+			@Override
+			void build() {
+				assign(0, 1, ebx, number(5));
+				assign(1, 2, esp, ebx);
+				add(2, 3, new RTLUnknownProcedureCall(new RTLGoto(eax, RTLGoto.Type.CALL)));
+				assign(3, 4, ecx, ebx);
+			}
+		});
+		assertEquals("esp := 5", result.get(edge(1, 2)));
+		assertEquals("ecx := ebx", result.get(edge(3, 4)));
+	}
+
+	@Test
+	public void testDiamond() {
+		Map<String, String> result = substitute(new CFABuilder() {
+			@Override
+			void build() {
+				RTLExpression condition = ExpressionFactory.createEqual(eax, number(0));
+				assume(0, 1, condition);
+				assume(0, 2, ExpressionFactory.createNot(condition));
+				assign(1, 3, ebx, ExpressionFactory.createPlus(ecx, number(1)));
+				assign(2, 3, ebx, ExpressionFactory.createPlus(ecx, number(1)));
+				assign(3, 4, edx, ebx);
+				assume(4, 5, condition);
+				assume(4, 6, ExpressionFactory.createNot(condition));
+				assign(5, 7, ecx, number(2));
+				assign(6, 7, esp, ebx);
+				assign(7, 8, edx, ebx);
+			}
+		});
+		// Equal values on both branches are merged
+		assertEquals("edx := (ecx + 1)", result.get(edge(3, 4)));
+		assertEquals("esp := (ecx + 1)", result.get(edge(6, 7)));
+		// ecx is redefined on one branch
+		assertEquals("edx := ebx", result.get(edge(7, 8)));
+	}
+
+	@Test
+	public void testLoop() {
+		CFABuilder builder = new CFABuilder() {
+			@Override
+			void build() {
+				RTLExpression condition = ExpressionFactory.createLessThan(ecx, edx);
+				assign(0, 1, ecx, ebx);
+				assume(1, 2, condition);
+				assign(2, 3, eax, ExpressionFactory.createPlus(ecx, number(4)));
+				assign(3, 1, ecx, eax);
+				assume(1, 4, ExpressionFactory.createNot(condition));
+				assign(4, 5, esp, ecx);
+				assign(5, 6, edx, esp);
+			}
+		};
+		Map<String, String> expected = dataFlow(builder);
+		Map<String, String> result = sparse(builder);
+		// The data flow analysis joins eax from the first iteration, where it
+		// is ebx + 4, with ecx + 4 from later ones. The sparse substitution
+		// only sees the definition in the loop body.
+		assertEquals("ecx := eax", expected.remove(edge(3, 1)));
+		assertEquals("ecx := (ecx + 4)", result.remove(edge(3, 1)));
+		assertEquals(expected, result);
+		assertEquals("esp := ecx", result.get(edge(4, 5)));
+		assertEquals("edx := ecx", result.get(edge(5, 6)));
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * BytePatternMatcherTest.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BytePatternMatcherTest {
+
+	private BytePatternMatcher matcher;
+
+	@Before
+	public void setUp() throws Exception {
+		matcher = new BytePatternMatcher(Arrays.asList(
+				new byte[] { -0x75, -0x01, 0x55, -0x75, -0x14 },
+				new byte[] { 0x55, -0x75, -0x14 }
+		));
+	}
+
+	private static BinaryInputBuffer buffer(byte[] bytes) throws Exception {
+		return new BinaryFileInputBuffer(new ByteArrayInputStream(bytes));
+	}
+
+	@Test
+	public void testFindAll() throws Exception {
+		byte[] bytes = { 0x00, -0x75, -0x01, 0x55, -0x75, -0x14, 0x55, -0x75, -0x14, 0x55, -0x75 };
+		List<BytePatternMatcher.Match> matches = matcher.findAll(buffer(bytes), 0, bytes.length, 1);
+		assertEquals(3, matches.size());
+		assertEquals(1, matches.get(0).getOffset());
+		assertEquals(0, matches.get(0).getPattern());
+		assertEquals(3, matches.get(1).getOffset());
+		assertEquals(1, matches.get(1).getPattern());
+		assertEquals(6, matches.get(2).getOffset());
+
+		List<BytePatternMatcher.Match> selected = matcher.selectNonOverlapping(matches);
+		assertEquals(2, selected.size());
+		assertEquals(1, selected.get(0).getOffset());
+		assertEquals(6, selected.get(1).getOffset());
+	}
+
+	@Test
+	public void testRange() throws Exception {
+		byte[] bytes = { 0x55, -0x75, -0x14, 0x55, -0x75, -0x14 };
+		// The second match does not end inside the range
+		assertEquals(1, matcher.findAll(buffer(bytes), 0, 5, 1).size());
+		assertEquals(1, matcher.findAll(buffer(bytes), 1, 6, 1).size());
+	}
+
+	@Test
+	public void testChunks() throws Exception {
+		byte[] bytes = new byte[(3 << 20) + 7];
+		int[] offsets = { 0, (1 << 20) - 1, (2 << 20) - 2, 3 << 20, bytes.length - 3 };
+		for (int offset : offsets) {
+			bytes[offset] = 0x55;
+			bytes[offset + 1] = -0x75;
+			bytes[offset + 2] = -0x14;
+		}
+		BinaryInputBuffer data = buffer(bytes);
+		List<BytePatternMatcher.Match> parallel = matcher.findAll(data, 0, bytes.length, 4);
+		assertEquals(offsets.length, parallel.size());
+		for (int i = 0; i < offsets.length; i++)
+			assertEquals(offsets[i], parallel.get(i).getOffset());
+		assertEquals(matcher.findAll(data, 0, bytes.length, 1).size(), parallel.size());
+	}
+
+}
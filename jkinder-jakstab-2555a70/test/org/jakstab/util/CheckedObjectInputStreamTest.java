@@ -0,0 +1,101 @@
+/*
+ * CheckedObjectInputStreamTest.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.jakstab.rtl.expressions.ExpressionFactory;
+import org.jakstab.rtl.expressions.RTLExpression;
+import org.jakstab.rtl.expressions.RTLNumber;
+import org.jakstab.rtl.expressions.RTLVariable;
+import org.junit.Test;
+
+public class CheckedObjectInputStreamTest {
+
+	private static Object roundTrip(Object o) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(o);
+		out.close();
+		CheckedObjectInputStream in = new CheckedObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		try {
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testAllowed() throws Exception {
+		TreeMap<String, Object> map = new TreeMap<String, Object>();
+		map.put("a", ExpressionFactory.createPlus(ExpressionFactory.createVariable("eax", 32),
+				ExpressionFactory.createNumber(4, 32)));
+		map.put("b", new RTLExpression[] {ExpressionFactory.TRUE});
+		map.put("c", new long[] {1, 2});
+		map.put("d", 5);
+		TreeMap<?, ?> copy = (TreeMap<?, ?>)roundTrip(map);
+		assertEquals(map.get("a"), copy.get("a"));
+		assertEquals(ExpressionFactory.TRUE, ((RTLExpression[])copy.get("b"))[0]);
+		assertEquals(2, ((long[])copy.get("c"))[1]);
+		assertEquals(5, copy.get("d"));
+	}
+
+	@Test
+	public void testRejected() throws Exception {
+		List<Object> list = new ArrayList<Object>();
+		list.add(new File("stubs.idx"));
+		try {
+			roundTrip(list);
+			fail("Read a File from a cache stream");
+		} catch (InvalidClassException e) {
+		}
+		try {
+			roundTrip(new File[0]);
+			fail("Read a File array from a cache stream");
+		} catch (InvalidClassException e) {
+		}
+	}
+
+	@Test
+	public void testSameFields() {
+		ObjectStreamClass number = ObjectStreamClass.lookup(RTLNumber.class);
+		assertTrue(CheckedObjectInputStream.sameFields(number, ObjectStreamClass.lookup(RTLNumber.class)));
+		assertFalse(CheckedObjectInputStream.sameFields(number, ObjectStreamClass.lookup(RTLVariable.class)));
+	}
+
+	@Test
+	public void testIsAllowed() {
+		assertTrue(CheckedObjectInputStream.isAllowed("org.jakstab.rtl.expressions.RTLNumber"));
+		assertTrue(CheckedObjectInputStream.isAllowed("[[J"));
+		assertTrue(CheckedObjectInputStream.isAllowed("[Lorg.jakstab.asm.Operand;"));
+		assertFalse(CheckedObjectInputStream.isAllowed("org.jakstab.cfa.CFAEdge"));
+		assertFalse(CheckedObjectInputStream.isAllowed("[Ljava.lang.Object;"));
+		assertFalse(CheckedObjectInputStream.isAllowed("java.util.PriorityQueue"));
+	}
+
+}
@@ -93,4 +93,24 @@ public class LazyHashMapMapTest {
 
 	}
 
+	@Test
+	public void testSubMapSharing() {
+		long mapCopies = LazyHashMapMap.getCopyCount();
+		long subMapCopies = LazyTreeMap.getCopyCount();
+		map2.put(12, 5, 3);
+		assertEquals(mapCopies + 1, LazyHashMapMap.getCopyCount());
+		assertEquals(subMapCopies + 1, LazyTreeMap.getCopyCount());
+		assertFalse(map1.containsKey(12, 5));
+		// Writing to another submap copies only that submap
+		map2.put(4, 5, 3);
+		assertEquals(mapCopies + 1, LazyHashMapMap.getCopyCount());
+		assertEquals(subMapCopies + 2, LazyTreeMap.getCopyCount());
+		// Writes and removals that do not change anything do not copy
+		map3 = new LazyHashMapMap<Integer, Integer, Integer>(map1);
+		map3.remove(12, 5);
+		map3.put(12, 14, map1.get(12, 14));
+		assertEquals(mapCopies + 1, LazyHashMapMap.getCopyCount());
+		assertEquals(map1, map3);
+	}
+
 }
@@ -0,0 +1,76 @@
+/*
+ * LongHashMapTest.java - This file is part of the Jakstab project.
+ * Copyright 2007-2015 Johannes Kinder <jk@jakstab.org>
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jakstab.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LongHashMapTest {
+
+	private LongHashMap<String> map;
+
+	@Before
+	public void setUp() throws Exception {
+		map = new LongHashMap<String>();
+		map.put(0x401000L, "a");
+		map.put(0L, "b");
+		map.put(-1L, "c");
+	}
+
+	@Test
+	public void testGet() {
+		assertEquals("a", map.get(0x401000L));
+		assertEquals("b", map.get(0L));
+		assertEquals("c", map.get(-1L));
+		assertNull(map.get(0x401001L));
+		assertFalse(map.containsKey(1L));
+	}
+
+	@Test
+	public void testPut() {
+		assertEquals("a", map.put(0x401000L, "d"));
+		assertEquals("d", map.get(0x401000L));
+		assertNull(map.put(1L, "e"));
+		assertEquals(4, map.size());
+	}
+
+	@Test
+	public void testResize() {
+		for (long i = 0; i < 10000; i++)
+			map.put(i << 8 | 1, Long.toString(i));
+		assertEquals(10003, map.size());
+		for (long i = 0; i < 10000; i++)
+			assertEquals(Long.toString(i), map.get(i << 8 | 1));
+		assertEquals("a", map.get(0x401000L));
+	}
+
+	@Test
+	public void testSortedKeys() {
+		map.put(5L, "d");
+		long[] keys = map.sortedKeys();
+		assertTrue(Arrays.equals(new long[] {-1L, 0L, 5L, 0x401000L}, keys));
+		assertSame(keys, map.sortedKeys());
+		map.put(3L, "e");
+		assertTrue(Arrays.equals(new long[] {-1L, 0L, 3L, 5L, 0x401000L}, map.sortedKeys()));
+	}
+
+}